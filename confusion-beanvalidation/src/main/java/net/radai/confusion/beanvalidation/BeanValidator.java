@@ -17,12 +17,19 @@
 
 package net.radai.confusion.beanvalidation;
 
+import net.radai.confusion.core.beans.BeanDiff;
+import net.radai.confusion.core.beans.BeanModel;
 import net.radai.confusion.core.spi.validator.ValidationResults;
 import net.radai.confusion.core.spi.validator.Validator;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validation;
+import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -30,15 +37,33 @@ import java.util.Set;
  */
 public class BeanValidator implements Validator<Set<ConstraintViolation<Object>>> {
     private static final javax.validation.Validator validator = Validation.buildDefaultValidatorFactory().getValidator(); //thread safe
+    private static final int MAX_DEPTH = 64; //guards against cyclic graphs
 
     private boolean allowNullObject;
+    private boolean incremental;
 
     public BeanValidator() {
         this(false);
     }
 
     public BeanValidator(boolean allowNullObject) {
+        this(allowNullObject, false);
+    }
+
+    /**
+     * @param allowNullObject true to accept a null configuration
+     * @param incremental true to only validate the properties of a new configuration that differ from the
+     *                    current one (cascading into changed elements only). beans with class-level constraints,
+     *                    or with constraints on properties that cannot be diffed, are validated in full.
+     *                    relies on the current configuration not being modified in place.
+     */
+    public BeanValidator(boolean allowNullObject, boolean incremental) {
         this.allowNullObject = allowNullObject;
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
     }
 
     @Override
@@ -47,10 +72,126 @@ public class BeanValidator implements Validator<Set<ConstraintViolation<Object>>
             //nulls are not allowed under bean validation spec, so special handling
             return new ValidationResults<>(allowNullObject, Collections.emptySet());
         }
+        if (incremental && currConf != null && currConf != discoveredConf && changesValid(currConf, discoveredConf, 0)) {
+            return new ValidationResults<>(true, Collections.emptySet());
+        }
+        //either not incremental or something is wrong, in which case a full validation reports violations
+        //relative to the root, same as always
         Set<ConstraintViolation<Object>> violations = validator.validate(discoveredConf);
         if (!violations.isEmpty()) {
             return new ValidationResults<>(false, violations);
         }
         return new ValidationResults<>(true, Collections.emptySet());
     }
+
+    /**
+     * @return true if newBean is valid, assuming oldBean was
+     */
+    private static boolean changesValid(Object oldBean, Object newBean, int depth) {
+        if (newBean == null) {
+            return true; //whether a null is allowed is up to the owning property
+        }
+        if (oldBean == null || oldBean.getClass() != newBean.getClass() || depth > MAX_DEPTH) {
+            return validator.validate(newBean).isEmpty();
+        }
+        BeanDescriptor descriptor = validator.getConstraintsForClass(newBean.getClass());
+        if (!descriptor.isBeanConstrained()) {
+            return true;
+        }
+        BeanModel<?> model = BeanModel.of(newBean.getClass());
+        if (!descriptor.getConstraintDescriptors().isEmpty() || !canDiff(model, descriptor)) {
+            //class-level constraints may depend on anything
+            return validator.validate(newBean).isEmpty();
+        }
+        for (PropertyDescriptor property : descriptor.getConstrainedProperties()) {
+            String name = property.getPropertyName();
+            BeanModel.Property accessor = model.getProperty(name);
+            Object oldValue = accessor.get(oldBean);
+            Object newValue = accessor.get(newBean);
+            if (BeanDiff.equal(oldValue, newValue)) {
+                continue;
+            }
+            //validateProperty() does not cascade, so we do that ourselves
+            if (!validator.validateProperty(newBean, name).isEmpty()) {
+                return false;
+            }
+            if (property.isCascaded()) {
+                if (containsValues(newValue)) {
+                    //constraints on container elements (List<@Foo String>) are only checked by a cascading validation
+                    return validator.validate(newBean).isEmpty();
+                }
+                if (!cascadedValid(oldValue, newValue, depth + 1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean cascadedValid(Object oldValue, Object newValue, int depth) {
+        if (newValue instanceof List && oldValue instanceof List && ((List<?>) newValue).size() == ((List<?>) oldValue).size()) {
+            List<?> oldList = (List<?>) oldValue;
+            List<?> newList = (List<?>) newValue;
+            for (int i = 0; i < newList.size(); i++) {
+                if (!changesValid(oldList.get(i), newList.get(i), depth)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (newValue instanceof Map) {
+            Map<?, ?> oldMap = oldValue instanceof Map ? (Map<?, ?>) oldValue : Collections.emptyMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) newValue).entrySet()) {
+                if (!changesValid(oldMap.get(entry.getKey()), entry.getValue(), depth)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (newValue instanceof Iterable || newValue instanceof Object[]) {
+            //no stable way to pair up elements, validate them all
+            Iterable<?> elements = newValue instanceof Iterable ? (Iterable<?>) newValue : Arrays.asList((Object[]) newValue);
+            for (Object element : elements) {
+                if (element != null && !validator.validate(element).isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return changesValid(oldValue, newValue, depth);
+    }
+
+    /**
+     * @return true if the given container holds plain values (as opposed to beans)
+     */
+    private static boolean containsValues(Object container) {
+        Iterable<?> elements;
+        if (container instanceof Map) {
+            elements = ((Map<?, ?>) container).values();
+        } else if (container instanceof Iterable) {
+            elements = (Iterable<?>) container;
+        } else if (container instanceof Object[]) {
+            elements = Arrays.asList((Object[]) container);
+        } else {
+            return false;
+        }
+        for (Object element : elements) {
+            if (element != null && BeanModel.of(element.getClass()).isLeaf()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every constrained property is visible to (and so can be diffed using) the model
+     */
+    private static boolean canDiff(BeanModel<?> model, BeanDescriptor descriptor) {
+        for (PropertyDescriptor property : descriptor.getConstrainedProperties()) {
+            if (model.getProperty(property.getPropertyName()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
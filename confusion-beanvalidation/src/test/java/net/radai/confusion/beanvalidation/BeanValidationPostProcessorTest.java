@@ -57,4 +57,32 @@ public class BeanValidationPostProcessorTest {
         validationResults = postProcessor.validate(null, invalid);
         Assert.assertFalse(validationResults.isValid());
     }
+
+    @Test
+    public void testIncremental() {
+        BeanValidator full = new BeanValidator();
+        BeanValidator incremental = new BeanValidator(false, true);
+        Assert.assertTrue(incremental.isIncremental());
+
+        Cats current = new Cats("bob", null, new Cat("fluffy", "white", Arrays.asList("tuna")), new Cat("tom", "grey", null));
+        Assert.assertTrue(incremental.validate(null, current).isValid()); //nothing to diff against
+
+        Cats renamed = new Cats("alice", null, new Cat("fluffy", "white", Arrays.asList("tuna")), new Cat("tom", "grey", null));
+        Assert.assertTrue(incremental.validate(current, renamed).isValid());
+
+        //violation nested in a list element that changed
+        Cats nested = new Cats("bob", null, new Cat("fluffy", "white", Arrays.asList("tuna")), new Cat("tom", "grey", Arrays.asList("lettuce")));
+        ValidationResults<Set<ConstraintViolation<Object>>> validationResults = incremental.validate(current, nested);
+        Assert.assertFalse(validationResults.isValid());
+        //violations are reported the same as a full validation would
+        Assert.assertEquals(full.validate(null, nested).getValidatorOutput().size(), validationResults.getValidatorOutput().size());
+        Assert.assertEquals("cats[1].likes[0]",
+                validationResults.getValidatorOutput().iterator().next().getPropertyPath().toString());
+
+        //list grew, new element validated in full
+        Cats grown = new Cats("bob", null, new Cat("fluffy", "white", Arrays.asList("tuna")), new Cat("tom", "grey", null), new Cat("felix", null, Collections.singletonList("LETTUCE")));
+        Assert.assertFalse(incremental.validate(current, grown).isValid());
+
+        Assert.assertTrue(incremental.validate(nested, current).isValid()); //fixed
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.benchmarks;
+
+import net.radai.confusion.core.inmem.InMemBinaryStore;
+import net.radai.confusion.core.inmem.InMemTextStore;
+import net.radai.confusion.core.spi.store.adapter.Adapter;
+import net.radai.confusion.core.spi.store.adapter.BinaryToTextStore;
+import net.radai.confusion.core.spi.store.adapter.TextToBinaryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ * reads and writes through the store adapters. the in-memory stores underneath copy payloads on every
+ * read and write, so results include one copy on top of the adaptation itself
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AdapterBenchmark {
+
+    @Param({"BASE64", "UTF8"})
+    private String adapter;
+
+    @Param({"64", "4096", "262144"})
+    private int size;
+
+    private BinaryToTextStore binaryToText;
+    private TextToBinaryStore textToBinary;
+    private byte[] binary;
+    private String text;
+
+    @Setup
+    public void setup() throws IOException {
+        Adapter adapter = "BASE64".equals(this.adapter) ? Adapter.BASE64 : Adapter.UTF8;
+        binary = new byte[size];
+        Random random = new Random(42);
+        if (adapter == Adapter.UTF8) {
+            for (int i = 0; i < size; i++) {
+                binary[i] = (byte) ('a' + random.nextInt(26)); //valid utf8
+            }
+        } else {
+            random.nextBytes(binary);
+        }
+        text = adapter.toText(binary);
+
+        InMemBinaryStore binaryStore = new InMemBinaryStore();
+        binaryStore.write(binary);
+        binaryToText = new BinaryToTextStore(binaryStore, adapter);
+        InMemTextStore textStore = new InMemTextStore();
+        textStore.write(text);
+        textToBinary = new TextToBinaryStore(textStore, adapter);
+    }
+
+    @Benchmark
+    public String readBinaryAsText() throws IOException {
+        return binaryToText.read();
+    }
+
+    @Benchmark
+    public void writeTextAsBinary() throws IOException {
+        binaryToText.write(text);
+    }
+
+    @Benchmark
+    public byte[] readTextAsBinary() throws IOException {
+        return textToBinary.read();
+    }
+
+    @Benchmark
+    public void writeBinaryAsText() throws IOException {
+        textToBinary.write(binary);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Created by Radai Rosenblatt
+ * compares jmh results (written with -rf csv) against a baseline, failing (exit code 1) on regressions
+ * and on benchmarks that have no recorded baseline (so an empty or stale baseline file never passes).
+ * usage: BaselineCheck results.csv baseline.properties [tolerance, default 0.1] [--record]
+ * with --record the baseline file is (re)written from the results instead.
+ */
+public class BaselineCheck {
+    private static final double DEFAULT_TOLERANCE = 0.1;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineCheck results.csv baseline.properties [tolerance] [--record]");
+            System.exit(2);
+        }
+        Path resultsFile = Paths.get(args[0]);
+        Path baselineFile = Paths.get(args[1]);
+        double tolerance = DEFAULT_TOLERANCE;
+        boolean record = false;
+        for (int i = 2; i < args.length; i++) {
+            if ("--record".equals(args[i])) {
+                record = true;
+            } else {
+                tolerance = Double.parseDouble(args[i]);
+            }
+        }
+        Map<String, Result> results = parse(resultsFile);
+        if (record) {
+            record(results, baselineFile);
+            System.out.println("recorded " + results.size() + " baselines to " + baselineFile);
+            return;
+        }
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+            baseline.load(reader);
+        }
+        if (baseline.isEmpty()) {
+            System.out.println("no baselines in " + baselineFile + ", record them with --record first");
+            System.exit(1);
+        }
+        int regressions = 0;
+        int missing = 0;
+        for (Result result : results.values()) {
+            String expected = baseline.getProperty(result.key);
+            if (expected == null) {
+                missing++;
+                System.out.println("MISSING   " + result);
+                continue;
+            }
+            double base = Double.parseDouble(expected);
+            //throughput modes are better when higher, time modes when lower
+            double change = result.higherIsBetter() ? (base - result.score) / base : (result.score - base) / base;
+            String verdict = change > tolerance ? "REGRESSED" : "OK";
+            if (change > tolerance) {
+                regressions++;
+            }
+            System.out.printf("%-9s %s (baseline %s, %+.1f%%)%n", verdict, result, expected, change * 100);
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) beyond " + (tolerance * 100) + "%");
+        }
+        if (missing > 0) {
+            System.out.println(missing + " benchmark(s) without a baseline");
+        }
+        if (regressions > 0 || missing > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void record(Map<String, Result> results, Path baselineFile) throws IOException {
+        Map<String, String> sorted = new TreeMap<>();
+        for (Result result : results.values()) {
+            sorted.put(result.key, String.valueOf(result.score));
+        }
+        try (Writer writer = Files.newBufferedWriter(baselineFile, StandardCharsets.UTF_8)) {
+            writer.write("# recorded by BaselineCheck --record. scores are in each benchmark's own unit\n");
+            writer.write("# (see the @OutputTimeUnit of the benchmark class)\n");
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                //keys contain '=' (parameters), which must be escaped in a properties file
+                writer.write(entry.getKey().replace("=", "\\=").replace(":", "\\:") + "=" + entry.getValue() + "\n");
+            }
+        }
+    }
+
+    private static Map<String, Result> parse(Path resultsFile) throws IOException {
+        List<String> lines = Files.readAllLines(resultsFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("empty results file " + resultsFile);
+        }
+        List<String> header = split(lines.get(0));
+        int nameColumn = header.indexOf("Benchmark");
+        int modeColumn = header.indexOf("Mode");
+        int scoreColumn = header.indexOf("Score");
+        if (nameColumn < 0 || modeColumn < 0 || scoreColumn < 0) {
+            throw new IllegalArgumentException("not a jmh csv results file: " + resultsFile);
+        }
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> columns = split(line);
+            StringBuilder key = new StringBuilder(columns.get(nameColumn));
+            for (int i = 0; i < header.size(); i++) {
+                String column = header.get(i);
+                if (column.startsWith("Param: ") && i < columns.size() && !columns.get(i).isEmpty()) {
+                    key.append(':').append(column.substring("Param: ".length())).append('=').append(columns.get(i));
+                }
+            }
+            String mode = columns.get(modeColumn);
+            key.append(':').append(mode);
+            Result result = new Result(key.toString(), mode, Double.parseDouble(columns.get(scoreColumn)));
+            results.put(result.key, result);
+        }
+        return results;
+    }
+
+    private static List<String> split(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                columns.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        columns.add(current.toString());
+        return columns;
+    }
+
+    private static class Result {
+        private final String key;
+        private final String mode;
+        private final double score;
+
+        private Result(String key, String mode, double score) {
+            this.key = key;
+            this.mode = mode;
+            this.score = score;
+        }
+
+        private boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+
+        @Override
+        public String toString() {
+            return key + " = " + score;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.benchmarks;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by Radai Rosenblatt
+ * benchmark payload. same shape as the cats used in tests, but usable with every codec
+ */
+@XmlRootElement
+public class Cattery implements Serializable {
+    private String creator;
+    private List<String> comments;
+    private List<Kitten> cats;
+
+    public Cattery() {
+    }
+
+    /**
+     * @param numCats number of cats, which determines the size of the payload
+     */
+    public static Cattery of(int numCats) {
+        Cattery cattery = new Cattery();
+        cattery.setCreator("bob");
+        cattery.setComments(Arrays.asList("funny cats", "and stuff"));
+        List<Kitten> cats = new ArrayList<>(numCats);
+        for (int i = 0; i < numCats; i++) {
+            cats.add(new Kitten("cat " + i, "cat number " + i, Arrays.asList("boxes", "more boxes")));
+        }
+        cattery.setCats(cats);
+        return cattery;
+    }
+
+    public String getCreator() {
+        return creator;
+    }
+
+    public void setCreator(String creator) {
+        this.creator = creator;
+    }
+
+    public List<String> getComments() {
+        return comments;
+    }
+
+    public void setComments(List<String> comments) {
+        this.comments = comments;
+    }
+
+    public List<Kitten> getCats() {
+        return cats;
+    }
+
+    public void setCats(List<Kitten> cats) {
+        this.cats = cats;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.benchmarks;
+
+import net.radai.confusion.core.jaxb.JaxbCodec;
+import net.radai.confusion.core.serializable.SerializableCodec;
+import net.radai.confusion.core.spi.store.adapter.Adapter;
+import net.radai.confusion.core.spi.store.adapter.TextToBinaryCodec;
+import net.radai.confusion.core.util.IOUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ * parse/serialize throughput of the codecs built into core, at several payload sizes. jaxb is also parsed
+ * the way a text codec over a binary store is (off a utf8 buffer, see {@link TextToBinaryCodec}).
+ * IniCodec is left out: confusion-ini depends on garbanzo, which is only published on jitpack, and this module
+ * only depends on what maven central has so it builds wherever core does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CodecBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int cats;
+
+    private final JaxbCodec jaxb = new JaxbCodec();
+    private final SerializableCodec serializable = new SerializableCodec();
+    private final TextToBinaryCodec jaxbOverBinary = new TextToBinaryCodec(jaxb, Adapter.UTF8);
+
+    private Cattery conf;
+    private String xml;
+    private ByteBuffer xmlBinary;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() {
+        conf = Cattery.of(cats);
+        xml = jaxb.serialize(conf);
+        xmlBinary = ByteBuffer.wrap(Adapter.UTF8.toBinary(xml)).asReadOnlyBuffer();
+        serialized = serializable.serialize(conf);
+    }
+
+    @Benchmark
+    public Cattery parseJaxb() {
+        return jaxb.parse(Cattery.class, xml);
+    }
+
+    @Benchmark
+    public Cattery parseJaxbFromBinary() {
+        return jaxbOverBinary.parseStream(Cattery.class, IOUtil.stream(xmlBinary));
+    }
+
+    @Benchmark
+    public String serializeJaxb() {
+        return jaxb.serialize(conf);
+    }
+
+    @Benchmark
+    public Cattery parseSerializable() {
+        return serializable.parse(Cattery.class, serialized);
+    }
+
+    @Benchmark
+    public byte[] serializeSerializable() {
+        return serializable.serialize(conf);
+    }
+}
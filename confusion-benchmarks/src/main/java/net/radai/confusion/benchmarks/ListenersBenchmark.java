@@ -0,0 +1,85 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.benchmarks;
+
+import net.radai.confusion.core.util.Listeners;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Created by Radai Rosenblatt
+ * notifying listeners, alone and while other threads keep registering and unregistering listeners
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ListenersBenchmark {
+
+    @Param({"1", "16", "256", "100000"})
+    private int listeners;
+
+    private Listeners<Consumer<Blackhole>> registry;
+
+    @Setup
+    public void setup() {
+        registry = new Listeners<>();
+        for (int i = 0; i < listeners; i++) {
+            registry.register(bh -> bh.consume(this));
+        }
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public void forEach(Blackhole bh) {
+        registry.forEach(listener -> listener.accept(bh));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void contendedForEach(Blackhole bh) {
+        registry.forEach(listener -> listener.accept(bh));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void churn(Blackhole bh) {
+        Consumer<Blackhole> listener = b -> b.consume(bh);
+        registry.register(listener);
+        registry.unregister(listener);
+    }
+}
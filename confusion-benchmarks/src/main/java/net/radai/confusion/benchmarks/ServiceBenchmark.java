@@ -0,0 +1,93 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.benchmarks;
+
+import net.radai.confusion.core.Confusion;
+import net.radai.confusion.core.SimpleConfigurationService;
+import net.radai.confusion.core.inmem.InMemBinaryStore;
+import net.radai.confusion.core.serializable.SerializableCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ * the read path - getConfiguration() from many threads, with and without configuration changes going on
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ServiceBenchmark {
+
+    private SimpleConfigurationService<Cattery> service;
+    private Cattery[] confs;
+    private int next = 0; //only touched by the single updating thread
+
+    @Setup
+    public void setup() throws IOException {
+        SerializableCodec codec = new SerializableCodec();
+        InMemBinaryStore store = new InMemBinaryStore();
+        store.write(codec.serialize(Cattery.of(10)));
+        service = Confusion.create(Cattery.class, store, codec);
+        service.start();
+        confs = new Cattery[] {Cattery.of(10), Cattery.of(10)};
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.stop();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Cattery getConfiguration() {
+        return service.getConfiguration();
+    }
+
+    @Benchmark
+    @Group("updating")
+    @GroupThreads(3)
+    public Cattery getConfigurationWhileUpdating() {
+        return service.getConfiguration();
+    }
+
+    @Benchmark
+    @Group("updating")
+    @GroupThreads(1)
+    public void update() throws Exception {
+        next = (next + 1) % confs.length;
+        service.sourceChanged(confs[next]); //as if read from the store, minus the i/o
+    }
+}
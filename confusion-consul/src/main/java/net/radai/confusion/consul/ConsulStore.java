@@ -21,6 +21,9 @@ import com.ecwid.consul.v1.ConsulClient;
 import com.ecwid.consul.v1.QueryParams;
 import com.ecwid.consul.v1.Response;
 import com.ecwid.consul.v1.kv.model.GetBinaryValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import net.radai.confusion.core.api.VersionConflictException;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.store.AbstractBinaryStore;
 
 import java.io.*;
@@ -75,6 +78,43 @@ public class ConsulStore extends AbstractBinaryStore {
         return decode(value);
     }
 
+    /**
+     * versions are consul's ModifyIndex for the key (0 if the key does not exist)
+     */
+    @Override
+    public Versioned<byte[]> readVersioned() throws IOException {
+        Response<GetBinaryValue> response = client.getKVBinaryValue(key);
+        GetBinaryValue value = response.getValue();
+        return new Versioned<>(decode(value), value == null ? 0 : value.getModifyIndex());
+    }
+
+    /**
+     * uses consul's check-and-set (a cas of 0 only succeeds if the key does not exist)
+     */
+    @Override
+    public long write(byte[] payload, long expectedVersion) throws IOException {
+        if (expectedVersion < 0) {
+            throw new IllegalArgumentException("illegal version " + expectedVersion);
+        }
+        if (payload == null) {
+            //the client we use does not expose cas for deletes
+            throw new UnsupportedOperationException("conditional delete is not supported by " + this);
+        }
+        PutParams params = new PutParams();
+        params.setCas(expectedVersion);
+        Response<Boolean> response = client.setKVBinaryValue(key, payload, params);
+        if (!response.getValue()) {
+            throw new VersionConflictException(toString(), expectedVersion, Versioned.UNKNOWN);
+        }
+        //consul doesn't return the index of the write, and reading it back might pick up someone else's
+        return Versioned.UNKNOWN;
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return true;
+    }
+
     @Override
     public void write(byte[] payload) throws IOException {
         if (payload == null) {
@@ -88,6 +128,11 @@ public class ConsulStore extends AbstractBinaryStore {
         }
     }
 
+    @Override
+    public String toString() {
+        return "consul://" + host + ":" + port + "/" + key;
+    }
+
     @Override
     protected BinaryPollRunnable createRunnable() {
         return new PollRunnable();
@@ -112,6 +157,7 @@ public class ConsulStore extends AbstractBinaryStore {
                 //go fetch
                 markWatching();
                 response = client.getKVBinaryValue(key, new QueryParams(pollSeconds, lastModIndex));
+                markPolled();
                 value = response.getValue();
                 byte[] blob = decode(value);
                 boolean fire = false;
@@ -131,7 +177,7 @@ public class ConsulStore extends AbstractBinaryStore {
                 }
 
                 if (fire) {
-                    fire(blob);
+                    fire(blob, value == null ? 0 : value.getModifyIndex());
                 }
             }
         }
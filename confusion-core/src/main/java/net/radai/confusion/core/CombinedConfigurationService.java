@@ -0,0 +1,72 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.api.ConfigurationService;
+
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class CombinedConfigurationService<A, B, R> extends DerivedConfigurationService<R> {
+    private final ConfigurationService<A> first;
+    private final ConfigurationService<B> second;
+    private final BiFunction<? super A, ? super B, ? extends R> combiner;
+    private final ConfigurationListener<A> firstListener;
+    private final ConfigurationListener<B> secondListener;
+
+    public CombinedConfigurationService(
+            ConfigurationService<A> first,
+            ConfigurationService<B> second,
+            Class<R> type,
+            BiFunction<? super A, ? super B, ? extends R> combiner,
+            Executor executor
+    ) {
+        super(type, executor);
+        if (first == null || second == null || combiner == null) {
+            throw new IllegalArgumentException();
+        }
+        this.first = first;
+        this.second = second;
+        this.combiner = combiner;
+        this.firstListener = upstreamListener();
+        this.secondListener = upstreamListener();
+        this.first.register(firstListener);
+        this.second.register(secondListener);
+    }
+
+    @Override
+    protected Object[] readSources() {
+        return new Object[] {first.getConfiguration(), second.getConfiguration()};
+    }
+
+    @Override
+    protected R derive(Object[] sources) {
+        //noinspection unchecked
+        return combiner.apply((A) sources[0], (B) sources[1]);
+    }
+
+    @Override
+    public void close() {
+        first.unregister(firstListener);
+        second.unregister(secondListener);
+    }
+}
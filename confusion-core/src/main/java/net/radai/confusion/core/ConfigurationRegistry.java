@@ -0,0 +1,315 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.api.ServiceLifecycle;
+import net.radai.confusion.core.fs.DirectoryWatcher;
+import net.radai.confusion.core.fs.DirectoryStore;
+import net.radai.confusion.core.fs.PathStore;
+import net.radai.confusion.core.spi.codec.Codec;
+import net.radai.confusion.core.spi.source.Source;
+import net.radai.confusion.core.spi.source.Sources;
+import net.radai.confusion.core.spi.store.AbstractPollingStore;
+import net.radai.confusion.core.spi.store.Store;
+import net.radai.confusion.core.spi.validator.NopValidator;
+import net.radai.confusion.core.spi.validator.Validator;
+import net.radai.confusion.core.util.Threads;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Created by Radai Rosenblatt
+ * creates and owns many configuration services, keyed by configuration type and name, and starts/stops them as a group.
+ * all services share a single scheduler (and optionally a single listener executor). file stores handed to the
+ * registry (path and directory stores) share a single {@link DirectoryWatcher} (and so a single watcher thread, no matter how many of them there are),
+ * and all other polling stores create their poll threads using a common thread factory (small-stacked daemon threads
+ * by default). stores that block on a remote long-poll (consul, etcd, kafka) still need a thread each.
+ * the shared scheduler only times delayed work (coalesced changes, batched writes, retries). the work itself runs
+ * on each service's executor (see {@link SimpleConfigurationService#setExecutor(Executor)}), so a slow store or
+ * listener of one service does not hold up the others.
+ */
+public class ConfigurationRegistry implements ServiceLifecycle {
+    public static final String DEFAULT_NAME = "default";
+
+    private final Logger log = LogManager.getLogger(getClass());
+
+    private final ThreadFactory watcherThreadFactory;
+    private final DirectoryWatcher directoryWatcher;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final Executor listenerExecutor;
+    private final ConcurrentMap<Key, SimpleConfigurationService<?>> services = new ConcurrentHashMap<>();
+    private volatile boolean on = false;
+
+    public ConfigurationRegistry() {
+        this(Threads.daemonThreadFactory("confusion-watcher", Threads.WATCHER_STACK_SIZE), null, null);
+    }
+
+    public ConfigurationRegistry(ThreadFactory watcherThreadFactory, ScheduledExecutorService scheduler, Executor listenerExecutor) {
+        this(watcherThreadFactory, DirectoryWatcher.shared(), scheduler, listenerExecutor);
+    }
+
+    /**
+     * @param watcherThreadFactory factory for store poll threads, or null to have every store create its own
+     * @param directoryWatcher watcher for file stores to share, or null to have them poll on their own threads
+     *                         (created using watcherThreadFactory)
+     * @param scheduler scheduler shared by all services, or null to create one (shut down on {@link #close()})
+     * @param listenerExecutor executor to run listeners on, or null to invoke them inline
+     *                         (see {@link SimpleConfigurationService#setListenerExecutor(Executor)})
+     */
+    public ConfigurationRegistry(ThreadFactory watcherThreadFactory, DirectoryWatcher directoryWatcher, ScheduledExecutorService scheduler, Executor listenerExecutor) {
+        this.watcherThreadFactory = watcherThreadFactory;
+        this.directoryWatcher = directoryWatcher;
+        this.ownScheduler = scheduler == null;
+        //scheduler threads are only created once something is actually scheduled
+        this.scheduler = scheduler != null ? scheduler : Executors.newSingleThreadScheduledExecutor(Threads.daemonThreadFactory("confusion-scheduler"));
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    public <T> SimpleConfigurationService<T> register(Class<T> confBeanClass, Store store, Codec codec) {
+        return register(confBeanClass, DEFAULT_NAME, store, codec, new NopValidator());
+    }
+
+    public <T> SimpleConfigurationService<T> register(Class<T> confBeanClass, String name, Store store, Codec codec) {
+        return register(confBeanClass, name, store, codec, new NopValidator());
+    }
+
+    public <T> SimpleConfigurationService<T> register(Class<T> confBeanClass, String name, Store store, Codec codec, Validator validator) {
+        if (store == null) {
+            throw new IllegalArgumentException("all arguments are mandatory");
+        }
+        Key key = new Key(confBeanClass, name);
+        if (services.containsKey(key)) {
+            throw new IllegalStateException("already registered: " + key); //before we touch the store
+        }
+        if (directoryWatcher != null && store instanceof PathStore) {
+            PathStore pathStore = (PathStore) store;
+            if (pathStore.getWatcher() == null && pathStore.getThreadFactory() == null) {
+                pathStore.setWatcher(directoryWatcher);
+            }
+        }
+        if (directoryWatcher != null && store instanceof DirectoryStore) {
+            DirectoryStore directoryStore = (DirectoryStore) store;
+            if (directoryStore.getWatcher() == null && directoryStore.getThreadFactory() == null) {
+                directoryStore.setWatcher(directoryWatcher);
+            }
+        }
+        if (watcherThreadFactory != null && store instanceof AbstractPollingStore) {
+            AbstractPollingStore pollingStore = (AbstractPollingStore) store;
+            if (pollingStore.getThreadFactory() == null) {
+                pollingStore.setThreadFactory(watcherThreadFactory);
+            }
+        }
+        return register(key, Sources.from(confBeanClass, store, codec), validator);
+    }
+
+    /**
+     * registers a configuration read from an arbitrary source. since the registry has no access to
+     * the underlying store it is up to the caller to configure the store's poll thread (or watcher).
+     */
+    public <T> SimpleConfigurationService<T> register(Class<T> confBeanClass, String name, Source<T> source, Validator validator) {
+        return register(new Key(confBeanClass, name), source, validator);
+    }
+
+    private synchronized <T> SimpleConfigurationService<T> register(Key key, Source<T> source, Validator validator) {
+        if (services.containsKey(key)) {
+            throw new IllegalStateException("already registered: " + key);
+        }
+        //noinspection unchecked
+        SimpleConfigurationService<T> service = new SimpleConfigurationService<>((Class<T>) key.type, source, validator);
+        service.setScheduler(scheduler);
+        if (listenerExecutor != null) {
+            service.setListenerExecutor(listenerExecutor);
+        }
+        if (on) {
+            service.start();
+        }
+        services.put(key, service);
+        return service;
+    }
+
+    public <T> SimpleConfigurationService<T> get(Class<T> confBeanClass) {
+        return get(confBeanClass, DEFAULT_NAME);
+    }
+
+    /**
+     * @return the service registered under the given type and name, or null if none
+     */
+    public <T> SimpleConfigurationService<T> get(Class<T> confBeanClass, String name) {
+        //noinspection unchecked
+        return (SimpleConfigurationService<T>) services.get(new Key(confBeanClass, name));
+    }
+
+    /**
+     * removes (and stops) a service
+     * @return true if a service was registered under the given type and name
+     */
+    public synchronized boolean unregister(Class<?> confBeanClass, String name) {
+        SimpleConfigurationService<?> service = services.remove(new Key(confBeanClass, name));
+        if (service == null) {
+            return false;
+        }
+        service.stop();
+        return true;
+    }
+
+    public Collection<SimpleConfigurationService<?>> getServices() {
+        return Collections.unmodifiableCollection(services.values());
+    }
+
+    public int size() {
+        return services.size();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (on) {
+            throw new IllegalStateException();
+        }
+        List<SimpleConfigurationService<?>> started = new ArrayList<>(services.size());
+        try {
+            for (SimpleConfigurationService<?> service : services.values()) {
+                service.start();
+                started.add(service);
+            }
+        } catch (RuntimeException e) {
+            //all or nothing
+            for (SimpleConfigurationService<?> service : started) {
+                try {
+                    service.stop();
+                } catch (Exception e2) {
+                    e.addSuppressed(e2);
+                }
+            }
+            throw e;
+        }
+        on = true;
+    }
+
+    /**
+     * starts all services concurrently (see {@link SimpleConfigurationService#startAsync()})
+     * @return a future that completes once all services are ready. if any of them fails to start they are all stopped
+     */
+    @Override
+    public synchronized CompletableFuture<Void> startAsync() {
+        if (on) {
+            throw new IllegalStateException();
+        }
+        on = true;
+        List<CompletableFuture<Void>> futures = new ArrayList<>(services.size());
+        for (SimpleConfigurationService<?> service : services.values()) {
+            futures.add(service.startAsync());
+        }
+        //stop() is run on the scheduler, not on whichever (service) thread completed the last future
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).whenCompleteAsync((nothing, e) -> {
+            if (e != null) {
+                log.error("unable to start all services, stopping", e);
+                stop();
+            }
+        }, scheduler);
+    }
+
+    @Override
+    public boolean isReady() {
+        if (!on) {
+            return false;
+        }
+        for (SimpleConfigurationService<?> service : services.values()) {
+            if (!service.isReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!on) {
+            return;
+        }
+        on = false;
+        for (SimpleConfigurationService<?> service : services.values()) {
+            try {
+                service.stop();
+            } catch (Exception e) {
+                log.error("while stopping " + service, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isStarted() {
+        return on;
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static class Key {
+        private final Class<?> type;
+        private final String name;
+
+        private Key(Class<?> type, String name) {
+            if (type == null || name == null) {
+                throw new IllegalArgumentException("type and name are mandatory");
+            }
+            this.type = type;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type == key.type && name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, name);
+        }
+
+        @Override
+        public String toString() {
+            return type.getName() + "/" + name;
+        }
+    }
+}
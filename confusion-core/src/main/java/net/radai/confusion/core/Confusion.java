@@ -17,6 +17,9 @@
 
 package net.radai.confusion.core;
 
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationDiff;
+import net.radai.confusion.core.beans.BeanDiff;
 import net.radai.confusion.core.spi.codec.Codec;
 import net.radai.confusion.core.spi.source.Sources;
 import net.radai.confusion.core.spi.store.Store;
@@ -48,4 +51,16 @@ public class Confusion {
                 allowNull ? new NopValidator() : new NotNullValidator()
         );
     }
+
+    /**
+     * @param event change event
+     * @return what changed between the old and new configuration of the given event. computed once
+     * per event (and shared by all listeners) for events fired by {@link SimpleConfigurationService}
+     */
+    public static ConfigurationDiff diff(ConfigurationChangeEvent<?> event) {
+        if (event instanceof SimpleConfigurationChangeEvent) {
+            return ((SimpleConfigurationChangeEvent<?>) event).getDiff();
+        }
+        return BeanDiff.compute(event.getOldConf(), event.getNewConf());
+    }
 }
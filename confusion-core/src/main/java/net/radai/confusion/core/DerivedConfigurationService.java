@@ -0,0 +1,304 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.api.ConfigurationService;
+import net.radai.confusion.core.api.InvalidConfigurationEvent;
+import net.radai.confusion.core.util.Listeners;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Created by Radai Rosenblatt
+ * read-only view of a value derived from one or more upstream configurations.
+ * the derived value is computed at most once per upstream change (and is shared by all readers).
+ * if recomputing results in a value equal to the previous one the previous instance is retained and
+ * listeners are not notified. reads of an up-to-date value cost a single volatile read.
+ * the value is recomputed lazily, on 1st read after a change, unless this view has listeners (which need to
+ * be told about the new value) or was given an executor to eagerly recompute on.
+ */
+public abstract class DerivedConfigurationService<R> implements ConfigurationService<R>, AutoCloseable {
+    private final Logger log = LogManager.getLogger(getClass());
+
+    private final Class<R> type;
+    private final Executor executor; //null means lazy
+    private final Listeners<ConfigurationListener<R>> listeners = new Listeners<>();
+    private final ConcurrentMap<ConfigurationListener<R>, Predicate<ConfigurationChangeEvent<R>>> filters = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    private volatile Derived<R> current = null; //null means needs to be (re)computed
+    private Derived<R> latest = null; //guarded by lock
+    private Derived<R> notified = null; //last value listeners were told about. guarded by lock
+    private volatile boolean hasListeners = false;
+
+    /**
+     * @param type type of the derived value, or null if unknown
+     * @param executor executor to eagerly recompute the value on, or null to recompute lazily
+     */
+    protected DerivedConfigurationService(Class<R> type, Executor executor) {
+        this.type = type;
+        this.executor = executor;
+    }
+
+    /**
+     * @param upstream upstream configuration
+     * @param mapper function deriving a value from the upstream configuration
+     * @return a read-only view of the derived value, recomputed (lazily) once per upstream change
+     */
+    public static <T, R> DerivedConfigurationService<R> map(ConfigurationService<T> upstream, Function<? super T, ? extends R> mapper) {
+        return map(upstream, null, mapper, null);
+    }
+
+    /**
+     * @param upstream upstream configuration
+     * @param type type of the derived value (or null if unknown)
+     * @param mapper function deriving a value from the upstream configuration
+     * @param executor executor to eagerly recompute the value on when the upstream configuration changes,
+     *                 or null to recompute lazily
+     * @return a read-only view of the derived value, recomputed once per upstream change
+     */
+    public static <T, R> DerivedConfigurationService<R> map(
+            ConfigurationService<T> upstream,
+            Class<R> type,
+            Function<? super T, ? extends R> mapper,
+            Executor executor
+    ) {
+        return new MappedConfigurationService<>(upstream, type, mapper, executor);
+    }
+
+    /**
+     * @param a one configuration
+     * @param b another configuration
+     * @param combiner function deriving a value from both configurations
+     * @return a read-only view of the derived value, recomputed (lazily) once per change to either configuration
+     */
+    public static <A, B, R> DerivedConfigurationService<R> combine(
+            ConfigurationService<A> a,
+            ConfigurationService<B> b,
+            BiFunction<? super A, ? super B, ? extends R> combiner
+    ) {
+        return combine(a, b, null, combiner, null);
+    }
+
+    public static <A, B, R> DerivedConfigurationService<R> combine(
+            ConfigurationService<A> a,
+            ConfigurationService<B> b,
+            Class<R> type,
+            BiFunction<? super A, ? super B, ? extends R> combiner,
+            Executor executor
+    ) {
+        return new CombinedConfigurationService<>(a, b, type, combiner, executor);
+    }
+
+    /**
+     * @return current values of the upstream configurations
+     */
+    protected abstract Object[] readSources();
+
+    /**
+     * @param sources (current) upstream values, as returned by {@link #readSources()}
+     * @return derived value
+     */
+    protected abstract R derive(Object[] sources);
+
+    /**
+     * @return a listener that should be registered with every upstream service
+     */
+    protected <T> ConfigurationListener<T> upstreamListener() {
+        return new ConfigurationListener<T>() {
+            @Override
+            public void configurationChanged(ConfigurationChangeEvent<T> event) {
+                upstreamChanged();
+            }
+
+            @Override
+            public void invalidConfigurationRead(InvalidConfigurationEvent<T> event) {
+                //upstream stays the same, so do we
+            }
+        };
+    }
+
+    @Override
+    public R getConfiguration() {
+        Derived<R> derived = current;
+        if (derived != null) {
+            return derived.value;
+        }
+        synchronized (lock) {
+            return ensureComputed().value;
+        }
+    }
+
+    @Override
+    public void updateConfiguration(R newConfiguration) {
+        throw new UnsupportedOperationException("derived configurations are read-only");
+    }
+
+    @Override
+    public Class<R> getConfigurationType() {
+        if (type != null) {
+            return type;
+        }
+        R value = getConfiguration();
+        //noinspection unchecked
+        return value == null ? null : (Class<R>) value.getClass();
+    }
+
+    @Override
+    public void register(ConfigurationListener<R> newListener) {
+        listeners.register(newListener);
+        seed();
+    }
+
+    @Override
+    public void registerWeakly(ConfigurationListener<R> newListener) {
+        listeners.registerWeakly(newListener);
+        seed();
+    }
+
+    @Override
+    public void register(String path, ConfigurationListener<R> newListener) {
+        register(newListener, Subscriptions.path(path));
+    }
+
+    @Override
+    public void register(Function<? super R, ?> property, ConfigurationListener<R> newListener) {
+        register(newListener, Subscriptions.property(property));
+    }
+
+    private void register(ConfigurationListener<R> newListener, Predicate<ConfigurationChangeEvent<R>> filter) {
+        if (newListener == null) {
+            throw new IllegalArgumentException();
+        }
+        if (filters.putIfAbsent(newListener, filter) != null) {
+            throw new IllegalStateException("listener already registered: " + newListener);
+        }
+        try {
+            listeners.register(newListener);
+        } catch (RuntimeException e) {
+            filters.remove(newListener);
+            throw e;
+        }
+        seed();
+    }
+
+    @Override
+    public void unregister(ConfigurationListener<R> existingListener) {
+        listeners.unregister(existingListener);
+        filters.remove(existingListener);
+    }
+
+    private void seed() {
+        hasListeners = true;
+        synchronized (lock) {
+            if (notified != null) {
+                return;
+            }
+            try {
+                notified = ensureComputed(); //establish a baseline to report future changes against
+            } catch (IllegalStateException e) {
+                //upstream not started yet. we'll get a baseline once it is
+            }
+        }
+    }
+
+    private Derived<R> ensureComputed() { //must be called while holding lock
+        Derived<R> derived = current;
+        if (derived != null) {
+            return derived;
+        }
+        Object[] sources = readSources();
+        if (latest != null && sameSources(latest.sources, sources)) {
+            derived = latest; //upstream is back to what we last derived from
+        } else {
+            R value = derive(sources);
+            if (latest != null && Objects.equals(latest.value, value)) {
+                value = latest.value; //keep the existing instance
+            }
+            derived = new Derived<>(sources, value);
+        }
+        latest = derived;
+        current = derived;
+        return derived;
+    }
+
+    private void upstreamChanged() {
+        synchronized (lock) {
+            current = null;
+        }
+        if (executor != null) {
+            executor.execute(this::publish);
+        } else if (hasListeners) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        Derived<R> prev;
+        Derived<R> derived;
+        try {
+            synchronized (lock) {
+                derived = ensureComputed();
+                prev = notified;
+                notified = derived;
+            }
+        } catch (Exception e) {
+            log.error("while deriving configuration", e);
+            return;
+        }
+        if (prev == null || prev.value == derived.value) {
+            return;
+        }
+        ConfigurationChangeEvent<R> event = new SimpleConfigurationChangeEvent<>(getConfigurationType(), prev.value, derived.value);
+        listeners.forEach(listener -> {
+            Predicate<ConfigurationChangeEvent<R>> filter = filters.get(listener);
+            if (filter == null || filter.test(event)) {
+                listener.configurationChanged(event);
+            }
+        });
+    }
+
+    private static boolean sameSources(Object[] a, Object[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Derived<R> {
+        private final Object[] sources;
+        private final R value;
+
+        private Derived(Object[] sources, R value) {
+            this.sources = sources;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+import net.radai.confusion.core.util.Listeners;
+import net.radai.confusion.core.util.SerialExecutor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Created by Radai Rosenblatt
+ * notifies the listeners of a service - filtered by their subscriptions, inline or each on a lane of its own,
+ * and (optionally) timed against a budget. isolated slow listeners run on the service's executor.
+ */
+class ListenerDispatcher<T> {
+    private final Logger log = LogManager.getLogger(getClass());
+
+    private final ServiceExecutors executors;
+    private final Listeners<ConfigurationListener<T>> listeners = new Listeners<>();
+    private final ConcurrentMap<ConfigurationListener<T>, Predicate<ConfigurationChangeEvent<T>>> filters = new ConcurrentHashMap<>();
+    //per-listener lanes and timing. weakly keyed so as not to hold on to weakly registered listeners
+    private final Map<ConfigurationListener<T>, ListenerState> listenerStates = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile Executor listenerExecutor = null; //null means listeners are invoked on the source's thread
+    private volatile long listenerBudgetNanos = 0; //0 means listeners are not timed
+    private volatile int listenerStrikes = 1;
+    private volatile SlowListenerPolicy slowListenerPolicy = SlowListenerPolicy.LOG;
+
+    ListenerDispatcher(ServiceExecutors executors) {
+        this.executors = executors;
+    }
+
+    void register(ConfigurationListener<T> newListener) {
+        listeners.register(newListener);
+    }
+
+    void registerWeakly(ConfigurationListener<T> newListener) {
+        listeners.registerWeakly(newListener);
+    }
+
+    /**
+     * @param filter only events it accepts are dispatched to the listener
+     */
+    void register(ConfigurationListener<T> newListener, Predicate<ConfigurationChangeEvent<T>> filter) {
+        if (newListener == null) {
+            throw new IllegalArgumentException();
+        }
+        //filter goes in 1st so the listener is never invoked unfiltered
+        if (filters.putIfAbsent(newListener, filter) != null) {
+            throw new IllegalStateException("listener already registered: " + newListener);
+        }
+        try {
+            listeners.register(newListener);
+        } catch (RuntimeException e) {
+            filters.remove(newListener);
+            throw e;
+        }
+    }
+
+    void unregister(ConfigurationListener<T> existingListener) {
+        listeners.unregister(existingListener);
+        listenerStates.remove(existingListener);
+        filters.remove(existingListener);
+    }
+
+    void setListenerExecutor(Executor listenerExecutor) {
+        this.listenerExecutor = listenerExecutor;
+        listenerStates.clear();
+    }
+
+    Executor getListenerExecutor() {
+        return listenerExecutor;
+    }
+
+    void setListenerBudget(long budgetNanos, int strikes, SlowListenerPolicy policy) {
+        this.listenerBudgetNanos = budgetNanos;
+        this.listenerStrikes = strikes;
+        this.slowListenerPolicy = policy;
+        listenerStates.clear();
+    }
+
+    long getListenerBudgetNanos() {
+        return listenerBudgetNanos;
+    }
+
+    SlowListenerPolicy getSlowListenerPolicy() {
+        return slowListenerPolicy;
+    }
+
+    List<ConfigurationListener<T>> getSlowListeners() {
+        List<ConfigurationListener<T>> slow = new ArrayList<>();
+        synchronized (listenerStates) {
+            listenerStates.forEach((listener, state) -> {
+                if (state.slow) {
+                    slow.add(listener);
+                }
+            });
+        }
+        return slow;
+    }
+
+    /**
+     * @param metrics metrics to report to
+     * @param eventVersion version the event is about (reported to metrics)
+     * @param changeEvent change being dispatched (used to filter out listeners not interested in it) or null
+     * @param action invokes the listener
+     */
+    void dispatch(ConfigurationMetrics metrics, long eventVersion, ConfigurationChangeEvent<T> changeEvent, Consumer<ConfigurationListener<T>> action) {
+        Executor executor = listenerExecutor;
+        boolean tracked = executor != null || listenerBudgetNanos > 0;
+        ConfigurationMetrics.Span dispatching = metrics.begin(ConfigurationMetrics.Stage.DISPATCH);
+        try {
+            listeners.forEach(listener -> {
+                if (changeEvent != null) {
+                    Predicate<ConfigurationChangeEvent<T>> filter = filters.get(listener);
+                    if (filter != null && !filter.test(changeEvent)) {
+                        return;
+                    }
+                }
+                if (!tracked) {
+                    invoke(null, metrics, eventVersion, listener, action);
+                    return;
+                }
+                ListenerState state = listenerStates.computeIfAbsent(listener, l -> new ListenerState());
+                if (state.slow && slowListenerPolicy == SlowListenerPolicy.SKIP) {
+                    log.warn("skipping slow listener {} for version {}", listener, eventVersion);
+                    return;
+                }
+                if (executor == null && !state.isolated()) {
+                    invoke(state, metrics, eventVersion, listener, action);
+                    return;
+                }
+                try {
+                    state.lane.execute(() -> {
+                        try {
+                            invoke(state, metrics, eventVersion, listener, action);
+                        } catch (Exception e) {
+                            log.error("listener " + listener + " threw", e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.warn("unable to notify listener {} of version {}", listener, eventVersion, e);
+                }
+            });
+        } finally {
+            dispatching.end(-1, eventVersion);
+        }
+    }
+
+    /**
+     * @param state timing state of the listener, or null if listeners are not timed
+     */
+    private void invoke(ListenerState state, ConfigurationMetrics metrics, long eventVersion, ConfigurationListener<T> listener, Consumer<ConfigurationListener<T>> action) {
+        long budget = listenerBudgetNanos;
+        long start = budget > 0 ? System.nanoTime() : 0;
+        ConfigurationMetrics.Span span = metrics.begin(ConfigurationMetrics.Stage.LISTENER);
+        try {
+            action.accept(listener);
+        } finally {
+            span.end(-1, eventVersion);
+            if (budget > 0 && state != null) {
+                state.timed(listener, System.nanoTime() - start, budget, metrics);
+            }
+        }
+    }
+
+    /**
+     * per-listener lane (for asynchronous or isolated notification) and timing. must not reference the listener,
+     * as it is the value of a weakly keyed map
+     */
+    private class ListenerState implements Executor {
+        private final SerialExecutor lane = new SerialExecutor(this);
+        private int strikes = 0; //only updated by the listener's own (serial) callbacks
+        private volatile boolean slow = false;
+
+        private boolean isolated() {
+            return slow && slowListenerPolicy == SlowListenerPolicy.ISOLATE;
+        }
+
+        /**
+         * the lane runs on the listener executor until the listener is isolated. switching underneath the lane
+         * keeps events queued for the listener in order.
+         */
+        @Override
+        public void execute(Runnable task) {
+            Executor executor = listenerExecutor;
+            (executor == null || isolated() ? executors.executor() : executor).execute(task);
+        }
+
+        private void timed(ConfigurationListener<T> listener, long nanos, long budget, ConfigurationMetrics metrics) {
+            if (nanos <= budget) {
+                strikes = 0;
+                return;
+            }
+            if (++strikes < listenerStrikes || slow) {
+                return;
+            }
+            slow = true;
+            log.warn("listener {} exceeded its {} ms budget {} times in a row (last took {} ms). slow listener policy is {}",
+                    listener, TimeUnit.NANOSECONDS.toMillis(budget), strikes, TimeUnit.NANOSECONDS.toMillis(nanos), slowListenerPolicy);
+            metrics.recordSlowListener(String.valueOf(listener), nanos);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.api.ConfigurationService;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class MappedConfigurationService<T, R> extends DerivedConfigurationService<R> {
+    private final ConfigurationService<T> upstream;
+    private final Function<? super T, ? extends R> mapper;
+    private final ConfigurationListener<T> upstreamListener;
+
+    public MappedConfigurationService(
+            ConfigurationService<T> upstream,
+            Class<R> type,
+            Function<? super T, ? extends R> mapper,
+            Executor executor
+    ) {
+        super(type, executor);
+        if (upstream == null || mapper == null) {
+            throw new IllegalArgumentException();
+        }
+        this.upstream = upstream;
+        this.mapper = mapper;
+        this.upstreamListener = upstreamListener();
+        this.upstream.register(upstreamListener);
+    }
+
+    @Override
+    protected Object[] readSources() {
+        return new Object[] {upstream.getConfiguration()};
+    }
+
+    @Override
+    protected R derive(Object[] sources) {
+        //noinspection unchecked
+        return mapper.apply((T) sources[0]);
+    }
+
+    @Override
+    public void close() {
+        upstream.unregister(upstreamListener);
+    }
+}
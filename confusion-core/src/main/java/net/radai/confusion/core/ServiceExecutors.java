@@ -0,0 +1,98 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.util.Threads;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Created by Radai Rosenblatt
+ * the scheduler and executor a service runs its background work on. either may be provided (and shared with
+ * other services), otherwise one is created for the service while it is started, and shut down when it is stopped.
+ */
+class ServiceExecutors {
+    private final String name;
+    private volatile ScheduledExecutorService scheduler = null; //provided
+    private volatile Executor executor = null; //provided
+    private ScheduledExecutorService ownScheduler = null; //created when first needed. guarded by this
+    private volatile ExecutorService ownExecutor = null; //created on open()
+
+    ServiceExecutors(String name) {
+        this.name = name;
+    }
+
+    void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the provided executor, or null if the service has one of its own
+     */
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * creates the executor, unless one was provided
+     */
+    synchronized void open() {
+        if (executor == null && (ownExecutor == null || ownExecutor.isShutdown())) {
+            //idle threads expire, so an idle service holds on to none
+            ownExecutor = Executors.newCachedThreadPool(Threads.daemonThreadFactory(name + " worker"));
+        }
+    }
+
+    /**
+     * @return the executor. rejects work once closed (unless provided)
+     */
+    Executor executor() {
+        Executor provided = executor;
+        return provided != null ? provided : ownExecutor;
+    }
+
+    synchronized ScheduledExecutorService scheduler() {
+        if (scheduler != null) {
+            return scheduler;
+        }
+        if (ownScheduler == null) {
+            ownScheduler = Executors.newSingleThreadScheduledExecutor(Threads.daemonThreadFactory(name + " scheduler"));
+        }
+        return ownScheduler;
+    }
+
+    /**
+     * shuts down whatever was created. work already running on the executor is allowed to complete
+     */
+    synchronized void close() {
+        if (ownScheduler != null) {
+            ownScheduler.shutdownNow();
+            ownScheduler = null;
+        }
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+}
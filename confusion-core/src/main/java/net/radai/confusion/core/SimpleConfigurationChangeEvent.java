@@ -18,6 +18,8 @@
 package net.radai.confusion.core;
 
 import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationDiff;
+import net.radai.confusion.core.beans.BeanDiff;
 
 import java.util.Objects;
 
@@ -28,6 +30,7 @@ public class SimpleConfigurationChangeEvent<T> implements ConfigurationChangeEve
     private final Class<T> confClass;
     private final T oldConf;
     private final T newConf;
+    private volatile ConfigurationDiff diff; //computed on demand, once, and shared by all listeners
 
     public SimpleConfigurationChangeEvent(Class<T> confClass, T oldConf, T newConf) {
         this.confClass = confClass;
@@ -50,6 +53,23 @@ public class SimpleConfigurationChangeEvent<T> implements ConfigurationChangeEve
         return confClass;
     }
 
+    /**
+     * @return what changed between the old and new configuration
+     */
+    public ConfigurationDiff getDiff() {
+        ConfigurationDiff result = diff;
+        if (result == null) {
+            synchronized (this) {
+                result = diff;
+                if (result == null) {
+                    result = BeanDiff.compute(oldConf, newConf);
+                    diff = result;
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -18,21 +18,38 @@
 package net.radai.confusion.core;
 
 import net.radai.confusion.core.api.*;
+import net.radai.confusion.core.beans.BeanCopier;
+import net.radai.confusion.core.beans.BeanDiff;
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+import net.radai.confusion.core.spi.snapshot.Snapshot;
 import net.radai.confusion.core.spi.validator.ValidationResults;
 import net.radai.confusion.core.spi.validator.Validator;
 import net.radai.confusion.core.spi.source.Source;
 import net.radai.confusion.core.spi.source.SourceListener;
-import net.radai.confusion.core.util.Listeners;
+import net.radai.confusion.core.util.Coalescer;
+import net.radai.confusion.core.util.WriteBatcher;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 /**
  * Created by Radai Rosenblatt
  */
 public class SimpleConfigurationService<T> implements ConfigurationService<T>, ServiceLifecycle, SourceListener<T> {
+    private static final long RECONCILE_MIN_RETRY_MILLIS = 100;
+    private static final long RECONCILE_MAX_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
     private final Logger log = LogManager.getLogger(getClass());
 
     //configuration
@@ -41,11 +58,30 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
     //components
     private final Source<T> source;
     private final Validator validator;
-    private final Listeners<ConfigurationListener<T>> listeners = new Listeners<>();
+    private final ServiceExecutors executors;
+    private final ListenerDispatcher<T> listeners;
+    private volatile long coalescingWindowNanos = -1; //negative means changes are applied as they arrive
+    private volatile double maxAppliesPerSecond = 0;
+    private volatile Coalescer<Change<T>> coalescer = null;
+    private volatile long writeBatchWindowNanos = -1; //negative means every update is written by its caller
+    private volatile WriteBatcher<T> writeBatcher = null;
+    private volatile boolean ignoreEqualChanges = false;
+    private volatile SnapshotKeeper<T> snapshot = null;
+    private volatile T defaultConfiguration = null;
+    private volatile ConfigurationMetrics metrics = ConfigurationMetrics.NOP;
 
     //state
     private final AtomicReference<T> ref = new AtomicReference<>(null);
+    private volatile long version = Versioned.UNKNOWN;
+    private volatile T lastReported = null; //last value the source reported
+    private volatile boolean lastReportedApplied = false; //whether lastReported is what we're serving
+    private T lastRejected = null; //last value that did not pass validation, if nothing was accepted since. guarded by this
     private volatile boolean on = false;
+    private boolean sourceStarted = false; //false while serving a snapshot (before the source was read). guarded by this
+    private volatile boolean ready = false; //serving a configuration read from the source
+    private CompletableFuture<Void> readiness = null; //completed once ready. guarded by this
+    private boolean starting = false; //started in the background. guarded by this
+    private volatile long generation = 0; //bumped by stop(), so background work of a previous run can tell. written while holding this
 
     public SimpleConfigurationService(
             Class<T> confBeanClass,
@@ -56,6 +92,8 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
             throw new IllegalArgumentException("all arguments are mandatory");
         }
         this.confBeanClass = confBeanClass;
+        this.executors = new ServiceExecutors(toString());
+        this.listeners = new ListenerDispatcher<>(executors);
         this.source = source;
         this.validator = validator;
         this.source.register(this);
@@ -67,11 +105,252 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
         listeners.register(newListener);
     }
 
+    @Override
+    public void registerWeakly(ConfigurationListener<T> newListener) {
+        listeners.registerWeakly(newListener);
+    }
+
+    @Override
+    public void register(String path, ConfigurationListener<T> newListener) {
+        listeners.register(newListener, Subscriptions.path(path));
+    }
+
+    @Override
+    public void register(Function<? super T, ?> property, ConfigurationListener<T> newListener) {
+        listeners.register(newListener, Subscriptions.property(property));
+    }
+
     @Override
     public void unregister(ConfigurationListener<T> existingListener) {
         listeners.unregister(existingListener);
     }
 
+    /**
+     * makes listener notification asynchronous. every listener gets its own FIFO lane on top of the given
+     * executor, so each listener still observes events in order, but a slow listener no longer delays
+     * the others or the source thread (which returns as soon as a new configuration has been swapped in).
+     * @param listenerExecutor executor to run listeners on, or null to invoke them inline (the default)
+     */
+    public void setListenerExecutor(Executor listenerExecutor) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        listeners.setListenerExecutor(listenerExecutor);
+    }
+
+    public Executor getListenerExecutor() {
+        return listeners.getListenerExecutor();
+    }
+
+    /**
+     * enables timing of listener callbacks. a listener whose callbacks exceed the budget the given number of
+     * times in a row is logged, reported to metrics and from then on handled according to the given policy.
+     * a listener stays slow until it is unregistered (registering it again gives it a clean slate).
+     * @param budget time a single callback is expected to complete in, or 0 to not time listeners (the default)
+     * @param unit unit of budget
+     * @param strikes number of consecutive callbacks over budget after which a listener is considered slow
+     * @param policy what to do with slow listeners
+     */
+    public void setListenerBudget(long budget, TimeUnit unit, int strikes, SlowListenerPolicy policy) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        if (budget < 0 || unit == null || strikes < 1 || policy == null) {
+            throw new IllegalArgumentException();
+        }
+        listeners.setListenerBudget(unit.toNanos(budget), strikes, policy);
+    }
+
+    public long getListenerBudget(TimeUnit unit) {
+        return unit.convert(listeners.getListenerBudgetNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public SlowListenerPolicy getSlowListenerPolicy() {
+        return listeners.getSlowListenerPolicy();
+    }
+
+    /**
+     * @return listeners currently considered slow (see {@link #setListenerBudget(long, TimeUnit, int, SlowListenerPolicy)})
+     */
+    public List<ConfigurationListener<T>> getSlowListeners() {
+        return listeners.getSlowListeners();
+    }
+
+    /**
+     * enables coalescing of changes. the source thread hands new values off and returns immediately.
+     * values arriving within the given window of each other collapse to the latest one, and a value that
+     * is superseded by a newer one while it is being validated is dropped without being applied or
+     * broadcast. (decoding happens on the source thread, so by the time it's done the source picks up
+     * whatever is latest by itself).
+     * @param window how long to wait for newer values before applying one (0 for no delay)
+     * @param unit unit of window
+     * @param maxAppliesPerSecond maximum rate at which changes are applied, or 0 for no limit
+     */
+    public void setCoalescing(long window, TimeUnit unit, double maxAppliesPerSecond) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        if (window < 0 || unit == null || maxAppliesPerSecond < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.coalescingWindowNanos = unit.toNanos(window);
+        this.maxAppliesPerSecond = maxAppliesPerSecond;
+    }
+
+    public void setCoalescing(long window, TimeUnit unit) {
+        setCoalescing(window, unit, 0);
+    }
+
+    public boolean isCoalescing() {
+        return coalescingWindowNanos >= 0;
+    }
+
+    /**
+     * enables group commit of updates. updates made (by any number of threads) within the given window of
+     * each other, or while a previous write is still in progress, are written to the source as a single
+     * write of the latest of them. every caller is released once the write covering its update completes.
+     * updates are still validated individually, by their callers. writes are performed (and asynchronous
+     * callers' futures completed) on the executor (see {@link #setExecutor(Executor)}), not on the scheduler.
+     * asynchronous updates are deep copied (see {@link BeanCopier}) before being validated, so their callers may go on
+     * modifying them while the write is pending (configurations that cannot be copied are written as they are).
+     * @param window how long to accumulate updates before writing them (0 for no delay)
+     * @param unit unit of window
+     */
+    public void setWriteBatching(long window, TimeUnit unit) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        if (window < 0 || unit == null) {
+            throw new IllegalArgumentException();
+        }
+        this.writeBatchWindowNanos = unit.toNanos(window);
+    }
+
+    public boolean isWriteBatching() {
+        return writeBatchWindowNanos >= 0;
+    }
+
+    /**
+     * makes changes that decode to a configuration equal (see {@link net.radai.confusion.core.beans.BeanDiff#equal})
+     * to the current one be ignored - they are not validated, the current instance is retained and listeners
+     * are not notified. useful for formats where the payload may change without the configuration changing
+     * (comments, whitespace, key order). see also {@link #setDeduplicate(boolean)}, which is cheaper.
+     * @param ignoreEqualChanges true to ignore changes that do not change the configuration
+     */
+    public void setIgnoreEqualChanges(boolean ignoreEqualChanges) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        this.ignoreEqualChanges = ignoreEqualChanges;
+    }
+
+    public boolean isIgnoreEqualChanges() {
+        return ignoreEqualChanges;
+    }
+
+    /**
+     * makes the source drop changes whose raw payload is byte-identical to that of the configuration currently
+     * being served, before they are decoded (see {@link Source#setDeduplicate(boolean)}). a payload that did not
+     * pass validation is not deduplicated against, so writing it again is re-validated. off by default.
+     * @param deduplicate true to drop unchanged payloads
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        source.setDeduplicate(deduplicate);
+    }
+
+    /**
+     * enables starting from a local snapshot of the last known good configuration. every configuration accepted
+     * is saved to the snapshot, in the background (see {@link #setExecutor(Executor)}). if configurations are
+     * accepted faster than they can be saved only the latest of them is. if a (valid) snapshot exists at startup it is served right away and the source
+     * is read in the background (and retried until it can be read), after which the service continues
+     * as usual. if the source turns out to hold something else listeners are notified of the change.
+     * with no usable snapshot startup reads the source, as it would without one.
+     * @param snapshot snapshot to use, or null for none (the default)
+     */
+    public void setSnapshot(Snapshot<T> snapshot) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        this.snapshot = snapshot == null ? null : new SnapshotKeeper<>(snapshot, executors);
+    }
+
+    public Snapshot<T> getSnapshot() {
+        SnapshotKeeper<T> snapshot = this.snapshot;
+        return snapshot == null ? null : snapshot.getSnapshot();
+    }
+
+    /**
+     * sets a configuration to fall back to if the source cannot be read (or does not pass validation) at startup.
+     * the default configuration is served (provided it passes validation itself) until the source can be read,
+     * instead of startup failing. it is also served while the source is read when started using {@link #startAsync()}
+     * (unless there's a snapshot to serve instead). the default configuration is never saved to the snapshot.
+     * @param defaultConfiguration configuration to fall back to, or null for none (the default)
+     */
+    public void setDefaultConfiguration(T defaultConfiguration) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        this.defaultConfiguration = defaultConfiguration;
+    }
+
+    public T getDefaultConfiguration() {
+        return defaultConfiguration;
+    }
+
+    /**
+     * @param metrics metrics to report to, or null for none (the default). also handed to the source (and from it
+     *                to the underlying store), so a single instance covers the whole reload pipeline
+     */
+    public void setMetrics(ConfigurationMetrics metrics) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        this.metrics = metrics == null ? ConfigurationMetrics.NOP : metrics;
+        source.setMetrics(metrics);
+    }
+
+    public ConfigurationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param scheduler scheduler to time delayed work (like coalesced changes and batched writes) with. the work itself
+     *                  runs on the executor (see {@link #setExecutor(Executor)}), so the scheduler may be shared and
+     *                  single-threaded. if not set one will be created when needed, and shut down when this service
+     *                  is stopped.
+     */
+    public void setScheduler(ScheduledExecutorService scheduler) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        executors.setScheduler(scheduler);
+    }
+
+    /**
+     * @param executor executor to run delayed work (like coalesced changes and batched writes) on, once the scheduler
+     *                 says it is due, and to read the source on when starting in the background (see {@link #startAsync()}).
+     *                 this work blocks (on validation, listeners and the store). isolated slow listeners
+     *                 (see {@link #setListenerBudget(long, TimeUnit, int, SlowListenerPolicy)}) run on it too.
+     *                 if null a cached thread pool of this service's own is used (the default), created when this
+     *                 service is started and shut down when it is stopped
+     */
+    public void setExecutor(Executor executor) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        executors.setExecutor(executor);
+    }
+
+    /**
+     * @return the executor set (see {@link #setExecutor(Executor)}), or null if this service uses one of its own
+     */
+    public Executor getExecutor() {
+        return executors.getExecutor();
+    }
+
     @Override
     public T getConfiguration() {
         T latest = ref.get(); //grab ref 1st to avoid race with stop()
@@ -83,6 +362,67 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
 
     @Override
     public void updateConfiguration(T newConfiguration) throws IOException, InvalidConfigurationException {
+        validateUpdate(newConfiguration);
+        WriteBatcher<T> batcher = writeBatcher;
+        if (batcher == null) {
+            source.write(newConfiguration);
+            return;
+        }
+        batcher.write(newConfiguration);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateConfigurationAsync(T newConfiguration) {
+        WriteBatcher<T> batcher = writeBatcher;
+        if (batcher == null) {
+            return ConfigurationService.super.updateConfigurationAsync(newConfiguration);
+        }
+        T detached = detach(newConfiguration);
+        try {
+            validateUpdate(detached);
+        } catch (Exception e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return batcher.submit(detached);
+    }
+
+    /**
+     * @return a copy of the given configuration, or the configuration itself if it cannot be copied
+     */
+    private T detach(T conf) {
+        try {
+            return BeanCopier.copy(conf);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.debug("unable to copy {}, it will be written as is", conf, e);
+            return conf;
+        }
+    }
+
+    /**
+     * writes the new configuration only if the source has not been modified since the given version was read.
+     * conditional updates are never batched (see {@link #setWriteBatching(long, TimeUnit)}).
+     * @param expectedVersion version of the configuration being replaced (see {@link #getConfigurationVersion()})
+     * @return version of the new configuration, or {@link Versioned#UNKNOWN} if not known
+     * @throws VersionConflictException if the source has been modified since expectedVersion
+     */
+    @Override
+    public long updateConfiguration(long expectedVersion, T newConfiguration) throws IOException, InvalidConfigurationException {
+        validateUpdate(newConfiguration);
+        return source.write(newConfiguration, expectedVersion);
+    }
+
+    @Override
+    public long getConfigurationVersion() {
+        long latest = version;
+        if (!on) {
+            throw new IllegalStateException();
+        }
+        return latest;
+    }
+
+    private void validateUpdate(T newConfiguration) throws InvalidConfigurationException {
         T latest = ref.get();
         if (!on) {
             throw new IllegalStateException();
@@ -91,7 +431,6 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
         if (!validationResults.isValid()) {
             throw new InvalidConfigurationException(newConfiguration, validationResults);
         }
-        source.write(newConfiguration);
     }
 
     @Override
@@ -101,32 +440,271 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
 
     @Override
     public synchronized void start() {
-        if (on) {
+        if (on || starting) {
             throw new IllegalStateException();
         }
+        executors.open();
         try {
-            if (!loadConf(source.read(), false)) {
-                //means conf did not pass validation
-                throw new IllegalStateException("unable to load initial configuration");
+            start(new CompletableFuture<>());
+        } catch (RuntimeException e) {
+            executors.close();
+            throw e;
+        }
+    }
+
+    /**
+     * starts without blocking on the source. if there's a configuration to serve in the meantime (a snapshot,
+     * see {@link #setSnapshot(Snapshot)}, or else a default configuration, see {@link #setDefaultConfiguration(Object)})
+     * this service is started right away, serving it, and the source is read in the background.
+     * otherwise this service is started in the background, and is not started until the source has been read.
+     * @return a future that completes once this service is ready (see {@link #isReady()}). it completes exceptionally
+     * if this service could not be started (same as {@link #start()} would throw), and is cancelled if this service
+     * is stopped before becoming ready.
+     */
+    @Override
+    public synchronized CompletableFuture<Void> startAsync() {
+        if (on || starting) {
+            throw new IllegalStateException();
+        }
+        CompletableFuture<Void> readiness = new CompletableFuture<>();
+        executors.open();
+        Versioned<T> provisional = loadSnapshot();
+        T fallback = defaultConfiguration;
+        if (provisional == null && fallback != null) {
+            provisional = Versioned.unversioned(fallback);
+        }
+        if (provisional != null && startProvisional(provisional, readiness)) {
+            return readiness;
+        }
+        starting = true;
+        this.readiness = readiness; //so stop() can cancel it
+        long startGeneration = generation;
+        boolean submitted = inBackground(() -> {
+            //the read blocks, so is done without holding this (so that stop() is not held up by it)
+            Versioned<T> initial = null;
+            Exception failure = null;
+            try {
+                initial = source.readVersioned();
+            } catch (Exception e) {
+                failure = e;
             }
-        } catch (IllegalStateException e) {
-            throw e; //pass-through
+            synchronized (this) {
+                if (!starting || generation != startGeneration) {
+                    return; //stopped in the meantime (which cancelled readiness)
+                }
+                starting = false;
+                try {
+                    start(readiness, initial, failure);
+                } catch (Exception e) {
+                    this.readiness = null;
+                    executors.close();
+                    readiness.completeExceptionally(e);
+                }
+            }
+        });
+        if (!submitted) {
+            starting = false;
+            this.readiness = null;
+            executors.close();
+            readiness.completeExceptionally(new IllegalStateException("unable to read " + source + " in the background"));
+        }
+        return readiness;
+    }
+
+    private void start(CompletableFuture<Void> readiness) { //must be called while holding this
+        Versioned<T> cached = loadSnapshot();
+        if (cached != null && startProvisional(cached, readiness)) {
+            return;
+        }
+        Versioned<T> initial = null;
+        Exception failure = null;
+        try {
+            initial = source.readVersioned();
         } catch (Exception e) {
-            throw new IllegalStateException("while loading initial configuration", e);
+            failure = e;
+        }
+        start(readiness, initial, failure);
+    }
+
+    /**
+     * @param initial configuration read from the source, or null if it could not be read
+     * @param readFailure why the source could not be read, or null if it could
+     */
+    private void start(CompletableFuture<Void> readiness, Versioned<T> initial, Exception readFailure) { //must be called while holding this
+        ready = false;
+        this.readiness = readiness;
+        Exception failure = readFailure;
+        if (initial != null) {
+            try {
+                lastReported = initial.getValue();
+                if (loadConf(initial.getValue(), initial.getVersion(), false)) {
+                    createPipeline();
+                    source.start();
+                    sourceStarted = true;
+                    on = true;
+                    if (ready) {
+                        readiness.complete(null); //only once actually started
+                    }
+                    return;
+                }
+                //means conf did not pass validation
+                failure = new IllegalStateException("unable to load initial configuration");
+            } catch (Exception e) {
+                failure = e;
+            }
         }
-        source.start();
+        T fallback = defaultConfiguration;
+        if (fallback != null && startProvisional(Versioned.unversioned(fallback), readiness)) {
+            log.warn("unable to load initial configuration from {}, serving default configuration", source, failure);
+            return;
+        }
+        if (failure instanceof IllegalStateException) {
+            throw (IllegalStateException) failure; //pass-through
+        }
+        throw new IllegalStateException("while loading initial configuration", failure);
+    }
+
+    /**
+     * runs blocking work (reading the source) on the executor, keeping it off the (possibly shared,
+     * possibly single-threaded) scheduler
+     * @return true if submitted
+     */
+    private boolean inBackground(Runnable task) {
+        try {
+            executors.executor().execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.error("unable to read {} in the background", source, e);
+            return false;
+        }
+    }
+
+    private void createPipeline() {
+        if (isCoalescing()) {
+            coalescer = new Coalescer<>(this::applyCoalesced, executors.scheduler(), executors.executor(), coalescingWindowNanos, TimeUnit.NANOSECONDS, maxAppliesPerSecond);
+        }
+        if (isWriteBatching()) {
+            writeBatcher = new WriteBatcher<>(source::write, executors.scheduler(), executors.executor(), writeBatchWindowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return the snapshot (if there is one, and it can be read), or null
+     */
+    private Versioned<T> loadSnapshot() {
+        SnapshotKeeper<T> snapshot = this.snapshot;
+        return snapshot == null ? null : snapshot.load();
+    }
+
+    /**
+     * starts serving the given (snapshot or default) configuration, with the source being read in the background
+     * @return true if started, false if the given configuration did not pass validation
+     */
+    private synchronized boolean startProvisional(Versioned<T> provisional, CompletableFuture<Void> readiness) {
+        ValidationResults<?> validationResults = validator.validate(null, provisional.getValue());
+        if (!validationResults.isValid()) {
+            log.warn("provisional configuration {} did not pass validation", provisional);
+            return false;
+        }
+        ready = false;
+        this.readiness = readiness;
+        version = provisional.getVersion();
+        ref.set(provisional.getValue());
+        createPipeline();
         on = true;
+        long reconcileGeneration = generation;
+        inBackground(() -> reconcile(RECONCILE_MIN_RETRY_MILLIS, reconcileGeneration));
+        return true;
+    }
+
+    /**
+     * reads the source, to replace the provisional configuration being served, and starts it.
+     * retried (with exponential back-off) until it succeeds or this service is stopped
+     */
+    private void reconcile(long retryMillis, long reconcileGeneration) {
+        synchronized (this) {
+            if (!on || sourceStarted || generation != reconcileGeneration) {
+                return; //stopped (and maybe restarted) in the meantime
+            }
+        }
+        Versioned<T> latest;
+        try {
+            latest = source.readVersioned();
+        } catch (Exception e) {
+            synchronized (this) {
+                if (!on || generation != reconcileGeneration) {
+                    return; //stopped while reading. scheduling now would create a scheduler no one shuts down
+                }
+                log.warn("unable to read {}, serving provisional configuration. retrying in {} ms", source, retryMillis, e);
+                long nextRetry = Math.min(retryMillis * 2, RECONCILE_MAX_RETRY_MILLIS);
+                try {
+                    executors.scheduler().schedule(() -> {
+                        if (generation == reconcileGeneration) { //otherwise stopped, and the executor may be gone
+                            inBackground(() -> reconcile(nextRetry, reconcileGeneration));
+                        }
+                    }, retryMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e2) {
+                    log.error("unable to schedule another attempt to read {}", source, e2);
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            if (!on || sourceStarted || generation != reconcileGeneration) {
+                return; //stopped (and maybe restarted) in the meantime
+            }
+            CompletableFuture<Void> pending = readiness;
+            readiness = null; //completed below, so that ready also means the source is watching
+            try {
+                lastReported = latest.getValue();
+                loadConf(latest.getValue(), latest.getVersion(), true);
+            } catch (Exception e) {
+                log.error("while applying configuration read from {}", source, e);
+            }
+            source.start();
+            sourceStarted = true;
+            readiness = pending;
+            if (ready && pending != null) {
+                pending.complete(null);
+            }
+        }
     }
 
     @Override
     public synchronized void stop() {
+        generation++;
+        if (starting) {
+            //still reading the source in the background. it will find out it's been stopped once done
+            starting = false;
+            readiness.cancel(false);
+            readiness = null;
+            executors.close();
+            return;
+        }
         if (!on) {
             return;
         }
         //order of on toggle vs ref clear is important
         on = false;
-        source.stop();
+        if (sourceStarted) {
+            source.stop();
+            sourceStarted = false;
+        }
         ref.set(null);
+        if (readiness != null) {
+            readiness.cancel(false); //no-op if already ready
+            readiness = null;
+        }
+        lastRejected = null;
+        if (coalescer != null) {
+            coalescer.close(); //so a value still pending is not applied after a restart
+            coalescer = null;
+        }
+        if (writeBatcher != null) {
+            writeBatcher.close();
+            writeBatcher = null;
+        }
+        executors.close();
     }
 
     @Override
@@ -134,6 +712,15 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
         return on;
     }
 
+    /**
+     * @return true if the configuration being served was read from the source (as opposed to a snapshot or
+     * a default configuration served while the source is unavailable)
+     */
+    @Override
+    public boolean isReady() {
+        return on && ready;
+    }
+
     @Override
     public void close() {
         stop();
@@ -141,33 +728,148 @@ public class SimpleConfigurationService<T> implements ConfigurationService<T>, S
 
     @Override
     public void sourceChanged(T newValue) throws Exception {
-        loadConf(newValue, true);
+        sourceChanged(newValue, Versioned.UNKNOWN);
+    }
+
+    @Override
+    public void sourceChanged(T newValue, long version) throws Exception {
+        lastReported = newValue;
+        Coalescer<Change<T>> coalescer = this.coalescer;
+        if (coalescer != null) {
+            coalescer.submit(new Change<>(newValue, version, false, generation));
+            return;
+        }
+        loadConf(newValue, version, true);
+    }
+
+    @Override
+    public void versionChanged(long newVersion) throws Exception {
+        Coalescer<Change<T>> coalescer = this.coalescer;
+        if (coalescer != null) {
+            //goes through the coalescer so it cannot be overtaken by an older pending value. carries lastReported
+            //in case it supersedes a pending change of contents, which then still has to be applied
+            coalescer.submit(new Change<>(lastReported, newVersion, true, generation));
+            return;
+        }
+        synchronized (this) {
+            if (lastReportedApplied) {
+                version = newVersion; //same contents, just a newer version of them
+            }
+        }
+    }
+
+    private synchronized void applyCoalesced(Change<T> change, BooleanSupplier superseded) throws IOException {
+        if (!on || change.generation != generation) {
+            return; //stopped (and maybe restarted) while this was pending
+        }
+        if (change.versionOnly) {
+            if (change.value == ref.get()) {
+                version = change.version; //same contents, just a newer version of them
+                return;
+            }
+            if (change.value == lastRejected) {
+                return; //already rejected (and reported) once
+            }
+        }
+        loadConf(change.value, change.version, true, superseded);
+    }
+
+    @Override
+    public String toString() {
+        return "configuration service for " + confBeanClass.getName();
     }
 
     /**
      * handles loading a conf from an input stream
      * @param newBean (potential) new configuration
+     * @param newVersion version of newBean in the source (or {@link Versioned#UNKNOWN})
      * @param notifyListeners notify conf listeners (if conf passes validation)
      * @return true if process resulted in new configuration being loaded
      */
-    private synchronized boolean loadConf(T newBean, boolean notifyListeners) throws IOException {
+    private synchronized boolean loadConf(T newBean, long newVersion, boolean notifyListeners) throws IOException {
+        return loadConf(newBean, newVersion, notifyListeners, () -> false);
+    }
+
+    /**
+     * @param superseded returns true if newBean has been superseded by a newer value and should be dropped
+     */
+    private synchronized boolean loadConf(T newBean, long newVersion, boolean notifyListeners, BooleanSupplier superseded) throws IOException {
         T oldBean = ref.get();
-        ValidationResults<?> validationResults = validator.validate(oldBean, newBean);
+        if (oldBean != null && (oldBean == newBean || ((ignoreEqualChanges || !sourceStarted) && BeanDiff.equal(oldBean, newBean)))) {
+            log.debug("configuration unchanged, at version {}", newVersion);
+            if (oldBean != newBean) {
+                metrics.recordChange(ConfigurationMetrics.Change.DEDUPLICATED);
+            }
+            version = newVersion;
+            lastReportedApplied = true;
+            source.accepted(newBean);
+            markReady();
+            return true;
+        }
+        ConfigurationMetrics.Span validation = metrics.begin(ConfigurationMetrics.Stage.VALIDATE);
+        ValidationResults<?> validationResults;
+        try {
+            validationResults = validator.validate(oldBean, newBean);
+        } finally {
+            validation.end(-1, newVersion); //a validator that throws is timed too
+        }
+        if (superseded.getAsBoolean()) {
+            log.debug("dropping superseded configuration {}", newBean);
+            lastReportedApplied = false;
+            return false;
+        }
+        lastReportedApplied = validationResults.isValid();
+        lastRejected = validationResults.isValid() ? null : newBean;
+        metrics.recordChange(validationResults.isValid() ? ConfigurationMetrics.Change.ACCEPTED : ConfigurationMetrics.Change.REJECTED);
         if (validationResults.isValid()) {
+            version = newVersion; //before ref, so a reader never pairs the new conf with the old version
             if (!ref.compareAndSet(oldBean, newBean)) {
                 throw new IllegalStateException(); //should never happen - source is sequential and so is start().
             }
+            source.accepted(newBean);
+            SnapshotKeeper<T> snapshot = this.snapshot;
+            if (snapshot != null) {
+                snapshot.save(newBean, newVersion);
+            }
+            markReady();
             if (notifyListeners) {
                 ConfigurationChangeEvent<T> event = new SimpleConfigurationChangeEvent<>(getConfigurationType(), oldBean, newBean);
-                listeners.forEach(listener -> listener.configurationChanged(event));
+                listeners.dispatch(metrics, newVersion, event, listener -> listener.configurationChanged(event));
             }
             return true;
         } else {
             if (notifyListeners) {
                 InvalidConfigurationEvent<T> event = new SimpleInvalidConfigurationEvent<>(getConfigurationType(), newBean, validationResults);
-                listeners.forEach(listener -> listener.invalidConfigurationRead(event));
+                listeners.dispatch(metrics, newVersion, null, listener -> listener.invalidConfigurationRead(event));
             }
             return false;
         }
     }
+
+    private void markReady() { //must be called while holding this
+        if (ready) {
+            return;
+        }
+        ready = true;
+        if (on && readiness != null) { //otherwise completed by start()
+            readiness.complete(null);
+        }
+    }
+
+    /**
+     * a change handed off to the coalescer
+     */
+    private static class Change<T> {
+        private final T value;
+        private final long version;
+        private final boolean versionOnly; //only the version changed (value is the last value reported)
+        private final long generation; //of the service when submitted
+
+        private Change(T value, long version, boolean versionOnly, long generation) {
+            this.value = value;
+            this.version = version;
+            this.versionOnly = versionOnly;
+            this.generation = generation;
+        }
+    }
 }
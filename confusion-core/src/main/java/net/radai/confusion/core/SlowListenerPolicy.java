@@ -0,0 +1,39 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+/**
+ * Created by Radai Rosenblatt
+ * what to do with a listener that keeps exceeding its time budget (see
+ * {@link SimpleConfigurationService#setListenerBudget(long, java.util.concurrent.TimeUnit, int, SlowListenerPolicy)})
+ */
+public enum SlowListenerPolicy {
+    /**
+     * log it and flag it as slow, but keep notifying it as before
+     */
+    LOG,
+    /**
+     * move it to its own lane on the service's executor, so it no longer delays other listeners
+     * (or the source thread, if listeners are invoked inline). it still sees every event, in order
+     */
+    ISOLATE,
+    /**
+     * stop notifying it. every event it misses is logged
+     */
+    SKIP
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.snapshot.Snapshot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Created by Radai Rosenblatt
+ * loads the snapshot a service starts from, and saves the configurations it accepts to it in the background.
+ * saves are never concurrent, and if configurations are accepted faster than they can be saved only the latest
+ * of them is.
+ */
+class SnapshotKeeper<T> {
+    private final Logger log = LogManager.getLogger(getClass());
+
+    private final Snapshot<T> snapshot;
+    private final ServiceExecutors executors;
+    private T saved = null; //last value handed off to be saved. guarded by this
+    private final AtomicReference<Versioned<T>> pending = new AtomicReference<>(null); //latest not yet saved
+
+    SnapshotKeeper(Snapshot<T> snapshot, ServiceExecutors executors) {
+        this.snapshot = snapshot;
+        this.executors = executors;
+    }
+
+    Snapshot<T> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the snapshot (if it can be read, and is not empty), or null
+     */
+    Versioned<T> load() {
+        try {
+            Versioned<T> cached = snapshot.load();
+            if (cached == null || cached.getValue() == null) {
+                return null;
+            }
+            return cached;
+        } catch (Exception e) {
+            log.warn("unable to load snapshot {}", snapshot, e);
+            return null;
+        }
+    }
+
+    synchronized void save(T conf, long confVersion) {
+        if (conf == saved) {
+            return;
+        }
+        saved = conf;
+        if (pending.getAndSet(new Versioned<>(conf, confVersion)) != null) {
+            return; //a save is already pending, and will pick this up instead
+        }
+        try {
+            executors.executor().execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            pending.set(null);
+            log.error("unable to save snapshot {}", snapshot, e);
+        }
+    }
+
+    /**
+     * saves the latest pending configuration to the snapshot, and keeps going for as long as newer ones arrive.
+     * a new flush is only started once the previous one is done, so saves are never concurrent
+     */
+    private void flush() {
+        Versioned<T> latest;
+        do {
+            latest = pending.get();
+            try {
+                snapshot.save(latest.getValue(), latest.getVersion());
+            } catch (Exception e) {
+                log.error("unable to save snapshot {}", snapshot, e);
+            }
+        } while (!pending.compareAndSet(latest, null));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.beans.BeanDiff;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Created by Radai Rosenblatt
+ * change event filters backing property subscriptions
+ */
+class Subscriptions {
+
+    static <T> Predicate<ConfigurationChangeEvent<T>> path(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        return event -> Confusion.diff(event).isChanged(path);
+    }
+
+    static <T> Predicate<ConfigurationChangeEvent<T>> property(Function<? super T, ?> property) {
+        if (property == null) {
+            throw new IllegalArgumentException();
+        }
+        return event -> {
+            T oldConf = event.getOldConf();
+            T newConf = event.getNewConf();
+            if (oldConf == null || newConf == null) {
+                return oldConf != newConf;
+            }
+            return !BeanDiff.equal(property.apply(oldConf), property.apply(newConf));
+        };
+    }
+}
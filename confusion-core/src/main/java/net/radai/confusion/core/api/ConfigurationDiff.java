@@ -0,0 +1,44 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.api;
+
+import java.util.Set;
+
+/**
+ * Created by Radai Rosenblatt
+ * the set of properties that differ between two configuration objects.
+ * paths are dot-separated property names, with list indices and map keys in brackets
+ * (for example "cats[2].name"). the empty path denotes the configuration object itself.
+ */
+public interface ConfigurationDiff {
+
+    /**
+     * @return the most specific paths that changed
+     */
+    Set<String> getChangedPaths();
+
+    /**
+     * @param path property path
+     * @return true if the value at the given path (or anything under it) changed
+     */
+    boolean isChanged(String path);
+
+    default boolean isEmpty() {
+        return getChangedPaths().isEmpty();
+    }
+}
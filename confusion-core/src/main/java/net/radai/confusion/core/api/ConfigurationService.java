@@ -18,14 +18,88 @@
 package net.radai.confusion.core.api;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Created by Radai Rosenblatt
  */
 public interface ConfigurationService<T> {
     void register(ConfigurationListener<T> newListener);
+
+    /**
+     * registers a listener that is only notified of changes under the given property path
+     * (see {@link ConfigurationDiff} for path syntax). invalid configurations are always reported.
+     * @param path property path to watch
+     * @param newListener listener
+     * @throws UnsupportedOperationException if property subscriptions are not supported
+     */
+    default void register(String path, ConfigurationListener<T> newListener) {
+        throw new UnsupportedOperationException(this + " does not support property subscriptions");
+    }
+
+    /**
+     * registers a listener that is only notified when the value returned by the given getter
+     * (for example {@code AppConfig::getNumThreads}) changes. invalid configurations are always reported.
+     * @param property getter for the property to watch
+     * @param newListener listener
+     * @throws UnsupportedOperationException if property subscriptions are not supported
+     */
+    default void register(Function<? super T, ?> property, ConfigurationListener<T> newListener) {
+        throw new UnsupportedOperationException(this + " does not support property subscriptions");
+    }
+
+    /**
+     * registers a listener that is only weakly referenced, and is unregistered once garbage collected.
+     * meant for short-lived listeners (say, one per connection) that may not get to unregister themselves.
+     * the caller must keep the listener reachable for as long as it should be notified.
+     * @param newListener listener
+     * @throws UnsupportedOperationException if weak registration is not supported
+     */
+    default void registerWeakly(ConfigurationListener<T> newListener) {
+        throw new UnsupportedOperationException(this + " does not support weak registration");
+    }
+
     void unregister(ConfigurationListener<T> existingListener);
     T getConfiguration();
     void updateConfiguration(T newConfiguration) throws IOException, InvalidConfigurationException;
+
+    /**
+     * @return version of the current configuration in the underlying store, or -1 if versions are not supported.
+     * versions are opaque and can only be compared for equality.
+     */
+    default long getConfigurationVersion() {
+        return -1L;
+    }
+
+    /**
+     * optimistic (compare-and-set) update. the new configuration is only written if the stored configuration
+     * is still at the expected version.
+     * @param expectedVersion version of the configuration being replaced (see {@link #getConfigurationVersion()})
+     * @return version of the new configuration, or -1 if not known
+     * @throws VersionConflictException if the stored configuration has been modified since
+     * @throws UnsupportedOperationException if versions are not supported
+     */
+    default long updateConfiguration(long expectedVersion, T newConfiguration) throws IOException, InvalidConfigurationException {
+        throw new UnsupportedOperationException(this + " does not support conditional updates");
+    }
+
+    /**
+     * like {@link #updateConfiguration(Object)}, but does not wait for the write to complete.
+     * implementations may batch concurrent updates, in which case the latest value wins.
+     * @return a future that completes once the new configuration has been written (or an update
+     * superseding it has), exceptionally if validation or the write fail
+     */
+    default CompletableFuture<Void> updateConfigurationAsync(T newConfiguration) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            updateConfiguration(newConfiguration);
+            future.complete(null);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     Class<T> getConfigurationType();
 }
@@ -17,6 +17,8 @@
 
 package net.radai.confusion.core.api;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Created by Radai Rosenblatt
  */
@@ -24,4 +26,33 @@ public interface ServiceLifecycle extends AutoCloseable {
     void start();
     void stop();
     boolean isStarted();
+
+    /**
+     * starts without blocking the caller. implementations that can serve something while their actual
+     * configuration loads should override this - by default {@link #start()} is simply run on a thread of its own
+     * (start() blocks on i/o, so is kept off shared pools like the common pool).
+     * @return a future that completes once this service is ready (see {@link #isReady()}), or exceptionally
+     * if it could not be started
+     */
+    default CompletableFuture<Void> startAsync() {
+        CompletableFuture<Void> readiness = new CompletableFuture<>();
+        Thread starter = new Thread(() -> {
+            try {
+                start();
+                readiness.complete(null);
+            } catch (Throwable e) {
+                readiness.completeExceptionally(e);
+            }
+        }, "start " + this);
+        starter.setDaemon(true);
+        starter.start();
+        return readiness;
+    }
+
+    /**
+     * @return true if started and serving its actual configuration (as opposed to a provisional one)
+     */
+    default boolean isReady() {
+        return isStarted();
+    }
 }
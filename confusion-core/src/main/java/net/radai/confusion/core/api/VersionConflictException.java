@@ -0,0 +1,48 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.api;
+
+import java.io.IOException;
+
+/**
+ * Created by Radai Rosenblatt
+ * thrown when a conditional write finds that the stored configuration has been modified since it was read
+ */
+public class VersionConflictException extends IOException {
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    /**
+     * @param expectedVersion version the writer expected to replace
+     * @param actualVersion version actually found, or -1 if the store did not report it
+     */
+    public VersionConflictException(String target, long expectedVersion, long actualVersion) {
+        super("expected " + target + " to be at version " + expectedVersion + " but "
+                + (actualVersion < 0 ? "it has since been modified" : "found version " + actualVersion));
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getActualVersion() {
+        return actualVersion;
+    }
+}
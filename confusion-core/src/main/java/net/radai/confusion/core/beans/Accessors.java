@@ -0,0 +1,230 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.beans;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Created by Radai Rosenblatt
+ * compiles reflective members into plain functional interfaces. public members of public classes
+ * are spun into lambdas using {@link LambdaMetafactory} (after warmup those are as fast as a direct call).
+ * anything else (fields, non-public members, classes not visible from our class loader) falls back to
+ * a {@link MethodHandle}.
+ */
+class Accessors {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Accessors() {
+        //utility class
+    }
+
+    static Function<Object, Object> getter(Method method) {
+        MethodHandle handle = unreflect(method);
+        if (compilable(method, method.getReturnType())) {
+            try {
+                CallSite site = LambdaMetafactory.metafactory(
+                        LOOKUP,
+                        "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        handle,
+                        MethodType.methodType(box(method.getReturnType()), method.getDeclaringClass())
+                );
+                //noinspection unchecked
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable e) {
+                //fall through to method handle
+            }
+        }
+        return getter(handle);
+    }
+
+    static Function<Object, Object> getter(Field field) {
+        try {
+            return getter(LOOKUP.unreflectGetter(accessible(field)));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("unable to access " + field, e);
+        }
+    }
+
+    static BiConsumer<Object, Object> setter(Method method) {
+        MethodHandle handle = unreflect(method);
+        if (compilable(method, method.getParameterTypes()[0])) {
+            try {
+                CallSite site = LambdaMetafactory.metafactory(
+                        LOOKUP,
+                        "accept",
+                        MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class, Object.class),
+                        handle,
+                        MethodType.methodType(void.class, method.getDeclaringClass(), box(method.getParameterTypes()[0]))
+                );
+                //noinspection unchecked
+                return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable e) {
+                //fall through to method handle
+            }
+        }
+        return setter(handle.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+    }
+
+    static BiConsumer<Object, Object> setter(Field field) {
+        try {
+            MethodHandle handle = LOOKUP.unreflectSetter(accessible(field));
+            return setter(handle.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("unable to access " + field, e);
+        }
+    }
+
+    static <T> Supplier<T> constructor(Constructor<T> constructor) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflectConstructor(accessible(constructor));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("unable to access " + constructor, e);
+        }
+        if (compilable(constructor)) {
+            try {
+                CallSite site = LambdaMetafactory.metafactory(
+                        LOOKUP,
+                        "get",
+                        MethodType.methodType(Supplier.class),
+                        MethodType.methodType(Object.class),
+                        handle,
+                        MethodType.methodType(constructor.getDeclaringClass())
+                );
+                //noinspection unchecked
+                return (Supplier<T>) site.getTarget().invokeExact();
+            } catch (Throwable e) {
+                //fall through to method handle
+            }
+        }
+        MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+        return () -> {
+            try {
+                //noinspection unchecked
+                return (T) generic.invokeExact();
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        };
+    }
+
+    private static Function<Object, Object> getter(MethodHandle handle) {
+        MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return bean -> {
+            try {
+                return generic.invokeExact(bean);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> setter(MethodHandle generic) {
+        return (bean, value) -> {
+            try {
+                generic.invokeExact(bean, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        };
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return LOOKUP.unreflect(accessible(method));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("unable to access " + method, e);
+        }
+    }
+
+    private static <T extends java.lang.reflect.AccessibleObject> T accessible(T member) {
+        try {
+            member.setAccessible(true); //public members of non-public classes
+        } catch (RuntimeException ignored) {
+            //SecurityException, or InaccessibleObjectException on java 9+. will fail on unreflect if actually needed
+        }
+        return member;
+    }
+
+    /**
+     * @param types any other types the lambda would reference (return or parameter types)
+     * @return true if a lambda spun by us (in our package and class loader) would be able to link against the member
+     */
+    private static boolean compilable(Member member, Class<?>... types) {
+        if (!Modifier.isPublic(member.getModifiers()) || !reachable(member.getDeclaringClass())) {
+            return false;
+        }
+        for (Class<?> type : types) {
+            if (!reachable(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean reachable(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        try {
+            return Class.forName(type.getName(), false, Accessors.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.beans;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Created by Radai Rosenblatt
+ * deep copies object graphs. objects are instantiated using their no-arg constructor (which may be private) and have
+ * all their instance fields copied, whatever their visibility - the way jaxb field access works - so state that is
+ * only exposed through getters (like jaxb's getter-only lists) is copied too. lists, sets, maps and arrays are copied
+ * element by element, into a new instance of the same class if it has a public no-arg constructor (or else into an
+ * ArrayList, LinkedHashSet, TreeSet, LinkedHashMap or TreeMap). dates are cloned. enums and instances of jdk classes
+ * (java.*, javax.*) are assumed immutable and are shared. shared references and cycles are preserved.
+ * accessors are compiled once per class (see {@link Accessors}).
+ */
+public class BeanCopier {
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return new Layout(type);
+        }
+    };
+    private static final ClassValue<Supplier<Object>> CONTAINERS = new ClassValue<Supplier<Object>>() {
+        @Override
+        protected Supplier<Object> computeValue(Class<?> type) {
+            return publicConstructor(type);
+        }
+    };
+
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+
+    private BeanCopier() {
+    }
+
+    /**
+     * @return a copy of the given object graph that shares no mutable state with it
+     * @throws IllegalArgumentException if the graph contains an object that cannot be copied (one with no no-arg constructor)
+     */
+    public static <T> T copy(T value) {
+        //noinspection unchecked
+        return (T) new BeanCopier().copyOf(value);
+    }
+
+    private Object copyOf(Object value) {
+        if (value == null) {
+            return null;
+        }
+        Object existing = copies.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(type.getComponentType(), length);
+            copies.put(value, copy);
+            if (type.getComponentType().isPrimitive()) {
+                //noinspection SuspiciousSystemArraycopy
+                System.arraycopy(value, 0, copy, 0, length);
+            } else {
+                Object[] from = (Object[]) value;
+                Object[] to = (Object[]) copy;
+                for (int i = 0; i < length; i++) {
+                    to[i] = copyOf(from[i]);
+                }
+            }
+            return copy;
+        }
+        if (value instanceof Collection) {
+            return copyCollection((Collection<?>) value);
+        }
+        if (value instanceof Map) {
+            return copyMap((Map<?, ?>) value);
+        }
+        if (value instanceof Date) {
+            Object copy = ((Date) value).clone();
+            copies.put(value, copy);
+            return copy;
+        }
+        if (isImmutable(type)) {
+            return value;
+        }
+        Layout layout = LAYOUTS.get(type);
+        if (layout.constructor == null) {
+            throw new IllegalArgumentException("unable to copy " + type.getName() + ", it has no no-arg constructor");
+        }
+        Object copy = layout.constructor.get();
+        copies.put(value, copy);
+        for (FieldAccess field : layout.fields) {
+            field.setter.accept(copy, copyOf(field.getter.apply(value)));
+        }
+        return copy;
+    }
+
+    private Collection<Object> copyCollection(Collection<?> value) {
+        Collection<Object> copy;
+        if (value instanceof EnumSet) {
+            //noinspection unchecked
+            copy = (Collection<Object>) (Collection<?>) ((EnumSet<?>) value).clone(); //enums are shared anyway
+            copies.put(value, copy);
+            return copy;
+        }
+        Supplier<Object> sameClass = CONTAINERS.get(value.getClass());
+        if (value instanceof SortedSet) {
+            //noinspection unchecked
+            copy = new TreeSet<>((Comparator<Object>) ((SortedSet<?>) value).comparator());
+        } else if (sameClass != null) {
+            //noinspection unchecked
+            copy = (Collection<Object>) sameClass.get();
+        } else if (value instanceof Set) {
+            copy = new LinkedHashSet<>(value.size() * 4 / 3 + 1);
+        } else {
+            copy = new ArrayList<>(value.size());
+        }
+        copies.put(value, copy);
+        for (Object element : value) {
+            copy.add(copyOf(element));
+        }
+        return copy;
+    }
+
+    private Map<Object, Object> copyMap(Map<?, ?> value) {
+        Map<Object, Object> copy;
+        Supplier<Object> sameClass = CONTAINERS.get(value.getClass());
+        if (value instanceof EnumMap) {
+            //noinspection unchecked
+            copy = new EnumMap((EnumMap) value); //values are replaced with copies below
+        } else if (value instanceof SortedMap) {
+            //noinspection unchecked
+            copy = new TreeMap<>((Comparator<Object>) ((SortedMap<?, ?>) value).comparator());
+        } else if (sameClass != null) {
+            //noinspection unchecked
+            copy = (Map<Object, Object>) sameClass.get();
+        } else {
+            copy = new LinkedHashMap<>(value.size() * 4 / 3 + 1);
+        }
+        copies.put(value, copy);
+        for (Map.Entry<?, ?> entry : value.entrySet()) {
+            copy.put(copyOf(entry.getKey()), copyOf(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static boolean isImmutable(Class<?> type) {
+        if (Enum.class.isAssignableFrom(type)) {
+            return true;
+        }
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+
+    private static Supplier<Object> publicConstructor(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers()) || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            //noinspection unchecked
+            return Accessors.constructor((Constructor<Object>) type.getConstructor());
+        } catch (NoSuchMethodException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * how to instantiate and copy a class
+     */
+    private static class Layout {
+        private final Supplier<Object> constructor; //null if not instantiable
+        private final List<FieldAccess> fields;
+
+        private Layout(Class<?> type) {
+            Supplier<Object> constructor = null;
+            if (!Modifier.isAbstract(type.getModifiers()) && (type.getEnclosingClass() == null || Modifier.isStatic(type.getModifiers()))) {
+                try {
+                    //noinspection unchecked
+                    constructor = Accessors.constructor((Constructor<Object>) type.getDeclaredConstructor());
+                } catch (NoSuchMethodException | IllegalStateException e) {
+                    //not instantiable
+                }
+            }
+            this.constructor = constructor;
+            List<FieldAccess> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && !isImmutable(c); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        fields.add(new FieldAccess(Accessors.getter(field), Accessors.setter(field)));
+                    }
+                }
+            }
+            this.fields = Collections.unmodifiableList(fields);
+        }
+    }
+
+    private static class FieldAccess {
+        private final Function<Object, Object> getter;
+        private final BiConsumer<Object, Object> setter;
+
+        private FieldAccess(Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
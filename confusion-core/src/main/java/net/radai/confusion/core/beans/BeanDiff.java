@@ -0,0 +1,168 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.beans;
+
+import net.radai.confusion.core.api.ConfigurationDiff;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Created by Radai Rosenblatt
+ * structural diff of two object graphs. beans are compared property by property, lists
+ * of the same length element by element and maps key by key. anything else is compared using equals.
+ */
+public class BeanDiff implements ConfigurationDiff {
+    private static final int MAX_DEPTH = 64; //guards against cyclic graphs
+
+    private final Set<String> changedPaths;
+
+    private BeanDiff(Set<String> changedPaths) {
+        this.changedPaths = Collections.unmodifiableSet(changedPaths);
+    }
+
+    public static BeanDiff compute(Object oldValue, Object newValue) {
+        Set<String> changes = new LinkedHashSet<>();
+        diff("", oldValue, newValue, changes, 0, false);
+        return new BeanDiff(changes);
+    }
+
+    /**
+     * @return true if both object graphs are structurally equal. stops at the 1st difference found
+     */
+    public static boolean equal(Object a, Object b) {
+        Set<String> changes = new LinkedHashSet<>();
+        diff("", a, b, changes, 0, true);
+        return changes.isEmpty();
+    }
+
+    @Override
+    public Set<String> getChangedPaths() {
+        return changedPaths;
+    }
+
+    @Override
+    public boolean isChanged(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        for (String changed : changedPaths) {
+            if (related(changed, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return changedPaths.toString();
+    }
+
+    /**
+     * @return true if either path is the other, or is nested under it
+     */
+    private static boolean related(String a, String b) {
+        if (a.length() > b.length()) {
+            String t = a;
+            a = b;
+            b = t;
+        }
+        //a is now the shorter (potential ancestor)
+        if (!b.startsWith(a)) {
+            return false;
+        }
+        if (a.isEmpty() || b.length() == a.length()) {
+            return true;
+        }
+        char next = b.charAt(a.length());
+        return next == '.' || next == '[';
+    }
+
+    /**
+     * @param firstOnly stop once a single change has been found
+     */
+    private static void diff(String path, Object a, Object b, Set<String> changes, int depth, boolean firstOnly) {
+        if (a == b) {
+            return;
+        }
+        if (a == null || b == null || depth > MAX_DEPTH) {
+            if (!Objects.deepEquals(a, b)) {
+                changes.add(path);
+            }
+            return;
+        }
+        if (a instanceof List && b instanceof List) {
+            List<?> aList = (List<?>) a;
+            List<?> bList = (List<?>) b;
+            if (aList.size() != bList.size()) {
+                changes.add(path);
+                return;
+            }
+            for (int i = 0; i < aList.size(); i++) {
+                diff(path + "[" + i + "]", aList.get(i), bList.get(i), changes, depth + 1, firstOnly);
+                if (firstOnly && !changes.isEmpty()) {
+                    return;
+                }
+            }
+            return;
+        }
+        if (a instanceof Map && b instanceof Map) {
+            Map<?, ?> aMap = (Map<?, ?>) a;
+            Map<?, ?> bMap = (Map<?, ?>) b;
+            Set<Object> keys = new LinkedHashSet<>(aMap.keySet());
+            keys.addAll(bMap.keySet());
+            for (Object key : keys) {
+                String keyPath = path + "[" + key + "]";
+                if (aMap.containsKey(key) != bMap.containsKey(key)) {
+                    changes.add(keyPath);
+                } else {
+                    diff(keyPath, aMap.get(key), bMap.get(key), changes, depth + 1, firstOnly);
+                }
+                if (firstOnly && !changes.isEmpty()) {
+                    return;
+                }
+            }
+            return;
+        }
+        if (a.getClass() != b.getClass() || a.getClass().isArray()) {
+            if (!Objects.deepEquals(a, b)) {
+                changes.add(path);
+            }
+            return;
+        }
+        BeanModel<?> model = BeanModel.of(a.getClass());
+        if (model.isLeaf()) {
+            if (!a.equals(b)) {
+                changes.add(path);
+            }
+            return;
+        }
+        for (BeanModel.Property property : model.getProperties()) {
+            String propertyPath = path.isEmpty() ? property.getName() : path + "." + property.getName();
+            diff(propertyPath, property.get(a), property.get(b), changes, depth + 1, firstOnly);
+            if (firstOnly && !changes.isEmpty()) {
+                return;
+            }
+        }
+    }
+}
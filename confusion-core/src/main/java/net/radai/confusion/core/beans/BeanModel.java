@@ -0,0 +1,237 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.beans;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Created by Radai Rosenblatt
+ * introspection results for a class, computed once per class and cached.
+ * properties are java beans properties (getter, optional setter) and public fields. accessors are compiled
+ * (see {@link Accessors}) so that per-property operations (diffing, validation) avoid reflection.
+ * deep copies are made by {@link BeanCopier}.
+ */
+public class BeanModel<T> {
+    private static final ClassValue<BeanModel<?>> MODELS = new ClassValue<BeanModel<?>>() {
+        @Override
+        protected BeanModel<?> computeValue(Class<?> type) {
+            return new BeanModel<>(type);
+        }
+    };
+
+    private final Class<T> type;
+    private final List<Property> properties;
+    private final Map<String, Property> byName;
+    private final Supplier<T> constructor; //null if not instantiable
+
+    private BeanModel(Class<T> type) {
+        this.type = type;
+        boolean opaque = isOpaque(type);
+        this.properties = opaque ? Collections.emptyList() : introspect(type);
+        Map<String, Property> byName = new LinkedHashMap<>();
+        for (Property property : properties) {
+            byName.put(property.getName(), property);
+        }
+        this.byName = Collections.unmodifiableMap(byName);
+        this.constructor = opaque ? null : findConstructor(type);
+    }
+
+    public static <T> BeanModel<T> of(Class<T> type) {
+        if (type == null) {
+            throw new IllegalArgumentException();
+        }
+        //noinspection unchecked
+        return (BeanModel<T>) MODELS.get(type);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return property by name, or null if no such property
+     */
+    public Property getProperty(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return true if instances of this class should be treated as values (compared using equals)
+     * rather than broken down into properties
+     */
+    public boolean isLeaf() {
+        return properties.isEmpty();
+    }
+
+    /**
+     * @return true if this class has a no-arg constructor
+     */
+    public boolean isInstantiable() {
+        return constructor != null;
+    }
+
+    public T newInstance() {
+        if (constructor == null) {
+            throw new IllegalStateException(type.getName() + " has no no-arg constructor");
+        }
+        return constructor.get();
+    }
+
+    private static boolean isOpaque(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isEnum() || type.isInterface()) {
+            return true;
+        }
+        if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)) {
+            return true;
+        }
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+
+    private static List<Property> introspect(Class<?> type) {
+        BeanInfo beanInfo;
+        try {
+            beanInfo = Introspector.getBeanInfo(type, Object.class);
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException("unable to introspect " + type, e);
+        }
+        Map<String, Property> properties = new LinkedHashMap<>();
+        for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+            Method getter = descriptor.getReadMethod();
+            if (getter == null) {
+                continue;
+            }
+            Method setter = descriptor.getWriteMethod();
+            properties.put(descriptor.getName(), new Property(
+                    descriptor.getName(),
+                    descriptor.getPropertyType(),
+                    getter.getGenericReturnType(),
+                    Accessors.getter(getter),
+                    setter == null ? null : Accessors.setter(setter)
+            ));
+        }
+        for (Field field : type.getFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || properties.containsKey(field.getName())) {
+                continue;
+            }
+            properties.put(field.getName(), new Property(
+                    field.getName(),
+                    field.getType(),
+                    field.getGenericType(),
+                    Accessors.getter(field),
+                    Modifier.isFinal(modifiers) ? null : Accessors.setter(field)
+            ));
+        }
+        return Collections.unmodifiableList(new ArrayList<>(properties.values()));
+    }
+
+    private static <T> Supplier<T> findConstructor(Class<T> type) {
+        if (Modifier.isAbstract(type.getModifiers()) || (type.getEnclosingClass() != null && !Modifier.isStatic(type.getModifiers()))) {
+            return null;
+        }
+        try {
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            return Accessors.constructor(constructor);
+        } catch (NoSuchMethodException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BeanModel for " + type.getName();
+    }
+
+    public static class Property {
+        private final String name;
+        private final Class<?> type;
+        private final Type genericType;
+        private final Function<Object, Object> getter;
+        private final BiConsumer<Object, Object> setter; //null if read-only
+
+        private Property(String name, Class<?> type, Type genericType, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.name = name;
+            this.type = type;
+            this.genericType = genericType;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Type getGenericType() {
+            return genericType;
+        }
+
+        public boolean isWritable() {
+            return setter != null;
+        }
+
+        public Object get(Object bean) {
+            try {
+                return getter.apply(bean);
+            } catch (Exception e) {
+                throw new IllegalStateException("while reading " + name, e);
+            }
+        }
+
+        public void set(Object bean, Object value) {
+            if (setter == null) {
+                throw new IllegalStateException(name + " is read-only");
+            }
+            try {
+                setter.accept(bean, value);
+            } catch (Exception e) {
+                throw new IllegalStateException("while writing " + name, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
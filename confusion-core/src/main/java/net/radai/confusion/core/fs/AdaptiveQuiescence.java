@@ -0,0 +1,160 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ * a debounce that learns how long writers of every file take. it waits for a single quiet period (no change
+ * to modification time or size) that is twice the time writes to the file have recently been observed to take,
+ * within bounds. a writer that is always done by the time the change is reported quickly converges to the minimum
+ * wait, while a slow writer gets a longer wait (and fewer wake ups) instead of being read halfway through.
+ * per-file history is kept, so a single instance can be shared by many stores.
+ */
+public class AdaptiveQuiescence implements QuiescenceStrategy {
+    public static final long DEFAULT_MIN_MILLIS = 1;
+    public static final long DEFAULT_INITIAL_MILLIS = 10;
+    public static final long DEFAULT_MAX_MILLIS = 500;
+    private static final double WEIGHT = 0.25; //of the latest observation
+
+    private final long minNanos;
+    private final long initialNanos;
+    private final long maxNanos;
+    private final ConcurrentMap<Path, History> histories = new ConcurrentHashMap<>();
+
+    public AdaptiveQuiescence() {
+        this(DEFAULT_MIN_MILLIS, DEFAULT_INITIAL_MILLIS, DEFAULT_MAX_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param min shortest quiet period to wait for
+     * @param initial quiet period to wait for before anything has been learned about a file
+     * @param max longest quiet period to wait for
+     */
+    public AdaptiveQuiescence(long min, long initial, long max, TimeUnit unit) {
+        if (unit == null || min <= 0 || initial < min || max < initial) {
+            throw new IllegalArgumentException();
+        }
+        this.minNanos = unit.toNanos(min);
+        this.initialNanos = unit.toNanos(initial);
+        this.maxNanos = unit.toNanos(max);
+    }
+
+    @Override
+    public void awaitQuiet(Path file, Set<WatchEvent.Kind<?>> kinds) throws InterruptedException {
+        History history = histories.computeIfAbsent(file.toAbsolutePath().normalize(), f -> new History(initialNanos / 2.0));
+        long quietNanos = Math.max(minNanos, Math.min(maxNanos, (long) (2 * history.settleNanos)));
+        long start = System.nanoTime();
+        long lastChange = start;
+        Stamp prev = stamp(file);
+        while (true) {
+            TimeUnit.NANOSECONDS.sleep(quietNanos);
+            Stamp current = stamp(file);
+            if (current == Stamp.UNREADABLE) {
+                if (System.nanoTime() - lastChange >= maxNanos) {
+                    break; //give up waiting, reading it will report whatever the problem is
+                }
+                continue; //as good as changed, look again
+            }
+            if (Objects.equals(prev, current)) {
+                break;
+            }
+            prev = current;
+            lastChange = System.nanoTime();
+        }
+        history.observe(lastChange - start);
+    }
+
+    /**
+     * @return how long this strategy currently waits for changes to the given file to settle
+     */
+    public long getQuietPeriod(Path file, TimeUnit unit) {
+        History history = histories.get(file.toAbsolutePath().normalize());
+        double settleNanos = history == null ? initialNanos / 2.0 : history.settleNanos;
+        return unit.convert(Math.max(minNanos, Math.min(maxNanos, (long) (2 * settleNanos))), TimeUnit.NANOSECONDS);
+    }
+
+    private static Stamp stamp(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            return Stamp.UNREADABLE; //possibly mid-replace (sharing violations on windows, for example)
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "adaptive quiescence between " + TimeUnit.NANOSECONDS.toMillis(minNanos) + " and "
+                + TimeUnit.NANOSECONDS.toMillis(maxNanos) + " ms";
+    }
+
+    private static class History {
+        private volatile double settleNanos; //moving average of how long writes were observed to go on for
+
+        private History(double settleNanos) {
+            this.settleNanos = settleNanos;
+        }
+
+        private void observe(long nanos) {
+            settleNanos = WEIGHT * nanos + (1 - WEIGHT) * settleNanos;
+        }
+    }
+
+    private static class Stamp {
+        private static final Stamp UNREADABLE = new Stamp(-1, -1);
+
+        private final long mtimeMillis;
+        private final long size;
+
+        private Stamp(long mtimeMillis, long size) {
+            this.mtimeMillis = mtimeMillis;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Stamp stamp = (Stamp) o;
+            return mtimeMillis == stamp.mtimeMillis && size == stamp.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mtimeMillis, size);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.Set;
+
+/**
+ * Created by Radai Rosenblatt
+ * does not wait for files that were replaced (or deleted) as a whole, and defers to another strategy for files
+ * modified in place. a file atomically moved into place (which is how {@link PathStore} itself writes) is
+ * reported as created but never as modified, so it can be read right away.
+ * a writer that creates a new file and then writes to it may be read before it is done (it is read again once
+ * the write is reported), so this is best used where writers either move files into place or modify existing ones.
+ */
+public class AtomicRenameQuiescence implements QuiescenceStrategy {
+    private final QuiescenceStrategy inPlace;
+
+    public AtomicRenameQuiescence() {
+        this(QuiescenceStrategy.FIXED);
+    }
+
+    /**
+     * @param inPlace strategy for files modified in place (or when it is not known how a file changed)
+     */
+    public AtomicRenameQuiescence(QuiescenceStrategy inPlace) {
+        if (inPlace == null) {
+            throw new IllegalArgumentException();
+        }
+        this.inPlace = inPlace;
+    }
+
+    @Override
+    public void awaitQuiet(Path file, Set<WatchEvent.Kind<?>> kinds) throws InterruptedException {
+        if (!kinds.isEmpty() && !kinds.contains(StandardWatchEventKinds.ENTRY_MODIFY)) {
+            return; //replaced or deleted, either way there's nothing to wait for
+        }
+        inPlace.awaitQuiet(file, kinds);
+    }
+
+    public QuiescenceStrategy getInPlace() {
+        return inPlace;
+    }
+
+    @Override
+    public String toString() {
+        return "atomic renames, otherwise " + inPlace;
+    }
+}
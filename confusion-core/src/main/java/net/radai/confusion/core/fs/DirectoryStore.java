@@ -0,0 +1,465 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.store.AbstractBinaryStore;
+import net.radai.confusion.core.util.Fingerprint;
+import net.radai.confusion.core.util.IOUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ * read-only store over a directory of configuration fragments (a conf.d directory), assembled into a single
+ * payload in file name order. the directory is watched with a single registration, fragments are cached along
+ * with their checksums, and on every change only the fragments that changed are read again. a change that leaves
+ * all fragments as they were (say, a file touched or rewritten as is) is not reported - fragments are compared,
+ * byte for byte, to those last reported.
+ * hidden files (whose name starts with a dot) and subdirectories are ignored, as are files not matching the glob.
+ * a missing or empty directory reads as null.
+ */
+public class DirectoryStore extends AbstractBinaryStore {
+    private final Logger log = LogManager.getLogger(getClass());
+    private final Path directory;
+    private volatile PathMatcher matcher = name -> true;
+    private volatile String glob = "*";
+    private volatile FragmentAssembler assembler = FragmentAssembler.CONCATENATE;
+    private volatile QuiescenceStrategy quiescence = QuiescenceStrategy.FIXED;
+
+    //cache. guarded by its own lock, as start() holds the store's while waiting for the watch thread
+    private final Object cacheLock = new Object();
+    private final Map<String, Fragment> fragments = new HashMap<>();
+    //contents last fired (or seen at start), by name. kept apart from the cache, which reads bring up to date as well
+    private Map<String, byte[]> fired = Collections.emptyMap(); //guarded by cacheLock
+    private volatile DirectoryWatcher watcher = null; //null means a dedicated poll thread
+    private DirectoryWatcher.Watch watch = null; //guarded by this
+
+    public DirectoryStore(Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException();
+        }
+        this.directory = directory;
+    }
+
+    public DirectoryStore(File directory) {
+        this(directory.toPath());
+    }
+
+    public DirectoryStore(String directory) {
+        this(Paths.get(directory));
+    }
+
+    /**
+     * see {@link PathStore#setWatcher(DirectoryWatcher)}
+     * @param watcher watcher to use, or null for a dedicated poll thread (the default)
+     */
+    public synchronized void setWatcher(DirectoryWatcher watcher) {
+        if (isOn()) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        this.watcher = watcher;
+    }
+
+    public DirectoryWatcher getWatcher() {
+        return watcher;
+    }
+
+    /**
+     * @param glob pattern fragment file names must match (for example "*.yaml"). see {@link java.nio.file.FileSystem#getPathMatcher(String)}
+     */
+    public void setGlob(String glob) {
+        if (isOn()) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        if (glob == null) {
+            throw new IllegalArgumentException();
+        }
+        this.matcher = directory.getFileSystem().getPathMatcher("glob:" + glob);
+        this.glob = glob;
+        synchronized (cacheLock) {
+            fragments.clear();
+        }
+    }
+
+    public String getGlob() {
+        return glob;
+    }
+
+    /**
+     * @param assembler how to assemble fragments into a single payload (concatenation by default)
+     */
+    public void setAssembler(FragmentAssembler assembler) {
+        if (assembler == null) {
+            throw new IllegalArgumentException();
+        }
+        this.assembler = assembler;
+    }
+
+    public FragmentAssembler getAssembler() {
+        return assembler;
+    }
+
+    /**
+     * @param quiescence how to decide a changed fragment is safe to read (see {@link PathStore#setQuiescence(QuiescenceStrategy)})
+     */
+    public void setQuiescence(QuiescenceStrategy quiescence) {
+        if (quiescence == null) {
+            throw new IllegalArgumentException();
+        }
+        this.quiescence = quiescence;
+    }
+
+    public QuiescenceStrategy getQuiescence() {
+        return quiescence;
+    }
+
+    @Override
+    protected BinaryPollRunnable createRunnable() {
+        return new PollRunnable();
+    }
+
+    @Override
+    protected void startPollThread() {
+        DirectoryWatcher watcher = this.watcher;
+        if (watcher == null) {
+            super.startPollThread();
+            return;
+        }
+        try {
+            watch = watcher.watchDirectory(directory, new PollRunnable());
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to watch " + directory, e);
+        }
+        try {
+            baseline(); //changes made from here on are reported by the watch
+        } catch (IOException e) {
+            log.error("while reading fragments in " + directory, e);
+        }
+    }
+
+    @Override
+    protected void stopPollThread() {
+        if (watch == null) {
+            super.stopPollThread();
+            return;
+        }
+        watch.close();
+        watch = null;
+    }
+
+    @Override
+    public byte[] read() throws IOException {
+        return readVersioned().getValue();
+    }
+
+    /**
+     * versions are derived from fragment names and contents
+     */
+    @Override
+    public Versioned<byte[]> readVersioned() throws IOException {
+        synchronized (cacheLock) {
+            rescan();
+            return assemble();
+        }
+    }
+
+    @Override
+    public void write(byte[] payload) throws IOException {
+        throw new UnsupportedOperationException(this + " is read-only");
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryStore for " + directory;
+    }
+
+    /**
+     * brings the cache up to date with the whole directory. fragments whose size and modification time have not
+     * changed are assumed unchanged
+     */
+    private void rescan() throws IOException { //must be called while holding cacheLock
+        Set<String> present = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (isFragment(file)) {
+                    present.add(name);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            //no directory, no fragments
+        }
+        fragments.keySet().retainAll(present);
+        for (String name : present) {
+            refresh(name, false);
+        }
+    }
+
+    /**
+     * brings the cached copy of a single fragment up to date
+     * @param name file name
+     * @param force read the fragment even if its size and modification time look the same
+     */
+    private void refresh(String name, boolean force) throws IOException { //must be called while holding cacheLock
+        Path file = directory.resolve(name);
+        Fragment cached = fragments.get(name);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            fragments.remove(name);
+            return;
+        }
+        if (!attributes.isRegularFile() || !isFragment(file)) {
+            fragments.remove(name);
+            return;
+        }
+        long mtime = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        if (!force && cached != null && cached.mtime == mtime && cached.size == size) {
+            return;
+        }
+        byte[] contents;
+        try {
+            contents = IOUtil.read(file);
+        } catch (NoSuchFileException e) {
+            fragments.remove(name); //deleted in the meantime
+            return;
+        }
+        fragments.put(name, new Fragment(contents, Fingerprint.of(contents), mtime, size));
+    }
+
+    private boolean isFragment(Path file) {
+        Path name = file.getFileName();
+        return !name.toString().startsWith(".") && matcher.matches(name) && !Files.isDirectory(file);
+    }
+
+    /**
+     * brings the cache up to date, and takes whatever is in it as already fired
+     */
+    private void baseline() throws IOException {
+        synchronized (cacheLock) {
+            rescan();
+            fired = contents();
+        }
+    }
+
+    /**
+     * @return version of the cached fragments, derived from their names and contents. 0 if there are none
+     */
+    private long version() { //must be called while holding cacheLock
+        if (fragments.isEmpty()) {
+            return 0;
+        }
+        long version = 17;
+        for (Map.Entry<String, Fragment> entry : new TreeMap<>(fragments).entrySet()) {
+            version = 31 * (31 * version + entry.getKey().hashCode()) + entry.getValue().fingerprint.getHash();
+        }
+        version &= Long.MAX_VALUE;
+        return version == 0 ? 1 : version;
+    }
+
+    private Versioned<byte[]> assemble() { //must be called while holding cacheLock
+        if (fragments.isEmpty()) {
+            return new Versioned<>(null, 0);
+        }
+        return new Versioned<>(assembler.assemble(Collections.unmodifiableSortedMap(contents())), version());
+    }
+
+    private SortedMap<String, byte[]> contents() { //must be called while holding cacheLock
+        SortedMap<String, byte[]> contents = new TreeMap<>();
+        for (Map.Entry<String, Fragment> entry : fragments.entrySet()) {
+            contents.put(entry.getKey(), entry.getValue().contents);
+        }
+        return contents;
+    }
+
+    /**
+     * @return true if the cached fragments are the same, byte for byte, as the given ones
+     */
+    private boolean same(Map<String, byte[]> other) { //must be called while holding cacheLock
+        if (other.size() != fragments.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Fragment> entry : fragments.entrySet()) {
+            byte[] contents = other.get(entry.getKey());
+            //cached contents are never modified, so an unchanged fragment is usually the very same array
+            if (contents == null || !Arrays.equals(contents, entry.getValue().contents)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Fragment {
+        private final byte[] contents;
+        private final Fingerprint fingerprint;
+        private final long mtime;
+        private final long size;
+
+        private Fragment(byte[] contents, Fingerprint fingerprint, long mtime, long size) {
+            this.contents = contents;
+            this.fingerprint = fingerprint;
+            this.mtime = mtime;
+            this.size = size;
+        }
+    }
+
+    private class PollRunnable extends AbstractBinaryStore.BinaryPollRunnable implements DirectoryWatcher.DirectoryListener {
+
+        @Override
+        public void run() {
+            boolean officiallyStarted = false;
+            while (!shouldDie()) {
+                try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+                    WatchKey watchKey = directory.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    if (officiallyStarted) {
+                        changed(null); //directory (re)appeared, anything could have happened to it
+                    } else {
+                        baseline();
+                        markWatching();
+                        officiallyStarted = true;
+                    }
+                    while (!shouldDie()) {
+                        //wake up every once in a while, to report the watch is still alive
+                        WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                        markPolled();
+                        if (key == null) {
+                            continue;
+                        }
+                        Map<String, Set<WatchEvent.Kind<?>>> changes = new HashMap<>();
+                        boolean overflow = false;
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                overflow = true;
+                                continue;
+                            }
+                            changes.computeIfAbsent(event.context().toString(), n -> new HashSet<>()).add(event.kind());
+                        }
+                        changed(overflow ? null : changes);
+                        if (!watchKey.reset()) {
+                            changed(null); //directory is gone
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    if (!shouldDie()) {
+                        log.error("interrupted while watching " + directory, e);
+                    }
+                } catch (NoSuchFileException e) {
+                    if (!officiallyStarted) {
+                        markWatching();
+                        officiallyStarted = true;
+                    }
+                    try {
+                        Thread.sleep(100L); //dir isnt there. wait to retry
+                    } catch (InterruptedException ignored) {
+                    }
+                } catch (Exception e) {
+                    log.error("while watching " + directory, e);
+                }
+            }
+        }
+
+        /**
+         * invoked by a shared watcher, instead of running as a poll thread
+         */
+        @Override
+        public void entriesChanged(Path dir, Map<Path, Set<WatchEvent.Kind<?>>> changes) {
+            Map<String, Set<WatchEvent.Kind<?>>> byName = null;
+            if (changes != null) {
+                byName = new HashMap<>();
+                for (Map.Entry<Path, Set<WatchEvent.Kind<?>>> change : changes.entrySet()) {
+                    byName.put(change.getKey().toString(), change.getValue());
+                }
+            }
+            //changes made while we wait are coalesced by the watcher into a single follow up call
+            try {
+                changed(byName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void watcherPolled() {
+            markPolled();
+        }
+
+        /**
+         * @param changes kinds of events by the names of the files they were for, or null to rescan everything
+         */
+        private void changed(Map<String, Set<WatchEvent.Kind<?>>> changes) throws InterruptedException {
+            if (changes != null) {
+                for (Map.Entry<String, Set<WatchEvent.Kind<?>>> change : changes.entrySet()) {
+                    if (isFragment(directory.resolve(change.getKey()))) {
+                        quiescence.awaitQuiet(directory.resolve(change.getKey()), change.getValue());
+                    }
+                }
+            }
+            Versioned<byte[]> assembled = null;
+            synchronized (cacheLock) {
+                try {
+                    if (changes == null) {
+                        rescan();
+                    } else {
+                        for (String name : changes.keySet()) {
+                            refresh(name, true);
+                        }
+                    }
+                    //compared to what was last fired rather than to the cache, which a read may have refreshed already
+                    if (!same(fired)) {
+                        fired = contents();
+                        assembled = assemble();
+                    }
+                } catch (IOException e) {
+                    log.error("while reading fragments in " + directory, e);
+                }
+            }
+            if (assembled != null) {
+                fire(assembled.getValue(), assembled.getVersion());
+            }
+        }
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import net.radai.confusion.core.util.Threads;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Created by Radai Rosenblatt
+ * watches files for changes using a single {@link WatchService} and a single thread, no matter how many files
+ * are being watched. every directory is registered once, and events are routed to listeners by file name
+ * (or to listeners of the whole directory, see {@link #watchDirectory(Path, DirectoryListener)}).
+ * listeners are invoked on a separate executor, one at a time per watched file, and changes that happen while
+ * a listener is busy are coalesced into a single follow-up call. the watcher thread only runs while there is
+ * something to watch.
+ */
+public class DirectoryWatcher {
+    private static final WatchEvent.Kind<?>[] KINDS = {
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE
+    };
+    private static final long HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MISSING_DIRECTORY_RETRY_MILLIS = 100L;
+    private static final DirectoryWatcher SHARED = new DirectoryWatcher(
+            Threads.daemonThreadFactory("confusion-directory-watcher", Threads.WATCHER_STACK_SIZE),
+            defaultListenerExecutor()
+    );
+
+    private final Logger log = LogManager.getLogger(getClass());
+    private final ThreadFactory threadFactory;
+    private final Executor listenerExecutor;
+
+    //state. all guarded by this
+    private final Map<Path, Directory> directories = new HashMap<>();
+    private final Map<WatchKey, Directory> byKey = new HashMap<>();
+    private WatchService watchService = null; //non-null while the watcher thread runs
+    private int watches = 0;
+
+    /**
+     * @return the process-wide instance
+     */
+    public static DirectoryWatcher shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param threadFactory factory for the watcher thread
+     * @param listenerExecutor executor to invoke listeners on. listeners may block for a while (waiting for files to
+     *                         settle, for example) so this should not be the executor of something latency sensitive
+     */
+    public DirectoryWatcher(ThreadFactory threadFactory, Executor listenerExecutor) {
+        if (threadFactory == null || listenerExecutor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.threadFactory = threadFactory;
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    public interface FileListener {
+        /**
+         * the file (or its parent directory) has been created, modified or deleted since the last call.
+         * never called concurrently (for the same watch)
+         * @param file the watched file
+         * @param kinds kinds of events seen for the file since the last call, empty if not known (for example
+         *              if events were lost, or the whole directory came or went)
+         */
+        void fileChanged(Path file, Set<WatchEvent.Kind<?>> kinds);
+
+        /**
+         * called, on the watcher thread, whenever the watcher has successfully checked for changes
+         * (at least once a second), whether or not it found any. must be cheap
+         */
+        default void watcherPolled() {
+        }
+    }
+
+    public interface DirectoryListener {
+        /**
+         * entries of the directory have been created, modified or deleted since the last call (or the directory itself
+         * came or went). never called concurrently (for the same watch)
+         * @param directory the watched directory
+         * @param changes kinds of events seen since the last call by the names of the entries they were for, or null
+         *                if not known which entries changed (for example if events were lost)
+         */
+        void entriesChanged(Path directory, Map<Path, Set<WatchEvent.Kind<?>>> changes);
+
+        /**
+         * see {@link FileListener#watcherPolled()}
+         */
+        default void watcherPolled() {
+        }
+    }
+
+    /**
+     * a registration of interest in a file (or directory), see {@link #watch(Path, FileListener)}
+     */
+    public interface Watch extends AutoCloseable {
+        Path getFile();
+
+        /**
+         * reports a change of unknown kind to the listener (asynchronously, like any other change), for example
+         * to catch up on anything that happened before the watch was registered
+         */
+        void recheck();
+
+        @Override
+        void close();
+    }
+
+    /**
+     * starts watching a file. the file, or even its parent directory, does not need to exist.
+     * changes made after this method returns are guaranteed to be reported, provided the parent directory exists.
+     * @param file file to watch
+     * @param listener listener to notify of changes
+     * @return the watch, to be closed when no longer interested
+     */
+    public synchronized Watch watch(Path file, FileListener listener) throws IOException {
+        if (file == null || listener == null) {
+            throw new IllegalArgumentException();
+        }
+        Path absolute = file.toAbsolutePath().normalize();
+        Path dirPath = absolute.getParent();
+        if (dirPath == null) {
+            throw new IllegalArgumentException("cannot watch " + file + " as it has no parent directory");
+        }
+        Directory directory = directoryFor(dirPath);
+        FileWatch watch = new FileWatch(file, absolute.getFileName(), directory, listener, null);
+        directory.watches.computeIfAbsent(watch.name, n -> new ArrayList<>()).add(watch);
+        watches++;
+        return watch;
+    }
+
+    /**
+     * starts watching all entries of a directory (but not those of its subdirectories). the directory does not need
+     * to exist. changes made after this method returns are guaranteed to be reported
+     * @param dir directory to watch
+     * @param listener listener to notify of changes
+     * @return the watch, to be closed when no longer interested
+     */
+    public synchronized Watch watchDirectory(Path dir, DirectoryListener listener) throws IOException {
+        if (dir == null || listener == null) {
+            throw new IllegalArgumentException();
+        }
+        Directory directory = directoryFor(dir.toAbsolutePath().normalize());
+        FileWatch watch = new FileWatch(dir, null, directory, null, listener);
+        directory.everything.add(watch);
+        watches++;
+        return watch;
+    }
+
+    private Directory directoryFor(Path dirPath) throws IOException { //must be called while holding this
+        if (watchService == null) {
+            startWatching(dirPath.getFileSystem());
+        }
+        Directory directory = directories.get(dirPath);
+        if (directory == null) {
+            directory = new Directory(dirPath);
+            try {
+                register(directory);
+            } catch (IOException | RuntimeException e) {
+                if (watches == 0) {
+                    stopWatching(); //dont leave a thread running for nothing
+                }
+                throw e;
+            }
+            directories.put(dirPath, directory);
+        }
+        return directory;
+    }
+
+    private synchronized void unwatch(FileWatch watch) {
+        Directory directory = watch.directory;
+        List<FileWatch> forName = watch.name == null ? directory.everything : directory.watches.get(watch.name);
+        if (forName == null || !forName.remove(watch)) {
+            return; //already closed
+        }
+        watches--;
+        if (forName.isEmpty() && watch.name != null) {
+            directory.watches.remove(watch.name);
+        }
+        if (directory.watches.isEmpty() && directory.everything.isEmpty()) {
+            directories.remove(directory.path);
+            if (directory.key != null) {
+                byKey.remove(directory.key);
+                directory.key.cancel();
+            }
+        }
+        if (watches == 0) {
+            stopWatching();
+        }
+    }
+
+    private void startWatching(FileSystem fileSystem) throws IOException { //must be called while holding this
+        WatchService service = fileSystem.newWatchService();
+        Thread thread = threadFactory.newThread(() -> run(service));
+        if (thread == null) {
+            service.close();
+            throw new IllegalStateException("thread factory " + threadFactory + " refused to create a watcher thread");
+        }
+        watchService = service;
+        thread.start();
+    }
+
+    private void stopWatching() { //must be called while holding this
+        try {
+            watchService.close(); //the watcher thread exits on its own
+        } catch (IOException e) {
+            log.warn("while closing {}", watchService, e);
+        }
+        watchService = null;
+    }
+
+    /**
+     * @return true if the directory is now registered, false if it does not (yet) exist
+     */
+    private boolean register(Directory directory) throws IOException { //must be called while holding this
+        try {
+            directory.key = directory.path.register(watchService, KINDS);
+            byKey.put(directory.key, directory);
+            return true;
+        } catch (NoSuchFileException e) {
+            directory.key = null; //retried by the watcher thread
+            return false;
+        }
+    }
+
+    private void run(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = service.poll(hasMissingDirectories() ? MISSING_DIRECTORY_RETRY_MILLIS : HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (ClosedWatchServiceException | InterruptedException e) {
+                    return; //nothing left to watch
+                }
+                synchronized (this) {
+                    if (watchService != service) {
+                        return;
+                    }
+                    if (key != null) {
+                        try {
+                            route(key);
+                        } catch (RuntimeException e) {
+                            log.error("while routing changes in {}", key.watchable(), e);
+                        }
+                    }
+                    retryMissingDirectories();
+                    for (Directory directory : directories.values()) {
+                        directory.forEach(watch -> {
+                            try {
+                                watch.polled();
+                            } catch (RuntimeException e) {
+                                log.error("while reporting a poll of {}", watch.file, e);
+                            }
+                        });
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (watchService == service) {
+                    died(); //should not get here, but if it did this thread is not coming back
+                }
+            }
+        }
+    }
+
+    /**
+     * the watcher thread exited while there were still things to watch. starts over with a new one
+     */
+    private void died() { //must be called while holding this
+        log.error("{} watcher thread died, restarting it", this);
+        FileSystem fileSystem = null;
+        for (Directory directory : directories.values()) {
+            directory.key = null; //registered with the dead service, re-registered by the new thread
+            fileSystem = directory.path.getFileSystem();
+        }
+        byKey.clear();
+        stopWatching();
+        if (watches == 0 || fileSystem == null) {
+            return;
+        }
+        try {
+            startWatching(fileSystem);
+        } catch (IOException | RuntimeException e) {
+            //next call to watch() will try again, as will any directory whose watches are all closed and reopened
+            log.error("unable to restart watching {} directories", directories.size(), e);
+        }
+    }
+
+    private void route(WatchKey key) { //must be called while holding this
+        Directory directory = byKey.get(key);
+        List<WatchEvent<?>> events = key.pollEvents();
+        if (directory == null) {
+            return; //no longer watched
+        }
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                directory.forEach(watch -> watch.changed(null, null)); //lost track, everyone should take a look
+                continue;
+            }
+            Path name = (Path) event.context();
+            List<FileWatch> interested = directory.watches.get(name);
+            if (interested != null) {
+                interested.forEach(watch -> watch.changed(name, event.kind()));
+            }
+            directory.everything.forEach(watch -> watch.changed(name, event.kind()));
+        }
+        if (!key.reset()) {
+            //directory is gone. keep trying to watch it until (if ever) it comes back
+            byKey.remove(key);
+            directory.key = null;
+            directory.forEach(watch -> watch.changed(null, null));
+        }
+    }
+
+    private synchronized boolean hasMissingDirectories() {
+        for (Directory directory : directories.values()) {
+            if (directory.key == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void retryMissingDirectories() { //must be called while holding this
+        for (Directory directory : directories.values()) {
+            if (directory.key != null) {
+                continue;
+            }
+            try {
+                if (register(directory)) {
+                    //files may have been created along with the directory, before we got to watch it
+                    directory.forEach(watch -> {
+                        if (Files.exists(watch.file)) {
+                            watch.changed(null, null);
+                        }
+                    });
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("while watching {}", directory.path, e);
+            }
+        }
+    }
+
+    private static Executor defaultListenerExecutor() {
+        int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Threads.daemonThreadFactory("confusion-directory-listener", Threads.WATCHER_STACK_SIZE));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DirectoryWatcher watching " + watches + " files in " + directories.size() + " directories";
+    }
+
+    private static class Directory {
+        private final Path path;
+        private final Map<Path, List<FileWatch>> watches = new HashMap<>(); //by file name
+        private final List<FileWatch> everything = new ArrayList<>(); //watches on all entries
+        private WatchKey key; //null if the directory doesn't exist
+
+        private Directory(Path path) {
+            this.path = path;
+        }
+
+        private void forEach(Consumer<FileWatch> action) {
+            for (List<FileWatch> forName : watches.values()) {
+                forName.forEach(action);
+            }
+            everything.forEach(action);
+        }
+    }
+
+    private class FileWatch implements Watch {
+        private final Path file;
+        private final Path name; //null for a watch on all entries
+        private final Directory directory;
+        private final FileListener listener;
+        private final DirectoryListener directoryListener;
+        private Map<Path, Set<WatchEvent.Kind<?>>> pending = null; //changes not reported yet, by name. guarded by this
+        private boolean unknown = false; //some of the pending changes are of unknown entries. guarded by this
+        private boolean running = false; //the listener is being invoked (or is about to be). guarded by this
+        private volatile boolean closed = false;
+
+        private FileWatch(Path file, Path name, Directory directory, FileListener listener, DirectoryListener directoryListener) {
+            this.file = file;
+            this.name = name;
+            this.directory = directory;
+            this.listener = listener;
+            this.directoryListener = directoryListener;
+        }
+
+        /**
+         * @param entry name of the changed entry, or null if not known
+         * @param kind kind of event, or null if not known
+         */
+        private void changed(Path entry, WatchEvent.Kind<?> kind) {
+            synchronized (this) {
+                if (pending == null) {
+                    pending = new HashMap<>();
+                }
+                if (entry == null) {
+                    unknown = true;
+                } else {
+                    Set<WatchEvent.Kind<?>> kinds = pending.computeIfAbsent(entry, n -> new HashSet<>());
+                    if (kind != null) {
+                        kinds.add(kind);
+                    }
+                }
+                if (running) {
+                    return; //will be picked up by the ongoing drain
+                }
+                running = true;
+            }
+            try {
+                listenerExecutor.execute(this::drain);
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    running = false;
+                }
+                throw e;
+            }
+        }
+
+        private void drain() {
+            boolean drained = false;
+            try {
+                while (true) {
+                    Map<Path, Set<WatchEvent.Kind<?>>> changes;
+                    boolean known;
+                    synchronized (this) {
+                        changes = pending;
+                        known = !unknown;
+                        pending = null;
+                        unknown = false;
+                        if (changes == null || closed) {
+                            running = false;
+                            drained = true;
+                            return;
+                        }
+                    }
+                    try {
+                        if (directoryListener != null) {
+                            directoryListener.entriesChanged(file, known ? changes : null);
+                        } else {
+                            listener.fileChanged(file, changes.getOrDefault(name, new HashSet<>()));
+                        }
+                    } catch (Exception e) {
+                        log.error("while reporting a change to {}", file, e);
+                    }
+                }
+            } finally {
+                if (!drained) {
+                    //an Error escaped the listener. the next change needs to start a new drain
+                    synchronized (this) {
+                        running = false;
+                    }
+                }
+            }
+        }
+
+        private void polled() {
+            if (closed) {
+                return;
+            }
+            if (directoryListener != null) {
+                directoryListener.watcherPolled();
+            } else {
+                listener.watcherPolled();
+            }
+        }
+
+        @Override
+        public Path getFile() {
+            return file;
+        }
+
+        @Override
+        public void recheck() {
+            if (!closed) {
+                changed(null, null);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            unwatch(this);
+        }
+
+        @Override
+        public String toString() {
+            return "watch on " + file;
+        }
+    }
+}
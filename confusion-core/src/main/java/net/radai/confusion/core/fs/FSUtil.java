@@ -18,9 +18,11 @@
 package net.radai.confusion.core.fs;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.util.Objects;
 
@@ -59,6 +61,19 @@ public class FSUtil {
         }
     }
 
+    /**
+     * flushes a directory's entries to disk, so that a file just created, renamed or removed in it survives a crash.
+     * best effort - some platforms (windows) do not allow opening directories, in which case this does nothing
+     * @param dir directory to flush
+     */
+    public static void fsyncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //not supported on this platform
+        }
+    }
+
     private static FileTime getMTime(Path path) throws IOException {
         try {
             return Files.getLastModifiedTime(path);
@@ -0,0 +1,69 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import java.util.SortedMap;
+
+/**
+ * Created by Radai Rosenblatt
+ * assembles the fragments of a {@link DirectoryStore} into a single payload, to be parsed by a codec
+ */
+@FunctionalInterface
+public interface FragmentAssembler {
+
+    /**
+     * concatenates fragments in name order
+     */
+    FragmentAssembler CONCATENATE = concatenate(new byte[0]);
+
+    /**
+     * @param separator bytes to put between fragments (a newline, for line oriented formats)
+     * @return an assembler that concatenates fragments in name order, separated by the given bytes
+     */
+    static FragmentAssembler concatenate(byte[] separator) {
+        if (separator == null) {
+            throw new IllegalArgumentException();
+        }
+        byte[] sep = separator.clone();
+        return fragments -> {
+            int size = sep.length * Math.max(0, fragments.size() - 1);
+            for (byte[] fragment : fragments.values()) {
+                size += fragment.length;
+            }
+            byte[] payload = new byte[size];
+            int offset = 0;
+            boolean first = true;
+            for (byte[] fragment : fragments.values()) {
+                if (!first) { //not offset > 0, the 1st fragment may be empty
+                    System.arraycopy(sep, 0, payload, offset, sep.length);
+                    offset += sep.length;
+                }
+                first = false;
+                System.arraycopy(fragment, 0, payload, offset, fragment.length);
+                offset += fragment.length;
+            }
+            return payload;
+        };
+    }
+
+    /**
+     * @param fragments contents of all fragments, by file name (in name order). never empty. must not be modified
+     * @return the payload
+     */
+    byte[] assemble(SortedMap<String, byte[]> fragments);
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.codec.BinaryCodec;
+import net.radai.confusion.core.spi.codec.Codec;
+import net.radai.confusion.core.spi.codec.TextCodec;
+import net.radai.confusion.core.spi.snapshot.Snapshot;
+import net.radai.confusion.core.spi.store.adapter.Adapter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Created by Radai Rosenblatt
+ * keeps a snapshot in a local file. the file holds a small header (including the version and a checksum of
+ * the payload) followed by the configuration as encoded by the given codec (text is stored as utf8).
+ * files that are truncated, corrupt or were written by something else are ignored.
+ * saves go to a temp file that is flushed to disk and then atomically moved into place, after which the
+ * directory is flushed as well (where the platform allows it).
+ */
+public class PathSnapshot<T> implements Snapshot<T> {
+    private static final int MAGIC = 0x434E4653; //"CNFS"
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4; //magic, format, version, crc, length
+
+    private final Logger log = LogManager.getLogger(getClass());
+    private final Class<T> beanClass;
+    private final Path path;
+    private final Codec codec;
+
+    public PathSnapshot(Class<T> beanClass, Path path, Codec codec) {
+        if (beanClass == null || path == null || codec == null) {
+            throw new IllegalArgumentException("all arguments are mandatory");
+        }
+        if (!(codec instanceof BinaryCodec) && !(codec instanceof TextCodec)) {
+            throw new IllegalArgumentException("unhandled codec " + codec);
+        }
+        this.beanClass = beanClass;
+        this.path = path.toAbsolutePath();
+        this.codec = codec;
+    }
+
+    public PathSnapshot(Class<T> beanClass, File file, Codec codec) {
+        this(beanClass, file.toPath(), codec);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public Versioned<T> load() throws IOException {
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        if (contents.length < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+            log.warn("{} is not a snapshot, ignoring it", path);
+            return null;
+        }
+        long version = buffer.getLong();
+        long crc = buffer.getLong();
+        int length = buffer.getInt();
+        if (length != buffer.remaining() || crc != crc(contents, HEADER_SIZE, length)) {
+            log.warn("snapshot {} is corrupt, ignoring it", path);
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        return new Versioned<>(decode(payload), version);
+    }
+
+    @Override
+    public void save(T conf, long version) throws IOException {
+        if (conf == null) {
+            try {
+                Files.delete(path);
+            } catch (NoSuchFileException e) {
+                //nothing to remove
+            }
+            return;
+        }
+        byte[] payload = encode(conf);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + payload.length);
+        try (DataOutputStream os = new DataOutputStream(bytes)) {
+            os.writeInt(MAGIC);
+            os.writeInt(FORMAT);
+            os.writeLong(version);
+            os.writeLong(crc(payload, 0, payload.length));
+            os.writeInt(payload.length);
+            os.write(payload);
+        }
+        Path temp = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true); //otherwise a crash could leave us with an empty (renamed) file
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            FSUtil.fsyncDirectory(path.getParent()); //otherwise a crash could undo the rename
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private byte[] encode(T conf) {
+        if (codec instanceof BinaryCodec) {
+            return ((BinaryCodec) codec).serialize(conf);
+        }
+        return Adapter.UTF8.toBinary(((TextCodec) codec).serialize(conf));
+    }
+
+    private T decode(byte[] payload) {
+        if (codec instanceof BinaryCodec) {
+            return ((BinaryCodec) codec).parse(beanClass, payload);
+        }
+        return ((TextCodec) codec).parse(beanClass, Adapter.UTF8.toText(payload));
+    }
+
+    private static long crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "PathSnapshot for " + path;
+    }
+}
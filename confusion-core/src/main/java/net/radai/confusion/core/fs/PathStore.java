@@ -17,6 +17,8 @@
 
 package net.radai.confusion.core.fs;
 
+import net.radai.confusion.core.api.VersionConflictException;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.store.AbstractBinaryStore;
 import net.radai.confusion.core.util.IOUtil;
 import org.apache.logging.log4j.LogManager;
@@ -24,17 +26,44 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
  * Created by Radai Rosenblatt
+ * versions are derived from the file's modification time and contents. conditional writes are serialized (across
+ * processes as well) using an advisory lock on a hidden sibling lock file, which only exists while such a write is
+ * in progress. they are atomic with respect to other writers using this class, but not to arbitrary external
+ * modifications.
  */
 public class PathStore extends AbstractBinaryStore {
+    /**
+     * the symlink swapped on every update of kubernetes configmap and secret volumes
+     */
+    public static final String KUBERNETES_DATA_LINK = "..data";
+    //file locks are held on behalf of the whole jvm, so threads in the same jvm need to be kept apart by other means
+    private static final ConcurrentMap<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
     private final Logger log = LogManager.getLogger(getClass());
     private final Path path;
+    private volatile DirectoryWatcher watcher = null; //null means a dedicated poll thread
+    private volatile QuiescenceStrategy quiescence = QuiescenceStrategy.FIXED;
+    private volatile String swappedLink = null; //null means the file itself is watched
+    private volatile Path generation = null; //target of the swapped link when last read
+    private DirectoryWatcher.Watch watch = null; //guarded by this
 
     public PathStore(Path path) {
         this.path = path;
@@ -48,22 +77,164 @@ public class PathStore extends AbstractBinaryStore {
         this(Paths.get(path));
     }
 
+    /**
+     * allows many stores to share a common watcher (and its thread) instead of each running a poll thread and
+     * {@link WatchService} of its own. see {@link DirectoryWatcher#shared()}
+     * @param watcher watcher to use, or null for a dedicated poll thread (the default)
+     */
+    public synchronized void setWatcher(DirectoryWatcher watcher) {
+        if (isOn()) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        this.watcher = watcher;
+    }
+
+    public DirectoryWatcher getWatcher() {
+        return watcher;
+    }
+
+    /**
+     * @param quiescence how to decide a changed file is safe to read. the default ({@link QuiescenceStrategy#FIXED})
+     *                   waits for every change to settle. where all writers move files into place (like this class
+     *                   does) {@link AtomicRenameQuiescence} reads them right away instead
+     */
+    public void setQuiescence(QuiescenceStrategy quiescence) {
+        if (quiescence == null) {
+            throw new IllegalArgumentException();
+        }
+        this.quiescence = quiescence;
+    }
+
+    public QuiescenceStrategy getQuiescence() {
+        return quiescence;
+    }
+
+    /**
+     * enables watching for updates made by atomically swapping a symlink, rather than by modifying the file.
+     * this is how kubernetes updates configmap and secret volumes: every version of the volume's contents is
+     * written to a new hidden directory, the {@value #KUBERNETES_DATA_LINK} symlink is then swapped to point at it,
+     * and the file itself is a symlink through it that never changes. in this mode the store watches the swapped link
+     * and fires exactly once every time it points somewhere new, without waiting for anything to settle.
+     * such volumes are read-only, and this store should not be written to.
+     * @param swappedLink name of the symlink (in the file's directory) swapped on every update
+     *                    (typically {@link #KUBERNETES_DATA_LINK}), or null to watch the file itself (the default)
+     */
+    public synchronized void setSwappedLink(String swappedLink) {
+        if (isOn()) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        if (swappedLink != null && (swappedLink.isEmpty() || Paths.get(swappedLink).getNameCount() != 1)) {
+            throw new IllegalArgumentException("not a file name: " + swappedLink);
+        }
+        this.swappedLink = swappedLink;
+    }
+
+    public String getSwappedLink() {
+        return swappedLink;
+    }
+
+    /**
+     * @return what changes are watched for - either the file itself or the swapped link next to it
+     */
+    private Path watched() {
+        String link = swappedLink;
+        return link == null ? path : path.resolveSibling(link);
+    }
+
+    /**
+     * @return the current target of the swapped link, or null if it does not exist
+     */
+    private Path readGeneration() {
+        try {
+            return Files.readSymbolicLink(path.resolveSibling(swappedLink));
+        } catch (NoSuchFileException | NotLinkException e) {
+            return null;
+        } catch (IOException e) {
+            log.error("while resolving " + path.resolveSibling(swappedLink), e);
+            return null;
+        }
+    }
+
     @Override
     protected BinaryPollRunnable createRunnable() {
         return new PollRunnable();
     }
 
+    @Override
+    protected void startPollThread() {
+        if (swappedLink != null) {
+            generation = readGeneration(); //only swaps from now on are changes
+        }
+        DirectoryWatcher watcher = this.watcher;
+        if (watcher == null) {
+            super.startPollThread();
+            return;
+        }
+        try {
+            watch = watcher.watch(watched(), new PollRunnable());
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to watch " + path, e);
+        }
+        if (swappedLink != null) {
+            watch.recheck(); //in case it was swapped before the watch was registered
+        }
+    }
+
+    @Override
+    protected void stopPollThread() {
+        if (watch == null) {
+            super.stopPollThread();
+            return;
+        }
+        watch.close();
+        watch = null;
+    }
+
     @Override
     public byte[] read() throws IOException {
-        try (InputStream is = Files.newInputStream(path, StandardOpenOption.READ)) {
-            return IOUtil.read(is);
+        try {
+            return IOUtil.read(path);
         } catch (NoSuchFileException e) {
             return null;
         }
     }
 
+    @Override
+    public Versioned<byte[]> readVersioned() throws IOException {
+        try {
+            byte[] contents = IOUtil.read(path);
+            //mtime read after the contents, so if we race a modification we get a version that matches neither
+            return new Versioned<>(contents, version(contents, Files.getLastModifiedTime(path).toMillis()));
+        } catch (NoSuchFileException e) {
+            return new Versioned<>(null, 0);
+        }
+    }
+
     @Override
     public void write(byte[] payload) throws IOException {
+        try (WriteLock ignored = new WriteLock(false)) {
+            doWrite(payload);
+        }
+    }
+
+    @Override
+    public long write(byte[] payload, long expectedVersion) throws IOException {
+        try (WriteLock ignored = new WriteLock(true)) {
+            long currentVersion = readVersioned().getVersion();
+            if (currentVersion != expectedVersion) {
+                throw new VersionConflictException(toString(), expectedVersion, currentVersion);
+            }
+            doWrite(payload);
+            return payload == null ? 0 : readVersioned().getVersion();
+        }
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return true;
+    }
+
+    private void doWrite(byte[] payload) throws IOException {
         if (payload == null) {
             try {
                 Files.delete(path);
@@ -84,7 +255,93 @@ public class PathStore extends AbstractBinaryStore {
         return "PathStore for " + path;
     }
 
-    private class PollRunnable extends AbstractBinaryStore.BinaryPollRunnable {
+    /**
+     * @return a (positive) version for the given contents and modification time
+     */
+    private static long version(byte[] contents, long mtimeMillis) {
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length);
+        long version = ((mtimeMillis << 32) ^ (mtimeMillis >>> 32) ^ crc.getValue()) & Long.MAX_VALUE;
+        return version == 0 ? 1 : version; //0 means no file
+    }
+
+    /**
+     * exclusive access to the file for writing within this jvm and, for conditional writes, across processes as well.
+     * the lock file is deleted by every holder on the way out, so a process that got its lock on a file that has been
+     * deleted (and maybe recreated by someone else) in the meantime has to start over
+     */
+    private class WriteLock implements AutoCloseable {
+        private final ReentrantLock localLock;
+        private final Path lockFile;
+        private final FileChannel channel; //null if not locked across processes
+        private final FileLock fileLock;
+
+        private WriteLock(boolean acrossProcesses) throws IOException {
+            lockFile = path.resolveSibling("." + path.getFileName() + ".lock");
+            localLock = LOCAL_LOCKS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), p -> new ReentrantLock());
+            localLock.lock();
+            if (!acrossProcesses) {
+                channel = null;
+                fileLock = null;
+                return;
+            }
+            try {
+                while (true) {
+                    Object before = identity(lockFile);
+                    FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    try {
+                        Object opened = identity(lockFile);
+                        FileLock fileLock = channel.lock();
+                        //the path led to the same file before and after opening it (so that is the file we opened),
+                        //and still does now that we hold the lock
+                        if (before != null && before.equals(opened) && opened.equals(identity(lockFile))) {
+                            this.channel = channel;
+                            this.fileLock = fileLock;
+                            return;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        channel.close();
+                        throw e;
+                    }
+                    channel.close(); //just created, or deleted by the previous holder while we were waiting. again
+                }
+            } catch (IOException | RuntimeException e) {
+                localLock.unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (channel != null) {
+                    try {
+                        Files.deleteIfExists(lockFile); //while still holding it, see above
+                    } finally {
+                        fileLock.release();
+                        channel.close();
+                    }
+                }
+            } finally {
+                localLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return something that tells apart different files that were at the given path, or null if it does not exist
+     */
+    private static Object identity(Path file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            Object key = attributes.fileKey(); //null where not supported, creation time alone has to do there
+            return Arrays.asList(key, attributes.creationTime());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private class PollRunnable extends AbstractBinaryStore.BinaryPollRunnable implements DirectoryWatcher.FileListener {
 
         @Override
         public void run() {
@@ -95,47 +352,54 @@ public class PathStore extends AbstractBinaryStore {
             };
             boolean officiallyStarted = false;
             Path folder = path.getParent();
+            Path watched = watched();
             while (!shouldDie()) {
                 try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
                     WatchKey watchKey = folder.register(watchService, kinds);
+                    if (!officiallyStarted) {
+                        markWatching();
+                        officiallyStarted = true;
+                    }
+                    if (swappedLink != null) {
+                        fireIfSwapped(); //in case it was swapped before the watch was registered
+                    }
                     while (!shouldDie()) {
-                        if (!officiallyStarted) {
-                            markWatching();
-                            officiallyStarted = true;
+                        //wake up every once in a while, to report the watch is still alive
+                        WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                        markPolled();
+                        if (key == null) {
+                            continue;
                         }
-                        WatchKey key = watchService.take();
-                        boolean matched = false;
+                        Set<WatchEvent.Kind<?>> seen = new HashSet<>();
                         List<WatchEvent<?>> events = key.pollEvents();
                         for (WatchEvent<?> event : events) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                seen.add(event.kind()); //dont know what happened to the file
+                                continue;
+                            }
                             Path changed = (Path) event.context();
                             Path fullChanged = folder.resolve(changed);
-                            if (fullChanged.equals(path)) {
-                                matched = true;
-                                break; //dont bother with other events
+                            if (fullChanged.equals(watched)) {
+                                seen.add(event.kind());
                             }
                         }
-                        if (matched) {
-                            //to avoid multiple firings for non-atomic modifications we wait a while.
-                            FSUtil.waitUntilQuiet(path);
+                        if (!seen.isEmpty()) {
+                            if (swappedLink != null) {
+                                fireIfSwapped();
+                                if (!watchKey.reset()) {
+                                    break;
+                                }
+                                continue;
+                            }
+                            if (seen.remove(StandardWatchEventKinds.OVERFLOW)) {
+                                seen.clear();
+                            }
+                            //to avoid multiple firings for non-atomic modifications we wait for the file to settle.
+                            quiescence.awaitQuiet(path, seen);
                             //then purge everything that happened while we were waiting
                             watchKey.pollEvents();
                             //and only then fire (using what should hopefully be a stable file state)
-                            byte[] contents = null;
-                            boolean error;
-                            try (InputStream is = Files.newInputStream(path, StandardOpenOption.READ)) {
-                                contents = IOUtil.read(is);
-                                error = false;
-                            } catch (NoSuchFileException e) {
-                                contents = null;
-                                error = false; //not an error
-                            } catch (IOException e) {
-                                error = true;
-                                log.error("while reading modified " + path, e);
-                            }
-
-                            if (!error) {
-                                fire(contents);
-                            }
+                            readAndFire();
                         }
                         if (!watchKey.reset()) {
                             break;
@@ -159,5 +423,55 @@ public class PathStore extends AbstractBinaryStore {
                 }
             }
         }
+
+        /**
+         * invoked by a shared watcher, instead of running as a poll thread
+         */
+        @Override
+        public void fileChanged(Path file, Set<WatchEvent.Kind<?>> kinds) {
+            if (swappedLink != null) {
+                fireIfSwapped();
+                return;
+            }
+            //changes made while we wait are coalesced by the watcher into a single follow up call
+            try {
+                quiescence.awaitQuiet(path, kinds);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            readAndFire();
+        }
+
+        @Override
+        public void watcherPolled() {
+            markPolled();
+        }
+
+        /**
+         * a swap is atomic, so there is nothing to wait for - but a single swap may be reported by several events
+         */
+        private void fireIfSwapped() {
+            Path current = readGeneration();
+            if (Objects.equals(current, generation)) {
+                return;
+            }
+            log.debug("{} now points to {} (was {})", swappedLink, current, generation);
+            generation = current;
+            readAndFire();
+        }
+
+        private void readAndFire() {
+            Versioned<byte[]> contents = null;
+            try {
+                contents = readVersioned(); //missing file is not an error
+            } catch (IOException e) {
+                log.error("while reading modified " + path, e);
+            }
+
+            if (contents != null) {
+                fire(contents.getValue(), contents.getVersion());
+            }
+        }
     }
 }
@@ -0,0 +1,51 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.Set;
+
+/**
+ * Created by Radai Rosenblatt
+ * decides when a file that has been reported as changed is safe to read - that is, when whoever is writing it
+ * is (hopefully) done. see {@link PathStore#setQuiescence(QuiescenceStrategy)}
+ */
+public interface QuiescenceStrategy {
+
+    /**
+     * waits for 5 consecutive 10ms polls to see the same modification time (see {@link FSUtil#waitUntilQuiet(Path)}).
+     * conservative, but adds at least 50ms to every change
+     */
+    QuiescenceStrategy FIXED = (file, kinds) -> FSUtil.waitUntilQuiet(file);
+
+    /**
+     * does not wait at all. only suitable if all writers replace the file atomically
+     */
+    QuiescenceStrategy NONE = (file, kinds) -> {};
+
+    /**
+     * blocks until the file is deemed stable
+     * @param file the file that changed (it may no longer exist)
+     * @param kinds kinds of watch events seen for the file since it was last read
+     *              ({@link java.nio.file.StandardWatchEventKinds#ENTRY_CREATE ENTRY_CREATE},
+     *              {@link java.nio.file.StandardWatchEventKinds#ENTRY_MODIFY ENTRY_MODIFY} and/or
+     *              {@link java.nio.file.StandardWatchEventKinds#ENTRY_DELETE ENTRY_DELETE}), or empty if not known
+     */
+    void awaitQuiet(Path file, Set<WatchEvent.Kind<?>> kinds) throws InterruptedException;
+}
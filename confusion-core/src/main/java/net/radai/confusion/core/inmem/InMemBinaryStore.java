@@ -17,9 +17,12 @@
 
 package net.radai.confusion.core.inmem;
 
+import net.radai.confusion.core.api.VersionConflictException;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.store.AbstractBinaryStore;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -28,6 +31,7 @@ import java.util.Arrays;
 public class InMemBinaryStore extends AbstractBinaryStore {
     private final Object lock = new Object();
     private volatile byte[] payload;
+    private long version = 0; //guarded by lock
 
     @Override
     protected BinaryPollRunnable createRunnable() {
@@ -36,6 +40,7 @@ public class InMemBinaryStore extends AbstractBinaryStore {
             public void run() {
                 byte[] lastTime = payload;
                 byte[] sample;
+                long sampleVersion;
                 markWatching();
                 while (!shouldDie()) {
                     try {
@@ -43,9 +48,10 @@ public class InMemBinaryStore extends AbstractBinaryStore {
                             while ((sample = payload) == lastTime) {
                                 lock.wait();
                             }
+                            sampleVersion = version;
                         }
                         lastTime = sample;
-                        fire(copy(sample));
+                        fire(view(sample), sampleVersion); //listeners that want an array of their own copy it
                     } catch (Exception e) {
                         if (!shouldDie()) {
                             e.printStackTrace(System.err);
@@ -66,14 +72,74 @@ public class InMemBinaryStore extends AbstractBinaryStore {
         byte[] copy = copy(payload);
         synchronized (lock) {
             this.payload = copy;
+            version++;
             lock.notifyAll();
         }
     }
 
+    @Override
+    public Versioned<byte[]> readVersioned() throws IOException {
+        synchronized (lock) {
+            return new Versioned<>(copy(payload), version);
+        }
+    }
+
+    /**
+     * a read-only view of the payload held, rather than a copy of it. the payload held is never modified
+     */
+    @Override
+    public Versioned<ByteBuffer> readBuffer() throws IOException {
+        synchronized (lock) {
+            return new Versioned<>(view(payload), version);
+        }
+    }
+
+    @Override
+    public long write(byte[] payload, long expectedVersion) throws IOException {
+        byte[] copy = copy(payload);
+        synchronized (lock) {
+            if (version != expectedVersion) {
+                throw new VersionConflictException(toString(), expectedVersion, version);
+            }
+            this.payload = copy;
+            version++;
+            lock.notifyAll();
+            return version;
+        }
+    }
+
+    /**
+     * replaces the payload with the given instance as is (no defensive copy), as if changed behind the store's back.
+     * for tests
+     */
+    void writeUnderlying(byte[] payload) {
+        synchronized (lock) {
+            this.payload = payload;
+            version++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the payload instance currently held (no defensive copy). for tests
+     */
+    byte[] readUnderlying() {
+        return payload;
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return true;
+    }
+
     private static byte[] copy(byte[] payload) { //returns a different instance ON PURPOSE
         return payload == null ? null : Arrays.copyOf(payload, payload.length);
     }
 
+    private static ByteBuffer view(byte[] payload) {
+        return payload == null ? null : ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
     @Override
     public String toString() {
         return "in-mem binary";
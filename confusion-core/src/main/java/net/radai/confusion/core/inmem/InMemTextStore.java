@@ -17,6 +17,8 @@
 
 package net.radai.confusion.core.inmem;
 
+import net.radai.confusion.core.api.VersionConflictException;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.store.AbstractTextStore;
 
 import java.io.IOException;
@@ -27,6 +29,7 @@ import java.io.IOException;
 public class InMemTextStore extends AbstractTextStore {
     private final Object lock = new Object();
     private volatile String payload;
+    private long version = 0; //guarded by lock
 
     @Override
     protected TextPollRunnable createRunnable() {
@@ -35,6 +38,7 @@ public class InMemTextStore extends AbstractTextStore {
             public void run() {
                 String lastTime = payload;
                 String sample;
+                long sampleVersion;
                 markWatching();
                 while (!shouldDie()) {
                     try {
@@ -43,9 +47,10 @@ public class InMemTextStore extends AbstractTextStore {
                             while ((sample = payload) == lastTime) { //we change for exact same instance, not equals
                                 lock.wait();
                             }
+                            sampleVersion = version;
                         }
                         lastTime = sample;
-                        fire(copy(sample));
+                        fire(copy(sample), sampleVersion);
                     } catch (Exception e) {
                         if (!shouldDie()) {
                             e.printStackTrace(System.err);
@@ -66,10 +71,56 @@ public class InMemTextStore extends AbstractTextStore {
         String copy = copy(payload);
         synchronized (lock) {
             this.payload = copy;
+            version++;
             lock.notifyAll();
         }
     }
 
+    @Override
+    public Versioned<String> readVersioned() throws IOException {
+        synchronized (lock) {
+            return new Versioned<>(copy(payload), version);
+        }
+    }
+
+    @Override
+    public long write(String payload, long expectedVersion) throws IOException {
+        String copy = copy(payload);
+        synchronized (lock) {
+            if (version != expectedVersion) {
+                throw new VersionConflictException(toString(), expectedVersion, version);
+            }
+            this.payload = copy;
+            version++;
+            lock.notifyAll();
+            return version;
+        }
+    }
+
+    /**
+     * replaces the payload with the given instance as is (no defensive copy), as if changed behind the store's back.
+     * for tests
+     */
+    void writeUnderlying(String payload) {
+        synchronized (lock) {
+            this.payload = payload;
+            version++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the payload instance currently held (no defensive copy). for tests
+     */
+    String readUnderlying() {
+        return payload;
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return true;
+    }
+
     private static String copy(String payload) { //returns a different instance ON PURPOSE
         //noinspection RedundantStringConstructorCall
         return payload == null ? null : new String(payload);
@@ -23,22 +23,83 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.validation.Schema;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Created by Radai Rosenblatt
  */
 public class JaxbCodec implements TextCodec {
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /**
+     * contexts are expensive to build (reflection over the whole model) but thread safe, so we keep
+     * one per bean class. a ClassValue does not pin the bean class (or its class loader) in memory.
+     */
+    private static final ClassValue<JAXBContext> CONTEXTS = new ClassValue<JAXBContext>() {
+        @Override
+        protected JAXBContext computeValue(Class<?> type) {
+            try {
+                return JAXBContext.newInstance(type);
+            } catch (JAXBException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    };
+
+    private final Schema schema;
+    private final int poolSize;
+    //(un)marshallers are not thread safe, so we pool them per class. per codec, since they carry our schema
+    private final ClassValue<Pool> pools = new ClassValue<Pool>() {
+        @Override
+        protected Pool computeValue(Class<?> type) {
+            return new Pool(CONTEXTS.get(type), schema, poolSize);
+        }
+    };
+
+    public JaxbCodec() {
+        this(null);
+    }
+
+    /**
+     * @param schema precompiled schema to validate parsed documents against (or null for none).
+     *               Schema instances are thread safe and may be shared between codecs.
+     */
+    public JaxbCodec(Schema schema) {
+        this(schema, DEFAULT_POOL_SIZE);
+    }
+
+    public JaxbCodec(Schema schema, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("pool size must be positive: " + poolSize);
+        }
+        this.schema = schema;
+        this.poolSize = poolSize;
+    }
+
     @Override
     public <T> T parse(Class<T> beanClass, String from) {
+        return parseReader(beanClass, from == null ? null : new StringReader(from));
+    }
+
+    /**
+     * unmarshals straight off the reader, so a payload decoded from binary is never held as a String
+     */
+    @Override
+    public <T> T parseReader(Class<T> beanClass, Reader from) {
         if (from == null) {
             return null;
         }
         try {
-            JAXBContext context = JAXBContext.newInstance(beanClass);
-            Unmarshaller unmarshaller = context.createUnmarshaller();
-            Object unmarshalled = unmarshaller.unmarshal(new StringReader(from));
+            Pool pool = pools.get(beanClass);
+            Unmarshaller unmarshaller = pool.borrowUnmarshaller();
+            Object unmarshalled = unmarshaller.unmarshal(from);
+            //only return on success - a failed unmarshaller may be left in an inconsistent state
+            pool.returnUnmarshaller(unmarshaller);
             //noinspection unchecked
             return (T) unmarshalled;
         } catch (JAXBException e) {
@@ -52,14 +113,54 @@ public class JaxbCodec implements TextCodec {
             return null;
         }
         try {
-            JAXBContext context = JAXBContext.newInstance(beanInstance.getClass());
-            Marshaller marshaller = context.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            Pool pool = pools.get(beanInstance.getClass());
+            Marshaller marshaller = pool.borrowMarshaller();
             StringWriter writer = new StringWriter();
             marshaller.marshal(beanInstance, writer);
+            pool.returnMarshaller(marshaller);
             return writer.toString();
         } catch (JAXBException e) {
             throw new IllegalArgumentException(e);
         }
     }
+
+    private static class Pool {
+        private final JAXBContext context;
+        private final Schema schema;
+        private final BlockingQueue<Unmarshaller> unmarshallers;
+        private final BlockingQueue<Marshaller> marshallers;
+
+        private Pool(JAXBContext context, Schema schema, int size) {
+            this.context = context;
+            this.schema = schema;
+            this.unmarshallers = new ArrayBlockingQueue<>(size);
+            this.marshallers = new ArrayBlockingQueue<>(size);
+        }
+
+        private Unmarshaller borrowUnmarshaller() throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            if (unmarshaller == null) {
+                unmarshaller = context.createUnmarshaller();
+                unmarshaller.setSchema(schema);
+            }
+            return unmarshaller;
+        }
+
+        private void returnUnmarshaller(Unmarshaller unmarshaller) {
+            unmarshallers.offer(unmarshaller); //if the pool is full this one is discarded
+        }
+
+        private Marshaller borrowMarshaller() throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+            if (marshaller == null) {
+                marshaller = context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            }
+            return marshaller;
+        }
+
+        private void returnMarshaller(Marshaller marshaller) {
+            marshallers.offer(marshaller);
+        }
+    }
 }
@@ -0,0 +1,47 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.metrics;
+
+import net.radai.confusion.core.util.Histogram;
+
+/**
+ * Created by Radai Rosenblatt
+ * jmx view of {@link SimpleConfigurationMetrics}. all times are in nanoseconds
+ */
+public interface ConfigurationMetricsMXBean {
+    Histogram.Summary getReadTimes();
+    Histogram.Summary getAdaptTimes();
+    Histogram.Summary getDecodeTimes();
+    Histogram.Summary getValidateTimes();
+    Histogram.Summary getDispatchTimes();
+    Histogram.Summary getListenerTimes();
+    long getAcceptedChanges();
+    long getRejectedChanges();
+    long getDeduplicatedChanges();
+
+    /**
+     * @return number of listeners found to be slow
+     */
+    long getSlowListeners();
+    Histogram.Summary getPayloadSizes();
+
+    /**
+     * @return millis since the store last successfully checked for changes, or -1 if it never has
+     */
+    long getMillisSinceLastPoll();
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.metrics;
+
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+import net.radai.confusion.core.util.Histogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by Radai Rosenblatt
+ * dependency-free metrics, kept in memory as histograms and counters and optionally exposed over jmx.
+ */
+public class SimpleConfigurationMetrics implements ConfigurationMetrics, ConfigurationMetricsMXBean {
+    public static final String JMX_DOMAIN = "net.radai.confusion";
+
+    private final Map<Stage, Histogram> times = new EnumMap<>(Stage.class);
+    private final Map<Change, LongAdder> changes = new EnumMap<>(Change.class);
+    private final Histogram payloadSizes = new Histogram();
+    private final LongAdder slowListeners = new LongAdder();
+    private volatile long lastPollMillis = -1;
+    private ObjectName objectName = null; //guarded by this
+
+    public SimpleConfigurationMetrics() {
+        //fully populated up front, so the maps are never modified afterwards
+        for (Stage stage : Stage.values()) {
+            times.put(stage, new Histogram());
+        }
+        for (Change change : Change.values()) {
+            changes.put(change, new LongAdder());
+        }
+    }
+
+    @Override
+    public void recordTime(Stage stage, long nanos) {
+        times.get(stage).record(nanos);
+    }
+
+    @Override
+    public void recordChange(Change change) {
+        changes.get(change).increment();
+    }
+
+    @Override
+    public void recordPayloadSize(long size) {
+        payloadSizes.record(size);
+    }
+
+    @Override
+    public void recordPoll() {
+        lastPollMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public void recordSlowListener(String listener, long nanos) {
+        slowListeners.increment();
+    }
+
+    public Histogram getTimes(Stage stage) {
+        return times.get(stage);
+    }
+
+    public long getChanges(Change change) {
+        return changes.get(change).sum();
+    }
+
+    @Override
+    public Histogram.Summary getReadTimes() {
+        return times.get(Stage.READ).getSummary();
+    }
+
+    @Override
+    public Histogram.Summary getAdaptTimes() {
+        return times.get(Stage.ADAPT).getSummary();
+    }
+
+    @Override
+    public Histogram.Summary getDecodeTimes() {
+        return times.get(Stage.DECODE).getSummary();
+    }
+
+    @Override
+    public Histogram.Summary getValidateTimes() {
+        return times.get(Stage.VALIDATE).getSummary();
+    }
+
+    @Override
+    public Histogram.Summary getDispatchTimes() {
+        return times.get(Stage.DISPATCH).getSummary();
+    }
+
+    @Override
+    public Histogram.Summary getListenerTimes() {
+        return times.get(Stage.LISTENER).getSummary();
+    }
+
+    @Override
+    public long getAcceptedChanges() {
+        return getChanges(Change.ACCEPTED);
+    }
+
+    @Override
+    public long getRejectedChanges() {
+        return getChanges(Change.REJECTED);
+    }
+
+    @Override
+    public long getDeduplicatedChanges() {
+        return getChanges(Change.DEDUPLICATED);
+    }
+
+    @Override
+    public long getSlowListeners() {
+        return slowListeners.sum();
+    }
+
+    @Override
+    public Histogram.Summary getPayloadSizes() {
+        return payloadSizes.getSummary();
+    }
+
+    @Override
+    public long getMillisSinceLastPoll() {
+        long last = lastPollMillis;
+        return last < 0 ? -1 : Math.max(0, System.currentTimeMillis() - last);
+    }
+
+    /**
+     * registers these metrics with the platform mbean server
+     * @param name name to register under (typically identifies the configuration)
+     * @return the object name registered under
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException();
+        }
+        if (objectName != null) {
+            throw new IllegalStateException("already registered as " + objectName);
+        }
+        try {
+            ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=ConfigurationMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            objectName = candidate;
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("unable to register metrics as " + name, e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("unable to unregister " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "metrics " + times + " " + changes;
+    }
+}
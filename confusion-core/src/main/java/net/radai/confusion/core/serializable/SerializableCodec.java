@@ -28,10 +28,15 @@ public class SerializableCodec implements BinaryCodec {
 
     @Override
     public <T> T parse(Class<T> beanClass, byte[] from) {
+        return parseStream(beanClass, from == null ? null : new ByteArrayInputStream(from));
+    }
+
+    @Override
+    public <T> T parseStream(Class<T> beanClass, InputStream from) {
         if (from == null) {
             return null;
         }
-        try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(from))) {
+        try (ObjectInputStream is = new ObjectInputStream(from)) {
             //noinspection unchecked
             return (T) is.readObject();
         } catch (ClassNotFoundException | IOException e) {
@@ -0,0 +1,59 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.spi;
+
+/**
+ * Created by Radai Rosenblatt
+ * a value along with the (store-specific) version it was read at. versions are opaque - they can only be compared
+ * for equality - and stores that track them report a key that has never been written as version 0.
+ */
+public class Versioned<T> {
+    /**
+     * version reported by stores that do not track versions
+     */
+    public static final long UNKNOWN = -1L;
+
+    private final T value;
+    private final long version;
+
+    public Versioned(T value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public static <T> Versioned<T> unversioned(T value) {
+        return new Versioned<>(value, UNKNOWN);
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isVersioned() {
+        return version != UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return value + "@" + (version == UNKNOWN ? "?" : String.valueOf(version));
+    }
+}
@@ -18,6 +18,10 @@
 package net.radai.confusion.core.spi.codec;
 
 import net.radai.confusion.core.spi.PayloadType;
+import net.radai.confusion.core.util.IOUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Created by Radai Rosenblatt
@@ -30,5 +34,18 @@ public interface BinaryCodec extends Codec {
     }
 
     <T> T parse(Class<T> beanClass, byte[] from);
+
+    /**
+     * parses straight off a stream (over a payload already in memory, see {@link IOUtil#stream(java.nio.ByteBuffer)}).
+     * by default reads the stream into an array and parses that
+     * @param from stream to parse, or null
+     */
+    default <T> T parseStream(Class<T> beanClass, InputStream from) {
+        try {
+            return parse(beanClass, from == null ? null : IOUtil.read(from));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
     <T> byte[] serialize(T beanInstance);
 }
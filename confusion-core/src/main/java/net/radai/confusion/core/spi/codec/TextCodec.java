@@ -18,6 +18,10 @@
 package net.radai.confusion.core.spi.codec;
 
 import net.radai.confusion.core.spi.PayloadType;
+import net.radai.confusion.core.util.IOUtil;
+
+import java.io.IOException;
+import java.io.Reader;
 
 /**
  * Created by Radai Rosenblatt
@@ -30,5 +34,18 @@ public interface TextCodec extends Codec {
     }
 
     <T> T parse(Class<T> beanClass, String from);
+
+    /**
+     * parses straight off a reader (decoding a binary payload, see {@link net.radai.confusion.core.spi.store.adapter.Adapter#toReader}).
+     * by default reads the whole text into a String and parses that
+     * @param from reader to parse, or null
+     */
+    default <T> T parseReader(Class<T> beanClass, Reader from) {
+        try {
+            return parse(beanClass, from == null ? null : IOUtil.read(from));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
     <T> String serialize(T beanInstance);
 }
@@ -0,0 +1,134 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.spi.metrics;
+
+/**
+ * Created by Radai Rosenblatt
+ * instrumentation surface for the configuration reload pipeline. a single instance is meant to be shared
+ * by a service, its source and its store (see {@link net.radai.confusion.core.SimpleConfigurationService#setMetrics(ConfigurationMetrics)}).
+ * implementations are called on the hot path (from multiple threads) and must be cheap and thread safe.
+ */
+public interface ConfigurationMetrics {
+
+    ConfigurationMetrics NOP = new ConfigurationMetrics() {
+        @Override
+        public void recordTime(Stage stage, long nanos) {
+        }
+
+        @Override
+        public void recordChange(Change change) {
+        }
+
+        @Override
+        public void recordPayloadSize(long size) {
+        }
+
+        @Override
+        public void recordPoll() {
+        }
+
+        @Override
+        public Span begin(Stage stage) {
+            return Span.NOP;
+        }
+
+        @Override
+        public String toString() {
+            return "nop metrics";
+        }
+    };
+
+    enum Stage {
+        /**
+         * explicitly reading the store (at startup, for example)
+         */
+        READ,
+        /**
+         * converting between text and binary payloads (see {@link net.radai.confusion.core.spi.store.adapter.Adapter})
+         */
+        ADAPT,
+        /**
+         * parsing a payload using a codec
+         */
+        DECODE,
+        VALIDATE,
+        /**
+         * notifying listeners (or handing events off to the listener executor, if there is one)
+         */
+        DISPATCH,
+        /**
+         * a single listener callback
+         */
+        LISTENER
+    }
+
+    enum Change {
+        ACCEPTED,
+        REJECTED,
+        /**
+         * dropped for being identical to (or, if so configured, equal to) the current configuration
+         */
+        DEDUPLICATED
+    }
+
+    /**
+     * a stage in progress, see {@link #begin(Stage)}
+     */
+    interface Span {
+        Span NOP = (payloadSize, version) -> {};
+
+        /**
+         * @param payloadSize size of the payload involved, or -1 if not known
+         * @param version version of the configuration involved, or {@link net.radai.confusion.core.spi.Versioned#UNKNOWN}
+         */
+        void end(long payloadSize, long version);
+    }
+
+    void recordTime(Stage stage, long nanos);
+
+    /**
+     * starts timing a stage. by default the elapsed time is reported to {@link #recordTime(Stage, long)}
+     * once the span is ended. implementations that trace individual operations (profiler events, for example)
+     * can override this to bracket the work itself.
+     */
+    default Span begin(Stage stage) {
+        long start = System.nanoTime();
+        return (payloadSize, version) -> recordTime(stage, System.nanoTime() - start);
+    }
+
+    void recordChange(Change change);
+
+    /**
+     * @param size size of a raw payload read from the store (bytes for binary payloads, chars for text)
+     */
+    void recordPayloadSize(long size);
+
+    /**
+     * records that the store has successfully checked for changes (whether or not it found any)
+     */
+    void recordPoll();
+
+    /**
+     * records that a listener has been found to keep exceeding its time budget
+     * (see {@link net.radai.confusion.core.SimpleConfigurationService#setListenerBudget})
+     * @param listener description of the listener
+     * @param nanos how long the callback that tipped it over took
+     */
+    default void recordSlowListener(String listener, long nanos) {
+    }
+}
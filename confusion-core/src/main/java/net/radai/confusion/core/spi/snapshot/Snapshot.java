@@ -0,0 +1,43 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.spi.snapshot;
+
+import net.radai.confusion.core.spi.Versioned;
+
+import java.io.IOException;
+
+/**
+ * Created by Radai Rosenblatt
+ * local copy of the last known good configuration, used to start up without waiting on (or even being able
+ * to reach) the actual source.
+ */
+public interface Snapshot<T> {
+
+    /**
+     * @return the last saved configuration along with the version it was read from the source at,
+     * or null if there isn't one (or it cannot be trusted)
+     */
+    Versioned<T> load() throws IOException;
+
+    /**
+     * replaces the snapshot. must be atomic - a crash mid-save must leave either the old or the new snapshot behind.
+     * @param conf configuration to save. null means there is nothing worth saving (and removes any existing snapshot)
+     * @param version version of conf in the source
+     */
+    void save(T conf, long version) throws IOException;
+}
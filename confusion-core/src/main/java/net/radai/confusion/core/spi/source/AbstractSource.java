@@ -17,6 +17,9 @@
 
 package net.radai.confusion.core.spi.source;
 
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+import net.radai.confusion.core.util.Fingerprint;
 import net.radai.confusion.core.util.Listeners;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -27,6 +30,10 @@ import org.apache.logging.log4j.Logger;
 public abstract class AbstractSource<T> implements Source<T> {
     private final Logger log = LogManager.getLogger(getClass());
     private final Listeners<SourceListener<T>> listeners = new Listeners<>();
+    private volatile boolean deduplicate = false;
+    private volatile Candidate<T> candidate = null; //latest payload read or reported, and what it decoded to
+    private volatile Fingerprint accepted = null; //of the latest raw payload the listener accepted
+    private volatile ConfigurationMetrics metrics = ConfigurationMetrics.NOP;
 
     @Override
     public void register(SourceListener<T> newListener) {
@@ -38,13 +45,89 @@ public abstract class AbstractSource<T> implements Source<T> {
         listeners.unregister(existingListener);
     }
 
+    @Override
+    public void setMetrics(ConfigurationMetrics metrics) {
+        this.metrics = metrics == null ? ConfigurationMetrics.NOP : metrics;
+    }
+
+    protected ConfigurationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param deduplicate true to drop changes whose raw payload is identical to the last one accepted (see
+     *                    {@link #accepted(Object)}) before they are decoded. off by default, since it requires the
+     *                    listener to report what it accepted, and a listener that does not never gets anything dropped
+     */
+    @Override
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        this.candidate = null;
+        this.accepted = null;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * @param fingerprint of a raw payload, or null if not deduplicating
+     * @return true if identical to the last payload accepted (and so should not be reported)
+     */
+    protected boolean isUnchanged(Fingerprint fingerprint) {
+        return fingerprint != null && fingerprint.matches(accepted);
+    }
+
+    /**
+     * records the given payload as the latest one read or reported, so it can be matched up with {@link #accepted(Object)}
+     * @return decoded
+     */
+    protected T remember(Fingerprint fingerprint, T decoded) {
+        if (fingerprint != null) {
+            candidate = new Candidate<>(fingerprint, decoded);
+        }
+        return decoded;
+    }
+
+    @Override
+    public void accepted(T value) {
+        Candidate<T> latest = candidate;
+        if (latest != null && latest.decoded == value) {
+            accepted = latest.fingerprint;
+        }
+    }
+
+    protected void fireVersionChanged(long version) {
+        listeners.forEach(listener -> {
+            try {
+                listener.versionChanged(version);
+            } catch (Exception e) {
+                log.error("caught while firing version change event", e);
+            }
+        });
+    }
+
     protected void fire(T newConf) {
+        fire(newConf, Versioned.UNKNOWN);
+    }
+
+    protected void fire(T newConf, long version) {
         listeners.forEach(listener -> {
             try {
-                listener.sourceChanged(newConf);
+                listener.sourceChanged(newConf, version);
             } catch (Exception e) {
                 log.error("caught while firing change event", e);
             }
         });
     }
+
+    private static class Candidate<T> {
+        private final Fingerprint fingerprint;
+        private final T decoded;
+
+        private Candidate(Fingerprint fingerprint, T decoded) {
+            this.fingerprint = fingerprint;
+            this.decoded = decoded;
+        }
+    }
 }
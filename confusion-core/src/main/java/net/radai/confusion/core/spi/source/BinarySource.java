@@ -17,11 +17,17 @@
 
 package net.radai.confusion.core.spi.source;
 
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.codec.BinaryCodec;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
 import net.radai.confusion.core.spi.store.BinaryStore;
 import net.radai.confusion.core.spi.store.BinaryStoreListener;
+import net.radai.confusion.core.util.Fingerprint;
+
+import net.radai.confusion.core.util.IOUtil;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Radai Rosenblatt
@@ -43,8 +49,16 @@ public class BinarySource<T> extends AbstractSource<T> implements BinaryStoreLis
 
     @Override
     public T read() throws IOException {
-        byte[] blob = store.read();
-        return codec.parse(beanClass, blob);
+        ConfigurationMetrics.Span span = getMetrics().begin(ConfigurationMetrics.Stage.READ);
+        byte[] blob = null;
+        try {
+            blob = store.read();
+        } finally {
+            span.end(sizeOf(blob), Versioned.UNKNOWN);
+        }
+        ByteBuffer payload = blob == null ? null : ByteBuffer.wrap(blob);
+        recordSize(payload);
+        return remember(fingerprint(payload), decode(payload, Versioned.UNKNOWN));
     }
 
     @Override
@@ -53,6 +67,25 @@ public class BinarySource<T> extends AbstractSource<T> implements BinaryStoreLis
         store.write(serialized);
     }
 
+    @Override
+    public Versioned<T> readVersioned() throws IOException {
+        ConfigurationMetrics.Span span = getMetrics().begin(ConfigurationMetrics.Stage.READ);
+        Versioned<ByteBuffer> raw = null;
+        try {
+            raw = store.readBuffer(); //not copied, if the store keeps it in memory anyway
+        } finally {
+            span.end(raw == null ? -1 : sizeOf(raw.getValue()), raw == null ? Versioned.UNKNOWN : raw.getVersion());
+        }
+        recordSize(raw.getValue());
+        T decoded = remember(fingerprint(raw.getValue()), decode(raw.getValue(), raw.getVersion()));
+        return new Versioned<>(decoded, raw.getVersion());
+    }
+
+    @Override
+    public long write(T payload, long expectedVersion) throws IOException {
+        return store.write(codec.serialize(payload), expectedVersion);
+    }
+
     @Override
     public void start() {
         store.start();
@@ -65,7 +98,65 @@ public class BinarySource<T> extends AbstractSource<T> implements BinaryStoreLis
 
     @Override
     public void sourceChanged(byte[] newContents) {
-        T deserialized = codec.parse(beanClass, newContents);
-        fire(deserialized);
+        sourceChanged(newContents, Versioned.UNKNOWN);
+    }
+
+    @Override
+    public void sourceChanged(byte[] newContents, long version) {
+        sourceChanged(newContents == null ? null : ByteBuffer.wrap(newContents), version);
+    }
+
+    @Override
+    public void sourceChanged(ByteBuffer newContents, long version) {
+        recordSize(newContents);
+        Fingerprint fingerprint = fingerprint(newContents);
+        if (isUnchanged(fingerprint)) {
+            getMetrics().recordChange(ConfigurationMetrics.Change.DEDUPLICATED);
+            if (version != Versioned.UNKNOWN) {
+                fireVersionChanged(version);
+            }
+            return;
+        }
+        T deserialized = remember(fingerprint, decode(newContents, version));
+        fire(deserialized, version);
+    }
+
+    @Override
+    public void setMetrics(ConfigurationMetrics metrics) {
+        super.setMetrics(metrics);
+        store.setMetrics(metrics);
+    }
+
+    private T decode(ByteBuffer payload, long version) {
+        ConfigurationMetrics.Span span = getMetrics().begin(ConfigurationMetrics.Stage.DECODE);
+        try {
+            if (payload == null) {
+                return codec.parse(beanClass, (byte[]) null);
+            }
+            if (payload.hasArray() && payload.arrayOffset() == 0 && payload.position() == 0 && payload.remaining() == payload.array().length) {
+                return codec.parse(beanClass, payload.array()); //a whole array, as most stores read
+            }
+            return codec.parseStream(beanClass, IOUtil.stream(payload));
+        } finally {
+            span.end(sizeOf(payload), version); //failures are timed too
+        }
+    }
+
+    private Fingerprint fingerprint(ByteBuffer payload) {
+        return isDeduplicate() ? Fingerprint.of(payload) : null; //only pay for it if it's used
+    }
+
+    private void recordSize(ByteBuffer payload) {
+        if (payload != null) {
+            getMetrics().recordPayloadSize(payload.remaining());
+        }
+    }
+
+    private static long sizeOf(byte[] payload) {
+        return payload == null ? -1 : payload.length;
+    }
+
+    private static long sizeOf(ByteBuffer payload) {
+        return payload == null ? -1 : payload.remaining();
     }
 }
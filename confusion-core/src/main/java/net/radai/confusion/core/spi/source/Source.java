@@ -17,6 +17,9 @@
 
 package net.radai.confusion.core.spi.source;
 
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+
 import java.io.IOException;
 
 /**
@@ -25,6 +28,49 @@ import java.io.IOException;
 public interface Source<T> {
     T read() throws IOException;
     void write(T payload) throws IOException;
+
+    /**
+     * @return current value along with its version (or {@link Versioned#UNKNOWN} if not supported)
+     */
+    default Versioned<T> readVersioned() throws IOException {
+        return Versioned.unversioned(read());
+    }
+
+    /**
+     * writes only if the underlying store is still at the expected version
+     * @return version of the new value, or {@link Versioned#UNKNOWN} if not known
+     * @throws net.radai.confusion.core.api.VersionConflictException if the store has been modified since
+     * @throws UnsupportedOperationException if the underlying store does not support versions
+     */
+    default long write(T payload, long expectedVersion) throws IOException {
+        throw new UnsupportedOperationException(this + " does not support conditional writes");
+    }
+
+    /**
+     * @param metrics metrics to report decoding (and, through the underlying store, reading) to. ignored by default
+     */
+    default void setMetrics(ConfigurationMetrics metrics) {
+        //nothing by default
+    }
+
+    /**
+     * @param deduplicate true to drop changes whose raw payload is identical to the last one accepted
+     *                    (see {@link #accepted(Object)}) before decoding them. ignored by default
+     */
+    default void setDeduplicate(boolean deduplicate) {
+        //nothing by default
+    }
+
+    /**
+     * tells this source that a value it returned or reported has been accepted (passed validation and is being
+     * served), so that identical payloads can from then on be dropped (see {@link #setDeduplicate(boolean)}).
+     * a rejected value is never reported here, so re-writing the same payload is reported all over again.
+     * @param value value as returned by {@link #read()} or reported to listeners
+     */
+    default void accepted(T value) {
+        //nothing by default
+    }
+
     void start();
     void stop();
     void register(SourceListener<T> newListener);
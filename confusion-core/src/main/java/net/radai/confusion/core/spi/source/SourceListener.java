@@ -22,4 +22,20 @@ package net.radai.confusion.core.spi.source;
  */
 public interface SourceListener<T> {
     void sourceChanged(T newValue) throws Exception;
+
+    /**
+     * @param version version of the new value, or {@link net.radai.confusion.core.spi.Versioned#UNKNOWN}
+     */
+    default void sourceChanged(T newValue, long version) throws Exception {
+        sourceChanged(newValue);
+    }
+
+    /**
+     * called when the source was modified without its value changing (for example when a file is re-written
+     * with identical contents). the value previously reported remains current, but at a new version.
+     * @param version new version
+     */
+    default void versionChanged(long version) throws Exception {
+        //nothing by default
+    }
 }
@@ -25,7 +25,7 @@ import net.radai.confusion.core.spi.store.BinaryStore;
 import net.radai.confusion.core.spi.store.Store;
 import net.radai.confusion.core.spi.store.TextStore;
 import net.radai.confusion.core.spi.store.adapter.Adapter;
-import net.radai.confusion.core.spi.store.adapter.BinaryToTextStore;
+import net.radai.confusion.core.spi.store.adapter.TextToBinaryCodec;
 import net.radai.confusion.core.spi.store.adapter.TextToBinaryStore;
 
 /**
@@ -59,11 +59,12 @@ public class Sources {
                         (BinaryCodec) codec
                 );
             case TEXT:
-                //text codec over a binary store - encode text as utf8
-                return new TextSource<>(
+                //text codec over a binary store - encode text as utf8. the codec decodes payloads as it reads
+                //them, rather than going through a String (as a BinaryToTextStore would)
+                return new BinarySource<>(
                         beanClass,
-                        new BinaryToTextStore((BinaryStore) store, Adapter.UTF8),
-                        (TextCodec) codec
+                        (BinaryStore) store,
+                        new TextToBinaryCodec((TextCodec) codec, Adapter.UTF8)
                 );
             default:
                 throw new IllegalStateException("unhandled " + storeType);
@@ -17,9 +17,12 @@
 
 package net.radai.confusion.core.spi.source;
 
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.codec.TextCodec;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
 import net.radai.confusion.core.spi.store.TextStore;
 import net.radai.confusion.core.spi.store.TextStoreListener;
+import net.radai.confusion.core.util.Fingerprint;
 
 import java.io.IOException;
 
@@ -43,8 +46,15 @@ public class TextSource<T> extends AbstractSource<T> implements TextStoreListene
 
     @Override
     public T read() throws IOException {
-        String string = store.read();
-        return codec.parse(beanClass, string);
+        ConfigurationMetrics.Span span = getMetrics().begin(ConfigurationMetrics.Stage.READ);
+        String string = null;
+        try {
+            string = store.read();
+        } finally {
+            span.end(sizeOf(string), Versioned.UNKNOWN);
+        }
+        recordSize(string);
+        return remember(fingerprint(string), decode(string, Versioned.UNKNOWN));
     }
 
     @Override
@@ -53,6 +63,25 @@ public class TextSource<T> extends AbstractSource<T> implements TextStoreListene
         store.write(serialized);
     }
 
+    @Override
+    public Versioned<T> readVersioned() throws IOException {
+        ConfigurationMetrics.Span span = getMetrics().begin(ConfigurationMetrics.Stage.READ);
+        Versioned<String> raw = null;
+        try {
+            raw = store.readVersioned();
+        } finally {
+            span.end(raw == null ? -1 : sizeOf(raw.getValue()), raw == null ? Versioned.UNKNOWN : raw.getVersion());
+        }
+        recordSize(raw.getValue());
+        T decoded = remember(fingerprint(raw.getValue()), decode(raw.getValue(), raw.getVersion()));
+        return new Versioned<>(decoded, raw.getVersion());
+    }
+
+    @Override
+    public long write(T payload, long expectedVersion) throws IOException {
+        return store.write(codec.serialize(payload), expectedVersion);
+    }
+
     @Override
     public void start() {
         store.start();
@@ -65,7 +94,50 @@ public class TextSource<T> extends AbstractSource<T> implements TextStoreListene
 
     @Override
     public void sourceChanged(String newContents) {
-        T deserialized = codec.parse(beanClass, newContents);
-        fire(deserialized);
+        sourceChanged(newContents, Versioned.UNKNOWN);
+    }
+
+    @Override
+    public void sourceChanged(String newContents, long version) {
+        recordSize(newContents);
+        Fingerprint fingerprint = fingerprint(newContents);
+        if (isUnchanged(fingerprint)) {
+            getMetrics().recordChange(ConfigurationMetrics.Change.DEDUPLICATED);
+            if (version != Versioned.UNKNOWN) {
+                fireVersionChanged(version);
+            }
+            return;
+        }
+        T deserialized = remember(fingerprint, decode(newContents, version));
+        fire(deserialized, version);
+    }
+
+    @Override
+    public void setMetrics(ConfigurationMetrics metrics) {
+        super.setMetrics(metrics);
+        store.setMetrics(metrics);
+    }
+
+    private T decode(String payload, long version) {
+        ConfigurationMetrics.Span span = getMetrics().begin(ConfigurationMetrics.Stage.DECODE);
+        try {
+            return codec.parse(beanClass, payload);
+        } finally {
+            span.end(sizeOf(payload), version); //failures are timed too
+        }
+    }
+
+    private Fingerprint fingerprint(String payload) {
+        return isDeduplicate() ? Fingerprint.of(payload) : null; //only pay for it if it's used
+    }
+
+    private void recordSize(String payload) {
+        if (payload != null) {
+            getMetrics().recordPayloadSize(payload.length());
+        }
+    }
+
+    private static long sizeOf(String payload) {
+        return payload == null ? -1 : payload.length();
     }
 }
@@ -17,10 +17,13 @@
 
 package net.radai.confusion.core.spi.store;
 
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.util.Listeners;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Radai Rosenblatt
  */
@@ -43,9 +46,26 @@ public abstract class AbstractBinaryStore extends AbstractPollingStore implement
 
     protected abstract class BinaryPollRunnable extends StorePollRunnable {
         protected void fire(byte[] newConf) {
+            fire(newConf, Versioned.UNKNOWN);
+        }
+
+        protected void fire(byte[] newConf, long version) {
+            listeners.forEach(listener -> {
+                try {
+                    listener.sourceChanged(newConf, version);
+                } catch (Exception e) {
+                    log.error("caught while firing change event", e);
+                }
+            });
+        }
+
+        /**
+         * @param newConf new contents, as a read-only buffer (see {@link BinaryStoreListener#sourceChanged(ByteBuffer, long)})
+         */
+        protected void fire(ByteBuffer newConf, long version) {
             listeners.forEach(listener -> {
                 try {
-                    listener.sourceChanged(newConf);
+                    listener.sourceChanged(newConf == null ? null : newConf.duplicate(), version);
                 } catch (Exception e) {
                     log.error("caught while firing change event", e);
                 }
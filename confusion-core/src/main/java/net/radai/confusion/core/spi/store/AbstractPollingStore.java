@@ -17,7 +17,10 @@
 
 package net.radai.confusion.core.spi.store;
 
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Created by Radai Rosenblatt
@@ -26,25 +29,57 @@ public abstract class AbstractPollingStore implements Store {
     private volatile boolean on = false;
     private volatile Thread pollThread;
     private volatile StorePollRunnable runnable;
+    private volatile ThreadFactory threadFactory = null; //null means a dedicated daemon thread
+    private volatile ConfigurationMetrics metrics = ConfigurationMetrics.NOP;
 
     @Override
     public synchronized void start() {
-        if (on || pollThread != null) {
+        if (on) {
             throw new IllegalStateException();
         }
         on = true;
-        startPollThread();
+        try {
+            startPollThread();
+        } catch (RuntimeException | Error e) {
+            on = false;
+            throw e;
+        }
     }
 
     @Override
     public synchronized void stop() {
-        if (!on || pollThread == null) {
+        if (!on) {
             throw new IllegalStateException();
         }
         on = false;
         stopPollThread();
     }
 
+    /**
+     * allows many stores to share a common source of poll threads - for example small-stacked ones
+     * (see {@link net.radai.confusion.core.util.Threads#daemonThreadFactory(String, long)})
+     * @param threadFactory factory to create the poll thread with, or null for a dedicated daemon thread (the default)
+     */
+    public synchronized void setThreadFactory(ThreadFactory threadFactory) {
+        if (on) {
+            throw new IllegalStateException("cannot be changed once started");
+        }
+        this.threadFactory = threadFactory;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    @Override
+    public void setMetrics(ConfigurationMetrics metrics) {
+        this.metrics = metrics == null ? ConfigurationMetrics.NOP : metrics;
+    }
+
+    protected ConfigurationMetrics getMetrics() {
+        return metrics;
+    }
+
     protected boolean isOn() {
         return on;
     }
@@ -54,8 +89,9 @@ public abstract class AbstractPollingStore implements Store {
             throw new IllegalStateException();
         }
         runnable = createRunnable();
-        pollThread = createThread(runnable);
-        pollThread.start();
+        Thread thread = createThread(runnable);
+        thread.start();
+        pollThread = thread;
         runnable.waitUntilWatching();
     }
 
@@ -75,6 +111,14 @@ public abstract class AbstractPollingStore implements Store {
     }
 
     protected Thread createThread(StorePollRunnable runnable) {
+        ThreadFactory factory = threadFactory;
+        if (factory != null) {
+            Thread t = factory.newThread(runnable);
+            if (t == null) {
+                throw new IllegalStateException("thread factory " + factory + " refused to create a poll thread for " + this);
+            }
+            return t;
+        }
         Thread t = new Thread(runnable, this + " poller");
         t.setDaemon(true);
         return t;
@@ -105,5 +149,12 @@ public abstract class AbstractPollingStore implements Store {
         protected void markWatching() {
             startLatch.countDown();
         }
+
+        /**
+         * to be called whenever the store has successfully checked for changes (whether or not it found any)
+         */
+        protected void markPolled() {
+            metrics.recordPoll();
+        }
     }
 }
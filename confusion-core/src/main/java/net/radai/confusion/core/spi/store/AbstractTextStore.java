@@ -17,6 +17,7 @@
 
 package net.radai.confusion.core.spi.store;
 
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.util.Listeners;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -43,9 +44,13 @@ public abstract class AbstractTextStore extends AbstractPollingStore implements
 
     protected abstract class TextPollRunnable extends StorePollRunnable {
         protected void fire(String newConf) {
+            fire(newConf, Versioned.UNKNOWN);
+        }
+
+        protected void fire(String newConf, long version) {
             listeners.forEach(listener -> {
                 try {
-                    listener.sourceChanged(newConf);
+                    listener.sourceChanged(newConf, version);
                 } catch (Exception e) {
                     log.error("caught while firing change event", e);
                 }
@@ -18,8 +18,10 @@
 package net.radai.confusion.core.spi.store;
 
 import net.radai.confusion.core.spi.PayloadType;
+import net.radai.confusion.core.spi.Versioned;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Radai Rosenblatt
@@ -33,6 +35,36 @@ public interface BinaryStore extends Store {
 
     byte[] read() throws IOException;
     void write(byte[] payload) throws IOException;
+
+    /**
+     * @return current contents along with their version (or {@link Versioned#UNKNOWN} if not supported)
+     */
+    default Versioned<byte[]> readVersioned() throws IOException {
+        return Versioned.unversioned(read());
+    }
+
+    /**
+     * like {@link #readVersioned()}, but without copying contents the store keeps in memory anyway.
+     * the buffer may be a (read-only) view of the store's own copy, and so must not be retained once modified
+     * @return current contents along with their version (or {@link Versioned#UNKNOWN} if not supported)
+     */
+    default Versioned<ByteBuffer> readBuffer() throws IOException {
+        Versioned<byte[]> contents = readVersioned();
+        return new Versioned<>(contents.getValue() == null ? null : ByteBuffer.wrap(contents.getValue()), contents.getVersion());
+    }
+
+    /**
+     * writes only if the store is still at the expected version
+     * @param payload new contents
+     * @param expectedVersion version the contents are expected to be at, as previously read
+     * @return version of the new contents, or {@link Versioned#UNKNOWN} if not known
+     * @throws net.radai.confusion.core.api.VersionConflictException if the contents have been modified since
+     * @throws UnsupportedOperationException if this store does not support versions
+     */
+    default long write(byte[] payload, long expectedVersion) throws IOException {
+        throw new UnsupportedOperationException(this + " does not support conditional writes");
+    }
+
     void register(BinaryStoreListener newListener);
     void unregister(BinaryStoreListener existingListener);
 }
@@ -17,9 +17,32 @@
 
 package net.radai.confusion.core.spi.store;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by Radai Rosenblatt
  */
 public interface BinaryStoreListener extends StoreListener {
     void sourceChanged(byte[] newContents);
+
+    /**
+     * @param version version of the new contents, or {@link net.radai.confusion.core.spi.Versioned#UNKNOWN}
+     */
+    default void sourceChanged(byte[] newContents, long version) {
+        sourceChanged(newContents);
+    }
+
+    /**
+     * new contents as a read-only buffer, possibly shared with the store (see {@link BinaryStore#readBuffer()}).
+     * by default copied out and passed on to {@link #sourceChanged(byte[], long)}
+     * @param version version of the new contents, or {@link net.radai.confusion.core.spi.Versioned#UNKNOWN}
+     */
+    default void sourceChanged(ByteBuffer newContents, long version) {
+        byte[] copy = null;
+        if (newContents != null) {
+            copy = new byte[newContents.remaining()];
+            newContents.duplicate().get(copy);
+        }
+        sourceChanged(copy, version);
+    }
 }
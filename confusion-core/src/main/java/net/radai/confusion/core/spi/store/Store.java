@@ -18,6 +18,7 @@
 package net.radai.confusion.core.spi.store;
 
 import net.radai.confusion.core.spi.PayloadType;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
 
 /**
  * Created by Radai Rosenblatt
@@ -35,4 +36,20 @@ public interface Store {
     default boolean reportsConsecutiveNulls() {
         return false;
     }
+
+    /**
+     * whether or not this store tracks versions of its contents (see {@link net.radai.confusion.core.spi.Versioned})
+     * and supports conditional (compare-and-set) writes.
+     * @return true if store supports versions
+     */
+    default boolean supportsVersions() {
+        return false;
+    }
+
+    /**
+     * @param metrics metrics to report (poll health, for example) to. ignored by default
+     */
+    default void setMetrics(ConfigurationMetrics metrics) {
+        //nothing by default
+    }
 }
@@ -18,6 +18,7 @@
 package net.radai.confusion.core.spi.store;
 
 import net.radai.confusion.core.spi.PayloadType;
+import net.radai.confusion.core.spi.Versioned;
 
 import java.io.IOException;
 
@@ -33,6 +34,26 @@ public interface TextStore extends Store {
 
     String read() throws IOException;
     void write(String payload) throws IOException;
+
+    /**
+     * @return current contents along with their version (or {@link Versioned#UNKNOWN} if not supported)
+     */
+    default Versioned<String> readVersioned() throws IOException {
+        return Versioned.unversioned(read());
+    }
+
+    /**
+     * writes only if the store is still at the expected version
+     * @param payload new contents
+     * @param expectedVersion version the contents are expected to be at, as previously read
+     * @return version of the new contents, or {@link Versioned#UNKNOWN} if not known
+     * @throws net.radai.confusion.core.api.VersionConflictException if the contents have been modified since
+     * @throws UnsupportedOperationException if this store does not support versions
+     */
+    default long write(String payload, long expectedVersion) throws IOException {
+        throw new UnsupportedOperationException(this + " does not support conditional writes");
+    }
+
     void register(TextStoreListener newListener);
     void unregister(TextStoreListener existingListener);
 }
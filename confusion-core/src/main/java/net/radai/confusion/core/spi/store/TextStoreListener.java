@@ -22,4 +22,11 @@ package net.radai.confusion.core.spi.store;
  */
 public interface TextStoreListener extends StoreListener {
     void sourceChanged(String newContents);
+
+    /**
+     * @param version version of the new contents, or {@link net.radai.confusion.core.spi.Versioned#UNKNOWN}
+     */
+    default void sourceChanged(String newContents, long version) {
+        sourceChanged(newContents);
+    }
 }
@@ -17,6 +17,13 @@
 
 package net.radai.confusion.core.spi.store.adapter;
 
+import net.radai.confusion.core.util.IOUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.util.Base64;
 
@@ -67,6 +74,14 @@ public interface Adapter {
             return text.getBytes(charset);
         }
 
+        @Override
+        public Reader toReader(InputStream binary) {
+            if (binary == null) {
+                return null;
+            }
+            return new InputStreamReader(binary, charset); //decoded as it is read
+        }
+
         @Override
         public String toString() {
             return "utf8";
@@ -75,4 +90,18 @@ public interface Adapter {
 
     String toText(byte[] binary);
     byte[] toBinary(String text);
+
+    /**
+     * @return the text a binary payload stands for, as a reader. by default the whole text is built first
+     */
+    default Reader toReader(InputStream binary) {
+        if (binary == null) {
+            return null;
+        }
+        try {
+            return new StringReader(toText(IOUtil.read(binary)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -17,6 +17,8 @@
 
 package net.radai.confusion.core.spi.store.adapter;
 
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
 import net.radai.confusion.core.spi.store.BinaryStore;
 import net.radai.confusion.core.spi.store.BinaryStoreListener;
 import net.radai.confusion.core.spi.store.TextStore;
@@ -35,6 +37,7 @@ public class BinaryToTextStore implements TextStore, BinaryStoreListener {
     private final Listeners<TextStoreListener> listeners = new Listeners<>();
     private final BinaryStore delegate;
     private final Adapter adapter;
+    private volatile ConfigurationMetrics metrics = ConfigurationMetrics.NOP;
 
     public BinaryToTextStore(BinaryStore delegate, Adapter adapter) {
         if (delegate == null || adapter == null) {
@@ -48,7 +51,7 @@ public class BinaryToTextStore implements TextStore, BinaryStoreListener {
     @Override
     public String read() throws IOException {
         byte[] binary = delegate.read();
-        return adapter.toText(binary);
+        return toText(binary);
     }
 
     @Override
@@ -57,6 +60,22 @@ public class BinaryToTextStore implements TextStore, BinaryStoreListener {
         delegate.write(binary);
     }
 
+    @Override
+    public Versioned<String> readVersioned() throws IOException {
+        Versioned<byte[]> binary = delegate.readVersioned();
+        return new Versioned<>(toText(binary.getValue()), binary.getVersion());
+    }
+
+    @Override
+    public long write(String payload, long expectedVersion) throws IOException {
+        return delegate.write(adapter.toBinary(payload), expectedVersion);
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return delegate.supportsVersions();
+    }
+
     @Override
     public void register(TextStoreListener newListener) {
         listeners.register(newListener);
@@ -79,16 +98,36 @@ public class BinaryToTextStore implements TextStore, BinaryStoreListener {
 
     @Override
     public void sourceChanged(byte[] newContents) {
-        String text = adapter.toText(newContents);
+        sourceChanged(newContents, Versioned.UNKNOWN);
+    }
+
+    @Override
+    public void sourceChanged(byte[] newContents, long version) {
+        String text = toText(newContents);
         listeners.forEach(listener -> {
             try {
-                listener.sourceChanged(text);
+                listener.sourceChanged(text, version);
             } catch (Exception e) {
                 log.error("caught while firing change event", e);
             }
         });
     }
 
+    @Override
+    public void setMetrics(ConfigurationMetrics metrics) {
+        this.metrics = metrics == null ? ConfigurationMetrics.NOP : metrics;
+        delegate.setMetrics(metrics);
+    }
+
+    private String toText(byte[] binary) {
+        ConfigurationMetrics.Span span = metrics.begin(ConfigurationMetrics.Stage.ADAPT);
+        try {
+            return adapter.toText(binary);
+        } finally {
+            span.end(binary == null ? -1 : binary.length, Versioned.UNKNOWN);
+        }
+    }
+
     @Override
     public String toString() {
         return adapter.toString() + "@" + delegate.toString();
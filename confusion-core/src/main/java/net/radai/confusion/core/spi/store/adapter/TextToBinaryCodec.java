@@ -0,0 +1,63 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.spi.store.adapter;
+
+import net.radai.confusion.core.spi.codec.BinaryCodec;
+import net.radai.confusion.core.spi.codec.TextCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Created by Radai Rosenblatt
+ * a text codec over binary payloads. the counterpart of {@link BinaryToTextStore}, for putting a text codec
+ * on top of a binary store: payloads are decoded as the codec reads them (see {@link TextCodec#parseReader}),
+ * rather than into a String up front.
+ */
+public class TextToBinaryCodec implements BinaryCodec {
+    private final TextCodec delegate;
+    private final Adapter adapter;
+
+    public TextToBinaryCodec(TextCodec delegate, Adapter adapter) {
+        if (delegate == null || adapter == null) {
+            throw new IllegalArgumentException();
+        }
+        this.delegate = delegate;
+        this.adapter = adapter;
+    }
+
+    @Override
+    public <T> T parse(Class<T> beanClass, byte[] from) {
+        return parseStream(beanClass, from == null ? null : new ByteArrayInputStream(from));
+    }
+
+    @Override
+    public <T> T parseStream(Class<T> beanClass, InputStream from) {
+        return delegate.parseReader(beanClass, adapter.toReader(from));
+    }
+
+    @Override
+    public <T> byte[] serialize(T beanInstance) {
+        return adapter.toBinary(delegate.serialize(beanInstance));
+    }
+
+    @Override
+    public String toString() {
+        return delegate + " as " + adapter;
+    }
+}
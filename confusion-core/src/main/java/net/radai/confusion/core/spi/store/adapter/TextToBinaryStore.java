@@ -17,6 +17,8 @@
 
 package net.radai.confusion.core.spi.store.adapter;
 
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
 import net.radai.confusion.core.spi.store.BinaryStore;
 import net.radai.confusion.core.spi.store.BinaryStoreListener;
 import net.radai.confusion.core.spi.store.TextStore;
@@ -35,6 +37,7 @@ public class TextToBinaryStore implements BinaryStore, TextStoreListener {
     private final Listeners<BinaryStoreListener> listeners = new Listeners<>();
     private final TextStore delegate;
     private final Adapter adapter;
+    private volatile ConfigurationMetrics metrics = ConfigurationMetrics.NOP;
 
     public TextToBinaryStore(TextStore delegate, Adapter adapter) {
         if (delegate == null || adapter == null) {
@@ -48,7 +51,7 @@ public class TextToBinaryStore implements BinaryStore, TextStoreListener {
     @Override
     public byte[] read() throws IOException {
         String text = delegate.read();
-        return adapter.toBinary(text);
+        return toBinary(text);
     }
 
     @Override
@@ -57,6 +60,22 @@ public class TextToBinaryStore implements BinaryStore, TextStoreListener {
         delegate.write(text);
     }
 
+    @Override
+    public Versioned<byte[]> readVersioned() throws IOException {
+        Versioned<String> text = delegate.readVersioned();
+        return new Versioned<>(toBinary(text.getValue()), text.getVersion());
+    }
+
+    @Override
+    public long write(byte[] payload, long expectedVersion) throws IOException {
+        return delegate.write(adapter.toText(payload), expectedVersion);
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return delegate.supportsVersions();
+    }
+
     @Override
     public void register(BinaryStoreListener newListener) {
         listeners.register(newListener);
@@ -79,16 +98,36 @@ public class TextToBinaryStore implements BinaryStore, TextStoreListener {
 
     @Override
     public void sourceChanged(String newContents) {
-        byte[] binary = adapter.toBinary(newContents);
+        sourceChanged(newContents, Versioned.UNKNOWN);
+    }
+
+    @Override
+    public void sourceChanged(String newContents, long version) {
+        byte[] binary = toBinary(newContents);
         listeners.forEach(listener -> {
             try {
-                listener.sourceChanged(binary);
+                listener.sourceChanged(binary, version);
             } catch (Exception e) {
                 log.error("caught while firing change event", e);
             }
         });
     }
 
+    @Override
+    public void setMetrics(ConfigurationMetrics metrics) {
+        this.metrics = metrics == null ? ConfigurationMetrics.NOP : metrics;
+        delegate.setMetrics(metrics);
+    }
+
+    private byte[] toBinary(String text) {
+        ConfigurationMetrics.Span span = metrics.begin(ConfigurationMetrics.Stage.ADAPT);
+        try {
+            return adapter.toBinary(text);
+        } finally {
+            span.end(text == null ? -1 : text.length(), Versioned.UNKNOWN);
+        }
+    }
+
     @Override
     public String toString() {
         return adapter.toString() + "@" + delegate.toString();
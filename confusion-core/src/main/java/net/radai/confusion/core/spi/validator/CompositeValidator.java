@@ -0,0 +1,194 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.spi.validator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Created by Radai Rosenblatt
+ * runs several independent validators in parallel. a configuration is valid if all of them consider it valid.
+ * the 1st failure (an invalid result, an exception or a validator exceeding its time budget) fails the whole
+ * validation right away, and validators still running are cancelled (interrupted).
+ * the output maps every validator that completed to its results, in the order the validators were added.
+ * validators that threw or timed out are mapped to an invalid result carrying the exception.
+ */
+public class CompositeValidator implements Validator<Map<Validator<?>, ValidationResults<?>>> {
+    private final Logger log = LogManager.getLogger(getClass());
+
+    private final Executor executor;
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /**
+     * validators will run on the common fork-join pool
+     */
+    public CompositeValidator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor executor to run validators on. validators that block (on I/O, for example) should be given
+     *                 an executor of their own rather than tie up the common fork-join pool
+     */
+    public CompositeValidator(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * adds a validator with no time budget
+     */
+    public CompositeValidator add(Validator<?> validator) {
+        return add(validator, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param validator validator to add
+     * @param timeout time budget for the validator, counted from the beginning of validation (0 for none).
+     *                a validator that has not completed in time fails validation
+     * @param unit unit of timeout
+     * @return this
+     */
+    public CompositeValidator add(Validator<?> validator, long timeout, TimeUnit unit) {
+        if (validator == null || timeout < 0 || unit == null) {
+            throw new IllegalArgumentException();
+        }
+        entries.add(new Entry(validator, unit.toNanos(timeout)));
+        return this;
+    }
+
+    public List<Validator<?>> getValidators() {
+        List<Validator<?>> validators = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            validators.add(entry.validator);
+        }
+        return Collections.unmodifiableList(validators);
+    }
+
+    @Override
+    public ValidationResults<Map<Validator<?>, ValidationResults<?>>> validate(Object currConf, Object discoveredConf) {
+        List<Entry> entries = new ArrayList<>(this.entries); //snapshot
+        long start = System.nanoTime();
+        CompletionService<ValidationResults<?>> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<ValidationResults<?>>, Entry> pending = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            pending.put(completionService.submit(() -> entry.validator.validate(currConf, discoveredConf)), entry);
+        }
+        Map<Entry, ValidationResults<?>> completed = new LinkedHashMap<>();
+        boolean valid = true;
+        try {
+            while (valid && !pending.isEmpty()) {
+                long waitNanos = nanosToNextDeadline(pending.values(), start);
+                Future<ValidationResults<?>> done = waitNanos < 0 ? completionService.take() : completionService.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    //someone ran out of time
+                    long elapsed = System.nanoTime() - start;
+                    for (Entry entry : pending.values()) {
+                        if (entry.timeoutNanos > 0 && entry.timeoutNanos <= elapsed) {
+                            log.warn("validator {} did not complete within {} ms", entry.validator, TimeUnit.NANOSECONDS.toMillis(entry.timeoutNanos));
+                            completed.put(entry, new ValidationResults<>(false, new TimeoutException("validator " + entry.validator + " timed out")));
+                            valid = false;
+                        }
+                    }
+                    continue;
+                }
+                Entry entry = pending.remove(done);
+                ValidationResults<?> results = resultsOf(done);
+                completed.put(entry, results);
+                valid = results.isValid();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            valid = false;
+        } finally {
+            for (Future<ValidationResults<?>> future : pending.keySet()) {
+                future.cancel(true);
+            }
+        }
+        //report in the order validators were added
+        Map<Validator<?>, ValidationResults<?>> output = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            ValidationResults<?> results = completed.get(entry);
+            if (results != null) {
+                output.put(entry.validator, results);
+            }
+        }
+        return new ValidationResults<>(valid, Collections.unmodifiableMap(output));
+    }
+
+    /**
+     * @return nanos until the earliest deadline of any of the given entries, or -1 if none of them have one
+     */
+    private static long nanosToNextDeadline(Iterable<Entry> entries, long start) {
+        long earliest = Long.MAX_VALUE;
+        for (Entry entry : entries) {
+            if (entry.timeoutNanos > 0) {
+                earliest = Math.min(earliest, entry.timeoutNanos);
+            }
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return -1;
+        }
+        return Math.max(0, start + earliest - System.nanoTime());
+    }
+
+    private ValidationResults<?> resultsOf(Future<ValidationResults<?>> done) throws InterruptedException {
+        try {
+            ValidationResults<?> results = done.get();
+            if (results == null) {
+                return new ValidationResults<>(false, new IllegalStateException("validator returned null"));
+            }
+            return results;
+        } catch (ExecutionException e) {
+            log.error("validator threw an exception", e.getCause());
+            return new ValidationResults<>(false, e.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "composite validator of " + getValidators();
+    }
+
+    private static class Entry {
+        private final Validator<?> validator;
+        private final long timeoutNanos; //0 means no time budget
+
+        private Entry(Validator<?> validator, long timeoutNanos) {
+            this.validator = validator;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Created by Radai Rosenblatt
+ * latest-value-wins hand-off. values submitted within a window of each other collapse to the latest one,
+ * handling is serial, and (optionally) no more than a given number of values are handled per second.
+ * a handler is told (by way of a BooleanSupplier) if the value it is working on has since been superseded
+ * by a newer one, so it can abandon expensive work that would be thrown away anyway.
+ * once closed pending values are dropped and newly submitted ones are ignored.
+ */
+public class Coalescer<V> {
+    private final Logger log = LogManager.getLogger(getClass());
+
+    private final Handler<V> handler;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final long windowNanos;
+    private final long minIntervalNanos;
+
+    private final Object lock = new Object();
+    private V pending;
+    private boolean hasPending = false;
+    private long pendingSince;
+    private volatile long generation = 0;
+    private boolean scheduled = false;
+    private ScheduledFuture<?> scheduledDispatch = null;
+    private long lastHandled = Long.MIN_VALUE;
+    private boolean closed = false;
+
+    /**
+     * @param handler handles (coalesced) values
+     * @param scheduler used to delay the handler. only times it, so may be shared and single-threaded
+     * @param executor runs the handler (which may block)
+     * @param window how long to wait for newer values before handling one. 0 means no delay
+     * @param unit unit of window
+     * @param maxPerSecond maximum number of values to handle per second, or 0 for no limit
+     */
+    public Coalescer(Handler<V> handler, ScheduledExecutorService scheduler, Executor executor, long window, TimeUnit unit, double maxPerSecond) {
+        if (handler == null || scheduler == null || executor == null || unit == null || window < 0 || maxPerSecond < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.handler = handler;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.windowNanos = unit.toNanos(window);
+        this.minIntervalNanos = maxPerSecond == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / maxPerSecond);
+    }
+
+    public void submit(V value) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (!hasPending) {
+                pendingSince = now;
+            }
+            pending = value;
+            hasPending = true;
+            generation++;
+            if (!scheduled) {
+                schedule(now);
+            }
+        }
+    }
+
+    private void schedule(long now) { //must be called while holding lock
+        long due = pendingSince + windowNanos;
+        if (lastHandled != Long.MIN_VALUE) {
+            due = Math.max(due, lastHandled + minIntervalNanos);
+        }
+        scheduled = true;
+        scheduledDispatch = scheduler.schedule(this::dispatch, Math.max(0, due - now), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * drops the pending value (if any) and cancels its handling. a value already being handled is told
+     * it's been superseded
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            pending = null;
+            hasPending = false;
+            generation++;
+            if (scheduledDispatch != null) {
+                scheduledDispatch.cancel(false);
+                scheduledDispatch = null;
+            }
+        }
+    }
+
+    private void dispatch() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            log.error("unable to handle pending value", e);
+            synchronized (lock) {
+                scheduled = false; //let the next submit() try again
+            }
+        }
+    }
+
+    private void drain() {
+        V value;
+        long handledGeneration;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            value = pending;
+            pending = null;
+            hasPending = false;
+            handledGeneration = generation;
+            lastHandled = System.nanoTime();
+        }
+        try {
+            handler.handle(value, () -> generation != handledGeneration);
+        } catch (Exception e) {
+            log.error("while handling " + value, e);
+        } finally {
+            synchronized (lock) {
+                scheduled = false;
+                if (hasPending) { //arrived while we were handling
+                    schedule(System.nanoTime());
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Handler<V> {
+        /**
+         * @param value latest value
+         * @param superseded returns true once a newer value has been submitted
+         */
+        void handle(V value, BooleanSupplier superseded) throws Exception;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Created by Radai Rosenblatt
+ * identifies a raw (text or binary) payload. fingerprints of different payloads almost always differ
+ * in their hash, which is cheap to compare. equal hashes are confirmed by comparing the payloads themselves,
+ * so {@link #matches(Fingerprint)} never mistakes a changed payload for an unchanged one.
+ */
+public final class Fingerprint {
+    private static final Fingerprint NULL = new Fingerprint(null, -1, 0);
+
+    private final Object payload;
+    private final int length;
+    private final long hash;
+
+    private Fingerprint(Object payload, int length, long hash) {
+        this.payload = payload;
+        this.length = length;
+        this.hash = hash;
+    }
+
+    /**
+     * @param payload payload to fingerprint. must not be modified afterwards
+     */
+    public static Fingerprint of(byte[] payload) {
+        return of(payload == null ? null : ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * @param payload payload to fingerprint (its remaining contents). must not be modified afterwards
+     */
+    public static Fingerprint of(ByteBuffer payload) {
+        if (payload == null) {
+            return NULL;
+        }
+        ByteBuffer contents = payload.slice(); //keeps the payload's position and limit out of it
+        CRC32 crc = new CRC32();
+        crc.update(contents.duplicate());
+        return new Fingerprint(contents, contents.remaining(), crc.getValue());
+    }
+
+    public static Fingerprint of(String payload) {
+        if (payload == null) {
+            return NULL;
+        }
+        return new Fingerprint(payload, payload.length(), payload.hashCode()); //string hash is cached
+    }
+
+    /**
+     * @return crc32 of a binary payload, hashCode of a text payload (0 for null)
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    public boolean matches(Fingerprint other) {
+        if (other == null) {
+            return false;
+        }
+        if (this == other) {
+            return true;
+        }
+        if (length != other.length || hash != other.hash) {
+            return false;
+        }
+        return payload != null && payload.equals(other.payload);
+    }
+
+    @Override
+    public String toString() {
+        return payload == null ? "null" : Long.toHexString(hash) + "/" + length;
+    }
+}
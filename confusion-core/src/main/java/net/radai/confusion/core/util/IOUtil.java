@@ -17,24 +17,118 @@
 
 package net.radai.confusion.core.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * Created by Radai Rosenblatt
  */
 public class IOUtil {
     public static byte[] read(InputStream is) throws IOException {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
+        return read(is, is.available());
+    }
+
+    /**
+     * @param is stream to read fully
+     * @param expectedSize expected number of bytes (a content length, for example). if accurate the payload
+     *                     is read into a single array of exactly the right size, without any further copies
+     */
+    public static byte[] read(InputStream is, int expectedSize) throws IOException {
+        byte[] buffer = new byte[Math.max(expectedSize, 0)];
+        int size = 0;
         while (true) {
-            int bytesRead = is.read(buffer);
+            if (size == buffer.length) {
+                int next = is.read();
+                if (next == -1) {
+                    return buffer;
+                }
+                //longer than expected. grow
+                buffer = Arrays.copyOf(buffer, Math.max(size * 2, 8192));
+                buffer[size++] = (byte) next;
+            }
+            int bytesRead = is.read(buffer, size, buffer.length - size);
             if (bytesRead == -1) {
-                break;
+                return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+            }
+            size += bytesRead;
+        }
+    }
+
+    /**
+     * reads a whole file into an array sized by the file's size (read again as a stream if it changes size meanwhile)
+     * @throws java.nio.file.NoSuchFileException if the file does not exist
+     */
+    public static byte[] read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException(file + " is too big to read (" + size + " bytes)");
+            }
+            return read(Channels.newInputStream(channel), (int) size);
+        }
+    }
+
+    /**
+     * @return a stream over the remaining contents of the buffer (which is left as is), without copying them
+     */
+    public static InputStream stream(ByteBuffer buffer) {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    public static String read(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8192];
+        while (true) {
+            int charsRead = reader.read(buffer);
+            if (charsRead == -1) {
+                return sb.toString();
             }
-            os.write(buffer, 0, bytesRead);
+            sb.append(buffer, 0, charsRead);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
-        return os.toByteArray();
     }
 }
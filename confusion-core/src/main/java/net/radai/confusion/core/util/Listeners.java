@@ -17,54 +17,216 @@
 
 package net.radai.confusion.core.util;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
  * Created by Radai Rosenblatt
+ * registry of listeners. registering and unregistering are O(1) and never wait for listeners being notified.
+ * notification iterates over an immutable snapshot (rebuilt on the 1st notification following a change), so
+ * listeners registered during a notification may or may not be part of it. listeners are notified in the
+ * order in which they were registered.
  */
 public class Listeners<T> {
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final List<T> listeners = new ArrayList<>();
+    private static final Logger log = LogManager.getLogger(Listeners.class);
+    private static final Comparator<Registration<?>> BY_ORDER = Comparator.comparingLong(Registration::order);
+
+    private final ConcurrentMap<Registration<T>, Registration<T>> registrations = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+    private final AtomicLong registered = new AtomicLong(); //orders registrations
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile Snapshot<T> snapshot = new Snapshot<>(0, Collections.emptyList());
 
     public void register(T newListener) {
         if (newListener == null) {
             throw new IllegalArgumentException();
         }
-        try (CloseableLock ignored = new CloseableLock(lock.writeLock())){
-            if (listeners.contains(newListener)) {
-                throw new IllegalStateException("listener already registered: " + newListener);
-            }
-            listeners.add(newListener);
+        add(new StrongRegistration<>(newListener, registered.incrementAndGet()));
+    }
+
+    /**
+     * registers a listener that is only weakly referenced, and so is unregistered once it is garbage collected.
+     * useful for short-lived listeners that might not be unregistered, but be sure to hold on to the listener
+     * (a lambda or anonymous class registered and not otherwise referenced will be collected almost immediately)
+     * @param newListener listener
+     */
+    public void registerWeakly(T newListener) {
+        if (newListener == null) {
+            throw new IllegalArgumentException();
         }
+        add(new WeakRegistration<>(newListener, registered.incrementAndGet(), collected));
     }
 
     public void unregister(T existingListener) {
         if (existingListener == null) {
             throw new IllegalArgumentException();
         }
-        try (CloseableLock ignored = new CloseableLock(lock.writeLock())){
-            if (!listeners.remove(existingListener)) {
-                throw new IllegalStateException("listener not registered: " + existingListener);
-            }
+        expunge();
+        if (registrations.remove(new StrongRegistration<>(existingListener, -1)) == null) {
+            throw new IllegalStateException("listener not registered: " + existingListener);
         }
+        modifications.incrementAndGet();
     }
 
     public void forEach(Consumer<T> action) {
         if (action == null) {
             throw new IllegalArgumentException();
         }
-        try (CloseableLock ignored = new CloseableLock(lock.readLock())){
-            listeners.forEach(listener -> {
-                try {
-                    action.accept(listener);
-                } catch (Exception e) {
-                    //TODO - log error
-                }
-            });
+        expunge();
+        for (Registration<T> registration : snapshot()) {
+            T listener = registration.listener();
+            if (listener == null) {
+                continue; //collected
+            }
+            try {
+                action.accept(listener);
+            } catch (Exception e) {
+                log.error("listener {} threw", listener, e);
+            }
+        }
+    }
+
+    public int size() {
+        expunge();
+        return registrations.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private void add(Registration<T> registration) {
+        expunge();
+        if (registrations.putIfAbsent(registration, registration) != null) {
+            throw new IllegalStateException("listener already registered: " + registration.listener());
+        }
+        modifications.incrementAndGet();
+    }
+
+    private void expunge() {
+        Reference<? extends T> ref;
+        while ((ref = collected.poll()) != null) {
+            //noinspection SuspiciousMethodCalls
+            if (registrations.remove(ref) != null) {
+                modifications.incrementAndGet();
+            }
+        }
+    }
+
+    private List<Registration<T>> snapshot() {
+        Snapshot<T> current = snapshot;
+        //read before the registrations, so that a snapshot is never newer than its stamp
+        long stamp = modifications.get();
+        if (current.stamp == stamp) {
+            return current.registrations;
+        }
+        List<Registration<T>> rebuilt = new ArrayList<>(registrations.keySet());
+        rebuilt.sort(BY_ORDER);
+        //racing rebuilds may overwrite each other with an older stamp, which only costs another rebuild
+        snapshot = new Snapshot<>(stamp, Collections.unmodifiableList(rebuilt));
+        return rebuilt;
+    }
+
+    private static class Snapshot<T> {
+        private final long stamp;
+        private final List<Registration<T>> registrations;
+
+        private Snapshot(long stamp, List<Registration<T>> registrations) {
+            this.stamp = stamp;
+            this.registrations = registrations;
+        }
+    }
+
+    /**
+     * registrations are equal if their listeners are, regardless of how they are referenced.
+     * a registration whose listener has been collected is only equal to itself.
+     */
+    private interface Registration<T> {
+        T listener();
+        long order();
+    }
+
+    private static boolean equal(Registration<?> registration, Object other) {
+        if (registration == other) {
+            return true;
+        }
+        if (!(other instanceof Registration)) {
+            return false;
+        }
+        Object listener = registration.listener();
+        return listener != null && listener.equals(((Registration<?>) other).listener());
+    }
+
+    private static class StrongRegistration<T> implements Registration<T> {
+        private final T listener;
+        private final long order;
+
+        private StrongRegistration(T listener, long order) {
+            this.listener = listener;
+            this.order = order;
+        }
+
+        @Override
+        public T listener() {
+            return listener;
+        }
+
+        @Override
+        public long order() {
+            return order;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return equal(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return listener.hashCode();
+        }
+    }
+
+    private static class WeakRegistration<T> extends WeakReference<T> implements Registration<T> {
+        private final long order;
+        private final int hash; //outlives the listener, so the registration can still be found and removed
+
+        private WeakRegistration(T listener, long order, ReferenceQueue<? super T> queue) {
+            super(listener, queue);
+            this.order = order;
+            this.hash = listener.hashCode();
+        }
+
+        @Override
+        public T listener() {
+            return get();
+        }
+
+        @Override
+        public long order() {
+            return order;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return equal(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
     }
 }
@@ -0,0 +1,83 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Created by Radai Rosenblatt
+ * runs tasks one at a time, in submission order, on top of some (possibly parallel) executor.
+ * at most one task from this instance is ever submitted to the underlying executor at any time.
+ */
+public class SerialExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor;
+    private Runnable active;
+
+    public SerialExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException();
+        }
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                try {
+                    scheduleNext();
+                } catch (RejectedExecutionException e) {
+                    //no one to report this to. the rest of the queue has been dropped (see below)
+                }
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * @return number of tasks waiting to run (not including any currently running task)
+     */
+    public synchronized int getBacklog() {
+        return tasks.size();
+    }
+
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+        if (active != null) {
+            try {
+                executor.execute(active);
+            } catch (RejectedExecutionException e) {
+                //underlying executor is gone (shut down?) - nothing queued here will ever run
+                active = null;
+                tasks.clear();
+                throw e;
+            }
+        }
+    }
+}
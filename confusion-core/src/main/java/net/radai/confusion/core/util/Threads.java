@@ -0,0 +1,52 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by Radai Rosenblatt
+ * thread factories for store poll threads and other (mostly idle) background work
+ */
+public class Threads {
+    /**
+     * stack size for platform watcher threads. poll loops are shallow, so there's no need for the (typically 1MB) default
+     */
+    public static final long WATCHER_STACK_SIZE = 256 * 1024;
+
+    public static ThreadFactory daemonThreadFactory(String prefix) {
+        return daemonThreadFactory(prefix, 0);
+    }
+
+    /**
+     * @param prefix thread name prefix
+     * @param stackSize requested stack size, or 0 for the jvm default
+     */
+    public static ThreadFactory daemonThreadFactory(String prefix, long stackSize) {
+        if (prefix == null || stackSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        AtomicLong counter = new AtomicLong(0);
+        return r -> {
+            Thread t = new Thread(null, r, prefix + "-" + counter.incrementAndGet(), stackSize);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ * group commit. values submitted while a batch is accumulating (for up to a window after the 1st of them)
+ * or while the previous batch is being written collapse into a single write of the latest value.
+ * every submitter's future completes with the outcome of the write that covered its value.
+ * at most one write is in flight at any time.
+ */
+public class WriteBatcher<V> {
+    private final Writer<V> writer;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final long windowNanos;
+
+    private final Object lock = new Object();
+    private Batch<V> pending = null;
+    private boolean flushing = false; //a flush is scheduled or in progress
+    private boolean closed = false;
+
+    /**
+     * @param writer performs the actual write
+     * @param scheduler used to delay writes. only times them, so may be shared and single-threaded
+     * @param executor performs writes (which block), and so completes submitters' futures
+     * @param window how long to accumulate a batch before writing it. 0 means write as soon as possible
+     * @param unit unit of window
+     */
+    public WriteBatcher(Writer<V> writer, ScheduledExecutorService scheduler, Executor executor, long window, TimeUnit unit) {
+        if (writer == null || scheduler == null || executor == null || unit == null || window < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.writer = writer;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * @return a future that completes once a write covering this value (or a later one) has completed,
+     * exceptionally if that write failed
+     */
+    public CompletableFuture<Void> submit(V value) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("closed"));
+                return future;
+            }
+            if (pending == null) {
+                pending = new Batch<>();
+            }
+            pending.value = value;
+            pending.futures.add(future);
+            if (!flushing) {
+                flushing = true;
+                schedule(windowNanos);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * submits the value and waits for the write covering it
+     * @throws IOException if the write failed (or waiting for it was interrupted)
+     */
+    public void write(V value) throws IOException {
+        try {
+            submit(value).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for write", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * fails any batch not yet written. a write already in progress is allowed to complete.
+     */
+    public void close() {
+        Batch<V> abandoned;
+        synchronized (lock) {
+            closed = true;
+            abandoned = pending;
+            pending = null;
+        }
+        if (abandoned != null) {
+            abandoned.complete(new IllegalStateException("closed before write"));
+        }
+    }
+
+    private void schedule(long delayNanos) { //must be called while holding lock
+        try {
+            if (delayNanos == 0) {
+                executor.execute(this::flush);
+            } else {
+                scheduler.schedule(this::dispatch, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            abandon(e);
+        }
+    }
+
+    private void dispatch() {
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            synchronized (lock) {
+                abandon(e);
+            }
+        }
+    }
+
+    private void abandon(Exception cause) { //must be called while holding lock
+        flushing = false;
+        Batch<V> batch = pending;
+        pending = null;
+        if (batch != null) {
+            batch.complete(cause);
+        }
+    }
+
+    private void flush() {
+        Batch<V> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = null;
+        }
+        if (batch != null) {
+            Throwable error = null;
+            try {
+                writer.write(batch.value);
+            } catch (Throwable t) {
+                error = t;
+            }
+            batch.complete(error);
+        }
+        synchronized (lock) {
+            if (pending != null && !closed) {
+                //accumulated while we were writing. it has waited long enough
+                schedule(0);
+            } else {
+                flushing = false;
+            }
+        }
+    }
+
+    private static class Batch<V> {
+        private V value;
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        private void complete(Throwable error) {
+            for (CompletableFuture<Void> future : futures) {
+                if (error == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Writer<V> {
+        void write(V value) throws Exception;
+    }
+}
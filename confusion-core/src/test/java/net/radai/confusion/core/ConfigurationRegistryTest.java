@@ -0,0 +1,239 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.api.InvalidConfigurationEvent;
+import net.radai.confusion.core.fs.DirectoryWatcher;
+import net.radai.confusion.core.fs.PathStore;
+import net.radai.confusion.core.inmem.InMemBinaryStore;
+import net.radai.confusion.core.serializable.SerializableCodec;
+import net.radai.confusion.core.util.Threads;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class ConfigurationRegistryTest {
+
+    @Test
+    public void testGroupLifecycle() throws Exception {
+        AtomicInteger threadsCreated = new AtomicInteger(0);
+        ThreadFactory delegate = Threads.daemonThreadFactory("test-watcher");
+        ThreadFactory factory = r -> {
+            threadsCreated.incrementAndGet();
+            return delegate.newThread(r);
+        };
+        SerializableCodec codec = new SerializableCodec();
+        List<InMemBinaryStore> stores = new ArrayList<>();
+        try (ConfigurationRegistry registry = new ConfigurationRegistry(factory, null, null)) {
+            for (int i = 0; i < 20; i++) {
+                InMemBinaryStore store = new InMemBinaryStore();
+                store.write(codec.serialize("conf " + i));
+                stores.add(store);
+                registry.register(String.class, "conf" + i, store, codec);
+            }
+            Assert.assertEquals(20, registry.size());
+            Assert.assertEquals(0, threadsCreated.get());
+            Assert.assertFalse(registry.get(String.class, "conf0").isStarted());
+
+            registry.start();
+            Assert.assertEquals(20, threadsCreated.get());
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals("conf " + i, registry.get(String.class, "conf" + i).getConfiguration());
+                Assert.assertTrue(stores.get(i).getThreadFactory() == factory);
+            }
+            Assert.assertNull(registry.get(String.class));
+            Assert.assertNull(registry.get(Integer.class, "conf0"));
+
+            //late registration starts right away
+            InMemBinaryStore late = new InMemBinaryStore();
+            late.write(codec.serialize("late"));
+            Assert.assertEquals("late", registry.register(String.class, late, codec).getConfiguration());
+            Assert.assertEquals("late", registry.get(String.class).getConfiguration());
+
+            SimpleConfigurationService<String> service = registry.get(String.class, "conf3");
+            Assert.assertTrue(registry.unregister(String.class, "conf3"));
+            Assert.assertFalse(service.isStarted());
+            Assert.assertFalse(registry.unregister(String.class, "conf3"));
+
+            registry.stop();
+            for (SimpleConfigurationService<?> s : registry.getServices()) {
+                Assert.assertFalse(s.isStarted());
+            }
+        }
+    }
+
+    @Test
+    public void testFileStoresShareWatcher() throws Exception {
+        AtomicInteger pollThreads = new AtomicInteger(0);
+        AtomicInteger watcherThreads = new AtomicInteger(0);
+        ThreadFactory pollFactory = counting(pollThreads, Threads.daemonThreadFactory("test-poll"));
+        ThreadFactory watcherFactory = counting(watcherThreads, Threads.daemonThreadFactory("test-shared-watcher"));
+        ExecutorService listenerExecutor = Executors.newCachedThreadPool();
+        DirectoryWatcher watcher = new DirectoryWatcher(watcherFactory, listenerExecutor);
+        SerializableCodec codec = new SerializableCodec();
+        Path dir = Files.createTempDirectory("test");
+        try (ConfigurationRegistry registry = new ConfigurationRegistry(pollFactory, watcher, null, null)) {
+            for (int i = 0; i < 20; i++) {
+                Path file = dir.resolve("conf" + i);
+                Files.write(file, codec.serialize("conf " + i));
+                PathStore store = new PathStore(file);
+                registry.register(String.class, "conf" + i, store, codec);
+                Assert.assertTrue(store.getWatcher() == watcher);
+            }
+            registry.start();
+            Assert.assertEquals(0, pollThreads.get());
+            Assert.assertEquals(1, watcherThreads.get());
+
+            SimpleConfigurationService<String> service = registry.get(String.class, "conf7");
+            CountDownLatch changed = new CountDownLatch(1);
+            service.register(new ConfigurationListener<String>() {
+                @Override
+                public void configurationChanged(ConfigurationChangeEvent<String> event) {
+                    changed.countDown();
+                }
+
+                @Override
+                public void invalidConfigurationRead(InvalidConfigurationEvent<String> event) {
+                }
+            });
+            Files.write(dir.resolve("conf7"), codec.serialize("changed"));
+            Assert.assertTrue(changed.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals("changed", service.getConfiguration());
+        } finally {
+            listenerExecutor.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory counting(AtomicInteger counter, ThreadFactory delegate) {
+        return r -> {
+            counter.incrementAndGet();
+            return delegate.newThread(r);
+        };
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDuplicateRegistration() throws Exception {
+        try (ConfigurationRegistry registry = new ConfigurationRegistry()) {
+            registry.register(String.class, "a", new InMemBinaryStore(), new SerializableCodec());
+            registry.register(String.class, "a", new InMemBinaryStore(), new SerializableCodec());
+        }
+    }
+
+    @Test
+    public void testFailedStartIsAllOrNothing() throws Exception {
+        try (ConfigurationRegistry registry = new ConfigurationRegistry()) {
+            SimpleConfigurationService<String> good = registry.register(String.class, "good", new InMemBinaryStore(), new SerializableCodec());
+            InMemBinaryStore badStore = new InMemBinaryStore();
+            badStore.write(new byte[] {1, 2, 3}); //not a valid serialized object
+            registry.register(String.class, "bad", badStore, new SerializableCodec());
+            try {
+                registry.start();
+                Assert.fail("expected to fail");
+            } catch (IllegalStateException expected) {
+                //expected
+            }
+            Assert.assertFalse(registry.isStarted());
+            Assert.assertFalse(good.isStarted());
+        }
+    }
+
+    @Test
+    public void testStartAsync() throws Exception {
+        SerializableCodec codec = new SerializableCodec();
+        try (ConfigurationRegistry registry = new ConfigurationRegistry()) {
+            for (int i = 0; i < 5; i++) {
+                InMemBinaryStore store = new InMemBinaryStore();
+                store.write(codec.serialize("conf " + i));
+                registry.register(String.class, "conf" + i, store, codec);
+            }
+            registry.startAsync().get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(registry.isReady());
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals("conf " + i, registry.get(String.class, "conf" + i).getConfiguration());
+            }
+        }
+    }
+
+    @Test
+    public void testSlowServiceDoesNotStallOthers() throws Exception {
+        SerializableCodec codec = new SerializableCodec();
+        InMemBinaryStore slowStore = new InMemBinaryStore();
+        slowStore.write(codec.serialize("slow"));
+        InMemBinaryStore fastStore = new InMemBinaryStore();
+        fastStore.write(codec.serialize("fast"));
+        CountDownLatch slowEntered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastChanged = new CountDownLatch(1);
+        try (ConfigurationRegistry registry = new ConfigurationRegistry()) {
+            SimpleConfigurationService<String> slow = registry.register(String.class, "slow", slowStore, codec);
+            SimpleConfigurationService<String> fast = registry.register(String.class, "fast", fastStore, codec);
+            slow.setCoalescing(0, TimeUnit.MILLISECONDS);
+            fast.setCoalescing(0, TimeUnit.MILLISECONDS);
+            slow.register(new ConfigurationListener<String>() {
+                @Override
+                public void configurationChanged(ConfigurationChangeEvent<String> event) {
+                    slowEntered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                public void invalidConfigurationRead(InvalidConfigurationEvent<String> event) {
+                }
+            });
+            fast.register(new ConfigurationListener<String>() {
+                @Override
+                public void configurationChanged(ConfigurationChangeEvent<String> event) {
+                    fastChanged.countDown();
+                }
+
+                @Override
+                public void invalidConfigurationRead(InvalidConfigurationEvent<String> event) {
+                }
+            });
+            registry.start();
+            try {
+                slowStore.write(codec.serialize("slow 2"));
+                Assert.assertTrue(slowEntered.await(5, TimeUnit.SECONDS));
+                fastStore.write(codec.serialize("fast 2")); //shares the scheduler with the stuck service
+                Assert.assertTrue(fastChanged.await(5, TimeUnit.SECONDS));
+                Assert.assertEquals("fast 2", fast.getConfiguration());
+            } finally {
+                release.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core;
+
+import net.radai.confusion.cats.Cat;
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.source.Source;
+import net.radai.confusion.core.spi.validator.NopValidator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class DerivedConfigurationServiceTest {
+    private SimpleConfigurationService<Cat> cats;
+    private SimpleConfigurationService<Cat> otherCats;
+
+    @Before
+    public void setup() throws Exception {
+        cats = build(new Cat("bob", "fat", null));
+        otherCats = build(new Cat("tom", "grey", null));
+    }
+
+    @Test
+    public void testDerivedOncePerChange() throws Exception {
+        AtomicInteger derivations = new AtomicInteger();
+        DerivedConfigurationService<String> names = DerivedConfigurationService.map(cats, String.class, cat -> {
+            derivations.incrementAndGet();
+            return cat.getName().toUpperCase();
+        }, null);
+        Assert.assertEquals(0, derivations.get()); //lazy
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("BOB", names.getConfiguration());
+        }
+        Assert.assertEquals(1, derivations.get());
+        Assert.assertEquals(String.class, names.getConfigurationType());
+
+        cats.sourceChanged(new Cat("alice", "thin", null));
+        Assert.assertEquals(1, derivations.get()); //still lazy
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("ALICE", names.getConfiguration());
+        }
+        Assert.assertEquals(2, derivations.get());
+
+        names.close();
+        cats.sourceChanged(new Cat("eve", "thin", null));
+        Assert.assertEquals("ALICE", names.getConfiguration()); //no longer tracking
+    }
+
+    @Test
+    public void testEqualValuesDeduplicated() throws Exception {
+        DerivedConfigurationService<String> names = DerivedConfigurationService.map(cats, Cat::getName);
+        //noinspection unchecked
+        ConfigurationListener<String> listener = Mockito.mock(ConfigurationListener.class);
+        names.register(listener);
+        String initial = names.getConfiguration();
+
+        cats.sourceChanged(new Cat(new String("bob"), "thin", null)); //equal, but not the same instance
+        Mockito.verifyZeroInteractions(listener);
+        Assert.assertTrue(initial == names.getConfiguration());
+
+        cats.sourceChanged(new Cat("alice", "thin", null));
+        ArgumentCaptor<ConfigurationChangeEvent<String>> capture = ArgumentCaptor.forClass(ConfigurationChangeEvent.class);
+        Mockito.verify(listener).configurationChanged(capture.capture());
+        Assert.assertEquals("bob", capture.getValue().getOldConf());
+        Assert.assertEquals("alice", capture.getValue().getNewConf());
+    }
+
+    @Test
+    public void testEagerDerivation() throws Exception {
+        AtomicInteger derivations = new AtomicInteger();
+        DerivedConfigurationService<String> names = DerivedConfigurationService.map(cats, String.class, cat -> {
+            derivations.incrementAndGet();
+            return cat.getName();
+        }, Runnable::run);
+        cats.sourceChanged(new Cat("alice", "thin", null));
+        Assert.assertEquals(1, derivations.get()); //computed without being read
+        Assert.assertEquals("alice", names.getConfiguration());
+        Assert.assertEquals(1, derivations.get());
+    }
+
+    @Test
+    public void testCombine() throws Exception {
+        AtomicInteger derivations = new AtomicInteger();
+        DerivedConfigurationService<String> both = DerivedConfigurationService.combine(cats, otherCats, (a, b) -> {
+            derivations.incrementAndGet();
+            return a.getName() + "+" + b.getName();
+        });
+        Assert.assertEquals("bob+tom", both.getConfiguration());
+        otherCats.sourceChanged(new Cat("felix", "black", null));
+        Assert.assertEquals("bob+felix", both.getConfiguration());
+        cats.sourceChanged(new Cat("alice", "thin", null));
+        Assert.assertEquals("alice+felix", both.getConfiguration());
+        Assert.assertEquals("alice+felix", both.getConfiguration());
+        Assert.assertEquals(3, derivations.get());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() throws Exception {
+        DerivedConfigurationService.map(cats, Cat::getName).updateConfiguration("nope");
+    }
+
+    private static SimpleConfigurationService<Cat> build(Cat initial) throws Exception {
+        //noinspection unchecked
+        Source<Cat> source = Mockito.mock(Source.class);
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(initial));
+        SimpleConfigurationService<Cat> service = new SimpleConfigurationService<>(Cat.class, source, new NopValidator());
+        service.start();
+        return service;
+    }
+}
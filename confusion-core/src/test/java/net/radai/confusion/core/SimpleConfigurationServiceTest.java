@@ -17,12 +17,22 @@
 
 package net.radai.confusion.core;
 
+import net.radai.confusion.cats.Cat;
+import net.radai.confusion.cats.Cats;
 import net.radai.confusion.core.api.ConfigurationChangeEvent;
 import net.radai.confusion.core.api.ConfigurationListener;
 import net.radai.confusion.core.api.InvalidConfigurationEvent;
+import net.radai.confusion.core.api.VersionConflictException;
+import net.radai.confusion.core.fs.PathSnapshot;
+import net.radai.confusion.core.inmem.InMemBinaryStore;
+import net.radai.confusion.core.metrics.SimpleConfigurationMetrics;
+import net.radai.confusion.core.serializable.SerializableCodec;
+import net.radai.confusion.core.spi.validator.NopValidator;
 import net.radai.confusion.core.spi.validator.ValidationResults;
 import net.radai.confusion.core.spi.validator.Validator;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.source.Source;
+import net.radai.confusion.core.spi.source.Sources;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -33,6 +43,23 @@ import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by Radai Rosenblatt
  */
@@ -57,7 +84,7 @@ public class SimpleConfigurationServiceTest {
 
     @Test(expected = IllegalStateException.class)
     public void testCantStartWithNoConf() throws Exception {
-        Mockito.when(source.read()).thenReturn(null);
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(null));
         Mockito.when(validator.validate(Mockito.any(), Mockito.isNull())).thenReturn(new ValidationResults<>(false, null));
         confService.start();
     }
@@ -65,7 +92,7 @@ public class SimpleConfigurationServiceTest {
     @Test
     public void testNormalBoot() throws Exception {
         ConfClass c1 = new ConfClass();
-        Mockito.when(source.read()).thenReturn(c1);
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(c1));
         Mockito.when(validator.validate(Mockito.any(), Mockito.eq(c1))).thenReturn(new ValidationResults<>(true, null));
 
         confService.start();
@@ -84,7 +111,7 @@ public class SimpleConfigurationServiceTest {
         ConfClass c2 = new ConfClass();
         Mockito.when(validator.validate(Mockito.any(), Mockito.eq(c2))).thenReturn(new ValidationResults<>(false, null));
         //current state is 1
-        Mockito.when(source.read()).thenReturn(c1);
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(c1));
 
         confService.start();
         Assert.assertTrue(confService.getConfiguration() == c1);
@@ -103,7 +130,7 @@ public class SimpleConfigurationServiceTest {
         ConfClass c2 = new ConfClass();
         Mockito.when(validator.validate(Mockito.any(), Mockito.eq(c2))).thenReturn(new ValidationResults<>(true, null));
         //current state is 1
-        Mockito.when(source.read()).thenReturn(c1);
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(c1));
 
         confService.start();
         Assert.assertTrue(confService.getConfiguration() == c1);
@@ -131,6 +158,715 @@ public class SimpleConfigurationServiceTest {
         Mockito.verify(source).write(c1);
     }
 
+    @Test
+    public void testAsyncListenerDispatch() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        ConfClass c1 = new ConfClass();
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(c1));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            confService.setListenerExecutor(executor);
+            CountDownLatch release = new CountDownLatch(1);
+            List<ConfClass> seenBySlow = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch slowDone = new CountDownLatch(3);
+            confService.register(new ConfigurationListener<ConfClass>() {
+                @Override
+                public void configurationChanged(ConfigurationChangeEvent<ConfClass> event) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    seenBySlow.add(event.getNewConf());
+                    slowDone.countDown();
+                }
+
+                @Override
+                public void invalidConfigurationRead(InvalidConfigurationEvent<ConfClass> event) {
+                }
+            });
+            confService.start();
+
+            List<ConfClass> confs = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                ConfClass c = new ConfClass();
+                confs.add(c);
+                confService.sourceChanged(c); //would block forever if the slow listener was invoked inline
+                Assert.assertTrue(confService.getConfiguration() == c);
+            }
+            //the fast listener is not held up by the slow one
+            Mockito.verify(listener, Mockito.timeout(1000).times(3)).configurationChanged(Mockito.any());
+            Assert.assertTrue(seenBySlow.isEmpty());
+
+            release.countDown();
+            Assert.assertTrue(slowDone.await(1, TimeUnit.SECONDS));
+            Assert.assertEquals(confs, seenBySlow); //in order
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCoalescedBurst() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        ConfClass c0 = new ConfClass();
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(c0));
+        confService.setCoalescing(200, TimeUnit.MILLISECONDS);
+        confService.start();
+        try {
+            ConfClass latest = null;
+            for (int i = 0; i < 10; i++) {
+                latest = new ConfClass();
+                confService.sourceChanged(latest);
+            }
+            Assert.assertTrue(confService.getConfiguration() == c0); //not yet
+            ArgumentCaptor<ConfigurationChangeEvent<ConfClass>> capture = ArgumentCaptor.forClass(ConfigurationChangeEvent.class);
+            Mockito.verify(listener, Mockito.timeout(1000)).configurationChanged(capture.capture());
+            Assert.assertTrue(capture.getValue().getOldConf() == c0);
+            Assert.assertTrue(capture.getValue().getNewConf() == latest);
+            Assert.assertTrue(confService.getConfiguration() == latest);
+            Thread.sleep(300);
+            Mockito.verify(listener, Mockito.times(1)).configurationChanged(Mockito.any()); //just the 1
+        } finally {
+            confService.stop();
+        }
+    }
+
+    @Test
+    public void testSupersededConfDropped() throws Exception {
+        ConfClass c0 = new ConfClass();
+        ConfClass slow = new ConfClass();
+        ConfClass fast = new ConfClass();
+        CountDownLatch validating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(validator.validate(Mockito.any(), Mockito.eq(c0))).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(validator.validate(Mockito.any(), Mockito.eq(fast))).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(validator.validate(Mockito.any(), Mockito.eq(slow))).thenAnswer(invocation -> {
+            validating.countDown();
+            release.await();
+            return new ValidationResults<>(true, null);
+        });
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(c0));
+        confService.setCoalescing(0, TimeUnit.MILLISECONDS);
+        confService.start();
+        try {
+            confService.sourceChanged(slow);
+            Assert.assertTrue(validating.await(1, TimeUnit.SECONDS));
+            confService.sourceChanged(fast); //arrives while slow is being validated
+            release.countDown();
+            ArgumentCaptor<ConfigurationChangeEvent<ConfClass>> capture = ArgumentCaptor.forClass(ConfigurationChangeEvent.class);
+            Mockito.verify(listener, Mockito.timeout(1000)).configurationChanged(capture.capture());
+            Assert.assertTrue(capture.getValue().getOldConf() == c0); //slow was never applied
+            Assert.assertTrue(capture.getValue().getNewConf() == fast);
+        } finally {
+            confService.stop();
+        }
+    }
+
+    @Test
+    public void testPendingChangeDroppedOnStop() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        ConfClass c0 = new ConfClass();
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(c0));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(); //outlives stop()
+        confService.setScheduler(scheduler);
+        confService.setCoalescing(200, TimeUnit.MILLISECONDS);
+        confService.start();
+        try {
+            confService.sourceChanged(new ConfClass()); //pending
+            confService.stop();
+            confService.start();
+            Thread.sleep(400);
+            Assert.assertTrue(confService.getConfiguration() == c0);
+            Mockito.verify(listener, Mockito.never()).configurationChanged(Mockito.any());
+        } finally {
+            confService.stop();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVersionOnlyChangeCoalesced() throws Exception {
+        ConfClass c0 = new ConfClass();
+        ConfClass rejected = new ConfClass();
+        ConfClass accepted = new ConfClass();
+        Mockito.when(validator.validate(Mockito.any(), Mockito.eq(c0))).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(validator.validate(Mockito.any(), Mockito.eq(accepted))).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(validator.validate(Mockito.any(), Mockito.eq(rejected))).thenReturn(new ValidationResults<>(false, null));
+        Mockito.when(source.readVersioned()).thenReturn(new Versioned<>(c0, 1));
+        confService.setCoalescing(50, TimeUnit.MILLISECONDS);
+        confService.start();
+        try {
+            //a touch of a rejected payload is not validated (or reported) again
+            confService.sourceChanged(rejected, 2);
+            Mockito.verify(listener, Mockito.timeout(1000)).invalidConfigurationRead(Mockito.any());
+            confService.versionChanged(3);
+            Thread.sleep(200);
+            Mockito.verify(validator, Mockito.times(1)).validate(Mockito.any(), Mockito.eq(rejected));
+            Mockito.verify(listener, Mockito.times(1)).invalidConfigurationRead(Mockito.any());
+            Assert.assertEquals(1, confService.getConfigurationVersion());
+
+            //a touch that supersedes a pending change still applies it
+            confService.sourceChanged(accepted, 4);
+            confService.versionChanged(5);
+            Mockito.verify(listener, Mockito.timeout(1000)).configurationChanged(Mockito.any());
+            Assert.assertTrue(confService.getConfiguration() == accepted);
+            Assert.assertEquals(5, confService.getConfigurationVersion());
+
+            //a touch of the current configuration only bumps the version
+            confService.versionChanged(6);
+            Thread.sleep(200);
+            Assert.assertEquals(6, confService.getConfigurationVersion());
+            Mockito.verify(validator, Mockito.times(1)).validate(Mockito.any(), Mockito.eq(accepted));
+            Mockito.verify(listener, Mockito.times(1)).configurationChanged(Mockito.any());
+        } finally {
+            confService.stop();
+        }
+    }
+
+    @Test
+    public void testBatchedUpdates() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(new ConfClass()));
+        List<ConfClass> written = Collections.synchronizedList(new ArrayList<>());
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(50); //slow store
+            written.add((ConfClass) invocation.getArguments()[0]);
+            return null;
+        }).when(source).write(Mockito.any());
+        confService.setWriteBatching(20, TimeUnit.MILLISECONDS);
+        confService.start();
+        ExecutorService admins = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                futures.add(admins.submit(() -> {
+                    confService.updateConfiguration(new ConfClass());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS); //everyone gets released
+            }
+            Assert.assertTrue("expected batching, got " + written.size() + " writes", written.size() < 30);
+            int before = written.size();
+            confService.updateConfigurationAsync(new ConfClass()).get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(before + 1, written.size()); //(a copy of) the last update was written
+        } finally {
+            admins.shutdownNow();
+            confService.stop();
+        }
+    }
+
+    @Test
+    public void testBatchedAsyncUpdateDetached() throws Exception {
+        //noinspection unchecked
+        Source<Cats> cats = Mockito.mock(Source.class);
+        Mockito.when(cats.readVersioned()).thenReturn(Versioned.unversioned(new Cats("bob", null)));
+        SimpleConfigurationService<Cats> service = new SimpleConfigurationService<>(Cats.class, cats, new NopValidator());
+        service.setWriteBatching(50, TimeUnit.MILLISECONDS);
+        service.start();
+        try {
+            Cats update = new Cats("alice", new ArrayList<>(Collections.singletonList("first")));
+            CompletableFuture<Void> written = service.updateConfigurationAsync(update);
+            update.setCreator("eve"); //while the write is pending
+            update.getComments().add("second");
+            written.get(1, TimeUnit.SECONDS);
+            ArgumentCaptor<Cats> capture = ArgumentCaptor.forClass(Cats.class);
+            Mockito.verify(cats).write(capture.capture());
+            Assert.assertEquals("alice", capture.getValue().getCreator());
+            Assert.assertEquals(Collections.singletonList("first"), capture.getValue().getComments());
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testBatchedUpdateFailure() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(new ConfClass()));
+        Mockito.doThrow(new IOException("store down")).when(source).write(Mockito.any());
+        confService.setWriteBatching(0, TimeUnit.MILLISECONDS);
+        confService.start();
+        try {
+            confService.updateConfiguration(new ConfClass());
+            Assert.fail("expected to fail");
+        } catch (IOException expected) {
+            Assert.assertEquals("store down", expected.getMessage());
+        } finally {
+            confService.stop();
+        }
+    }
+
+    @Test
+    public void testBatchedWritesRunOnExecutor() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(new ConfClass()));
+        List<String> writers = Collections.synchronizedList(new ArrayList<>());
+        Mockito.doAnswer(invocation -> {
+            writers.add(Thread.currentThread().getName());
+            return null;
+        }).when(source).write(Mockito.any());
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "test-scheduler"));
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "test-writer"));
+        confService.setScheduler(scheduler);
+        confService.setExecutor(executor);
+        confService.setWriteBatching(10, TimeUnit.MILLISECONDS);
+        confService.start();
+        try {
+            confService.updateConfigurationAsync(new ConfClass()).get(5, TimeUnit.SECONDS);
+            confService.updateConfiguration(new ConfClass());
+            Assert.assertEquals(Arrays.asList("test-writer", "test-writer"), writers);
+        } finally {
+            confService.stop();
+            scheduler.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConditionalUpdate() throws Exception {
+        InMemBinaryStore store = new InMemBinaryStore();
+        SerializableCodec codec = new SerializableCodec();
+        store.write(codec.serialize("v1"));
+        SimpleConfigurationService<String> service = Confusion.create(String.class, store, codec);
+        service.start();
+        try {
+            long v1 = service.getConfigurationVersion();
+            Assert.assertTrue(v1 > 0);
+            long v2 = service.updateConfiguration(v1, "v2");
+            Assert.assertNotEquals(v1, v2);
+            try {
+                service.updateConfiguration(v1, "v3"); //lost update
+                Assert.fail("expected a conflict");
+            } catch (VersionConflictException expected) {
+                Assert.assertEquals(v1, expected.getExpectedVersion());
+                Assert.assertEquals(v2, expected.getActualVersion());
+            }
+            Thread.sleep(100); //let the change propagate
+            Assert.assertEquals("v2", service.getConfiguration());
+            Assert.assertEquals(v2, service.getConfigurationVersion());
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testUnchangedPayloadDropped() throws Exception {
+        InMemBinaryStore store = new InMemBinaryStore();
+        SerializableCodec codec = new SerializableCodec();
+        store.write(codec.serialize("v1"));
+        SimpleConfigurationService<String> service = Confusion.create(String.class, store, codec);
+        service.setDeduplicate(true);
+        //noinspection unchecked
+        ConfigurationListener<String> stringListener = Mockito.mock(ConfigurationListener.class);
+        service.register(stringListener);
+        service.start();
+        try {
+            String initial = service.getConfiguration();
+            store.write(codec.serialize("v1")); //same payload all over again
+            long v2 = store.readVersioned().getVersion();
+            Thread.sleep(100); //let the change propagate
+            Mockito.verifyZeroInteractions(stringListener);
+            Assert.assertTrue(initial == service.getConfiguration());
+            Assert.assertEquals(v2, service.getConfigurationVersion());
+
+            store.write(codec.serialize("v2"));
+            Thread.sleep(100);
+            Mockito.verify(stringListener).configurationChanged(Mockito.any());
+            Assert.assertEquals("v2", service.getConfiguration());
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testRejectedPayloadNotDropped() throws Exception {
+        InMemBinaryStore store = new InMemBinaryStore();
+        SerializableCodec codec = new SerializableCodec();
+        store.write(codec.serialize("v1"));
+        AtomicBoolean acceptV2 = new AtomicBoolean(false);
+        Validator stringValidator = (currConf, discoveredConf) -> new ValidationResults<>(!"v2".equals(discoveredConf) || acceptV2.get());
+        SimpleConfigurationService<String> service = new SimpleConfigurationService<>(String.class, Sources.from(String.class, store, codec), stringValidator);
+        service.setDeduplicate(true);
+        //noinspection unchecked
+        ConfigurationListener<String> stringListener = Mockito.mock(ConfigurationListener.class);
+        service.register(stringListener);
+        service.start();
+        try {
+            store.write(codec.serialize("v2"));
+            Mockito.verify(stringListener, Mockito.timeout(5000)).invalidConfigurationRead(Mockito.any());
+            Assert.assertEquals("v1", service.getConfiguration());
+
+            acceptV2.set(true); //whatever the validator depends on has changed
+            store.write(codec.serialize("v2")); //same payload, re-validated
+            Mockito.verify(stringListener, Mockito.timeout(5000)).configurationChanged(Mockito.any());
+            Assert.assertEquals("v2", service.getConfiguration());
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testIgnoreEqualChanges() throws Exception {
+        //noinspection unchecked
+        Source<Cats> catSource = Mockito.mock(Source.class);
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        Cats c0 = new Cats("bob", null, new Cat("fluffy", "white", null));
+        Mockito.when(catSource.readVersioned()).thenReturn(new Versioned<>(c0, 1));
+        SimpleConfigurationService<Cats> catService = new SimpleConfigurationService<>(Cats.class, catSource, validator);
+        catService.setIgnoreEqualChanges(true);
+        //noinspection unchecked
+        ConfigurationListener<Cats> catsListener = Mockito.mock(ConfigurationListener.class);
+        catService.register(catsListener);
+        catService.start();
+        Mockito.verify(validator).validate(Mockito.any(), Mockito.any());
+
+        catService.sourceChanged(new Cats("bob", null, new Cat("fluffy", "white", null)), 2); //equal, different instance
+        Mockito.verifyNoMoreInteractions(validator);
+        Mockito.verifyZeroInteractions(catsListener);
+        Assert.assertTrue(c0 == catService.getConfiguration());
+        Assert.assertEquals(2, catService.getConfigurationVersion());
+
+        catService.sourceChanged(new Cats("alice", null, new Cat("fluffy", "white", null)), 3);
+        Mockito.verify(catsListener).configurationChanged(Mockito.any());
+        Assert.assertEquals(3, catService.getConfigurationVersion());
+    }
+
+    @Test
+    public void testStartFromSnapshot() throws Exception {
+        SerializableCodec codec = new SerializableCodec();
+        PathSnapshot<String> snapshot = new PathSnapshot<>(String.class, Files.createTempDirectory("test").resolve("snapshot"), codec);
+
+        //1st run populates the snapshot
+        InMemBinaryStore store = new InMemBinaryStore();
+        store.write(codec.serialize("v1"));
+        SimpleConfigurationService<String> service = Confusion.create(String.class, store, codec);
+        service.setSnapshot(snapshot);
+        service.start();
+        service.stop();
+        awaitSnapshot(snapshot, "v1"); //saved in the background
+
+        //2nd run - source is unavailable at first, and has changed by the time it's back
+        //noinspection unchecked
+        Source<String> flaky = Mockito.mock(Source.class);
+        Mockito.when(flaky.readVersioned()).thenThrow(new IOException("unavailable")).thenReturn(new Versioned<>("v2", 5));
+        service = new SimpleConfigurationService<>(String.class, flaky, new NopValidator());
+        service.setSnapshot(snapshot);
+        //noinspection unchecked
+        ConfigurationListener<String> stringListener = Mockito.mock(ConfigurationListener.class);
+        service.register(stringListener);
+        service.start();
+        try {
+            Assert.assertEquals("v1", service.getConfiguration()); //served right away
+            Mockito.verify(flaky, Mockito.timeout(5000)).start();
+            Assert.assertEquals("v2", service.getConfiguration());
+            Assert.assertEquals(5, service.getConfigurationVersion());
+            Mockito.verify(stringListener).configurationChanged(Mockito.any());
+            awaitSnapshot(snapshot, "v2");
+            Assert.assertEquals(5, snapshot.load().getVersion());
+        } finally {
+            service.stop();
+        }
+        Mockito.verify(flaky).stop();
+    }
+
+    @Test
+    public void testStartAsync() throws Exception {
+        //noinspection unchecked
+        Source<String> flaky = Mockito.mock(Source.class);
+        CountDownLatch available = new CountDownLatch(1);
+        Mockito.when(flaky.readVersioned()).thenAnswer(invocation -> {
+            available.await();
+            return new Versioned<>("real", 3);
+        });
+        SimpleConfigurationService<String> service = new SimpleConfigurationService<>(String.class, flaky, new NopValidator());
+        service.setDefaultConfiguration("default");
+        CompletableFuture<Void> readiness = service.startAsync();
+        try {
+            //started right away, serving the default
+            Assert.assertTrue(service.isStarted());
+            Assert.assertFalse(service.isReady());
+            Assert.assertEquals("default", service.getConfiguration());
+            Assert.assertFalse(readiness.isDone());
+
+            available.countDown();
+            readiness.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(service.isReady());
+            Assert.assertEquals("real", service.getConfiguration());
+            Assert.assertEquals(3, service.getConfigurationVersion());
+            Mockito.verify(flaky).start();
+        } finally {
+            service.stop();
+        }
+
+        //nothing to serve in the meantime
+        service = new SimpleConfigurationService<>(String.class, flaky, new NopValidator());
+        readiness = service.startAsync();
+        readiness.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(service.isReady());
+        Assert.assertEquals("real", service.getConfiguration());
+        service.stop();
+
+        //noinspection unchecked
+        Source<String> broken = Mockito.mock(Source.class);
+        Mockito.when(broken.readVersioned()).thenThrow(new IOException("unavailable"));
+        readiness = new SimpleConfigurationService<>(String.class, broken, new NopValidator()).startAsync();
+        try {
+            readiness.get(5, TimeUnit.SECONDS);
+            Assert.fail("expected to fail");
+        } catch (ExecutionException expected) {
+            Assert.assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testStopWhileStartingAsync() throws Exception {
+        //noinspection unchecked
+        Source<String> slow = Mockito.mock(Source.class);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch available = new CountDownLatch(1);
+        Mockito.when(slow.readVersioned()).thenAnswer(invocation -> {
+            reading.countDown();
+            available.await();
+            return Versioned.unversioned("real");
+        });
+        SimpleConfigurationService<String> service = new SimpleConfigurationService<>(String.class, slow, new NopValidator());
+        CompletableFuture<Void> readiness = service.startAsync();
+        Assert.assertTrue(reading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(service::stop);
+        try {
+            stopped.get(5, TimeUnit.SECONDS); //not held up by the read
+            Assert.assertTrue(readiness.isCancelled());
+        } finally {
+            available.countDown();
+        }
+        Thread.sleep(100); //let the read complete
+        Assert.assertFalse(service.isStarted());
+        Mockito.verify(slow, Mockito.never()).start();
+    }
+
+    @Test
+    public void testStopDuringReconcileRetry() throws Exception {
+        //noinspection unchecked
+        Source<String> down = Mockito.mock(Source.class);
+        CountDownLatch retrying = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        Mockito.when(down.readVersioned()).thenThrow(new IOException("unavailable")).thenAnswer(invocation -> {
+            retrying.countDown();
+            fail.await();
+            throw new IOException("still unavailable");
+        });
+        SimpleConfigurationService<String> service = new SimpleConfigurationService<>(String.class, down, new NopValidator());
+        service.setDefaultConfiguration("default");
+        service.start();
+        Assert.assertTrue(retrying.await(5, TimeUnit.SECONDS));
+        service.stop();
+        fail.countDown();
+        Thread.sleep(100); //let the failed read be handled
+        Object executors = ReflectionTestUtils.getField(service, "executors");
+        Assert.assertNull(ReflectionTestUtils.getField(executors, "ownScheduler")); //nothing scheduled after stop()
+    }
+
+    @Test
+    public void testOwnExecutorShutDownOnStop() throws Exception {
+        //noinspection unchecked
+        Source<Integer> ints = Mockito.mock(Source.class);
+        Mockito.when(ints.readVersioned()).thenReturn(Versioned.unversioned(1));
+        SimpleConfigurationService<Integer> service = new SimpleConfigurationService<>(Integer.class, ints, new NopValidator());
+        service.setCoalescing(0, TimeUnit.MILLISECONDS);
+        Assert.assertNull(service.getExecutor());
+        for (int i = 0; i < 2; i++) { //and a new one is created on restart
+            service.start();
+            service.sourceChanged(2 + i);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (service.getConfiguration() != 2 + i && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(2 + i, (int) service.getConfiguration());
+            Assert.assertTrue(workerThreadsAlive(service));
+            service.stop();
+            deadline = System.currentTimeMillis() + 5000;
+            while (workerThreadsAlive(service) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertFalse(workerThreadsAlive(service));
+        }
+    }
+
+    private static boolean workerThreadsAlive(SimpleConfigurationService<?> service) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(service + " worker")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testDefaultConfigurationFallback() throws Exception {
+        //noinspection unchecked
+        Source<String> flaky = Mockito.mock(Source.class);
+        CountDownLatch available = new CountDownLatch(1);
+        Mockito.when(flaky.readVersioned()).thenThrow(new IOException("unavailable")).thenAnswer(invocation -> {
+            available.await();
+            return Versioned.unversioned("real");
+        });
+        SimpleConfigurationService<String> service = new SimpleConfigurationService<>(String.class, flaky, new NopValidator());
+        service.setDefaultConfiguration("default");
+        service.start(); //does not throw
+        try {
+            Assert.assertEquals("default", service.getConfiguration());
+            Assert.assertFalse(service.isReady());
+            available.countDown();
+            Mockito.verify(flaky, Mockito.timeout(5000)).start();
+            Assert.assertTrue(service.isReady());
+            Assert.assertEquals("real", service.getConfiguration());
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testPropertySubscriptions() throws Exception {
+        //noinspection unchecked
+        Source<Cats> catSource = Mockito.mock(Source.class);
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        Cats c0 = new Cats("bob", null, new Cat("fluffy", "white", null));
+        Mockito.when(catSource.readVersioned()).thenReturn(Versioned.unversioned(c0));
+        SimpleConfigurationService<Cats> catService = new SimpleConfigurationService<>(Cats.class, catSource, validator);
+        //noinspection unchecked
+        ConfigurationListener<Cats> creatorListener = Mockito.mock(ConfigurationListener.class);
+        //noinspection unchecked
+        ConfigurationListener<Cats> catsListener = Mockito.mock(ConfigurationListener.class);
+        //noinspection unchecked
+        ConfigurationListener<Cats> getterListener = Mockito.mock(ConfigurationListener.class);
+        catService.register("creator", creatorListener);
+        catService.register("cats[0].description", catsListener);
+        catService.register(Cats::getCreator, getterListener);
+        catService.start();
+
+        //only the description changed
+        catService.sourceChanged(new Cats("bob", null, new Cat("fluffy", "black", null)));
+        Mockito.verify(catsListener).configurationChanged(Mockito.any());
+        Mockito.verifyZeroInteractions(creatorListener, getterListener);
+
+        //only the creator changed
+        catService.sourceChanged(new Cats("alice", null, new Cat("fluffy", "black", null)));
+        Mockito.verify(creatorListener).configurationChanged(Mockito.any());
+        Mockito.verify(getterListener).configurationChanged(Mockito.any());
+        Mockito.verifyNoMoreInteractions(catsListener);
+
+        //invalid confs are always reported
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(false, null));
+        catService.sourceChanged(new Cats("eve", null));
+        Mockito.verify(creatorListener).invalidConfigurationRead(Mockito.any());
+        Mockito.verify(catsListener).invalidConfigurationRead(Mockito.any());
+
+        catService.unregister(creatorListener);
+        catService.register(creatorListener); //can re-register without a filter
+    }
+
+    @Test
+    public void testSlowListenerIsolated() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(new ConfClass()));
+        confService.setListenerBudget(20, TimeUnit.MILLISECONDS, 2, SlowListenerPolicy.ISOLATE);
+        List<ConfClass> seenBySlow = Collections.synchronizedList(new ArrayList<>());
+        ConfigurationListener<ConfClass> slow = new ConfigurationListener<ConfClass>() {
+            @Override
+            public void configurationChanged(ConfigurationChangeEvent<ConfClass> event) {
+                sleep(50);
+                seenBySlow.add(event.getNewConf());
+            }
+
+            @Override
+            public void invalidConfigurationRead(InvalidConfigurationEvent<ConfClass> event) {
+            }
+        };
+        confService.register(slow);
+        confService.start();
+
+        List<ConfClass> confs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ConfClass c = new ConfClass();
+            confs.add(c);
+            long start = System.nanoTime();
+            confService.sourceChanged(c);
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (i >= 2) {
+                Assert.assertTrue("took " + tookMillis, tookMillis < 50); //no longer inline
+            }
+        }
+        Assert.assertEquals(Collections.singletonList(slow), confService.getSlowListeners());
+        Mockito.verify(listener, Mockito.times(5)).configurationChanged(Mockito.any());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (seenBySlow.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(confs, seenBySlow); //still sees everything, in order
+    }
+
+    @Test
+    public void testSlowListenerSkipped() throws Exception {
+        Mockito.when(validator.validate(Mockito.any(), Mockito.any())).thenReturn(new ValidationResults<>(true, null));
+        Mockito.when(source.readVersioned()).thenReturn(Versioned.unversioned(new ConfClass()));
+        confService.setListenerBudget(10, TimeUnit.MILLISECONDS, 1, SlowListenerPolicy.SKIP);
+        SimpleConfigurationMetrics metrics = new SimpleConfigurationMetrics();
+        confService.setMetrics(metrics);
+        AtomicInteger slowCalls = new AtomicInteger();
+        ConfigurationListener<ConfClass> slow = new ConfigurationListener<ConfClass>() {
+            @Override
+            public void configurationChanged(ConfigurationChangeEvent<ConfClass> event) {
+                slowCalls.incrementAndGet();
+                sleep(30);
+            }
+
+            @Override
+            public void invalidConfigurationRead(InvalidConfigurationEvent<ConfClass> event) {
+            }
+        };
+        confService.register(slow);
+        confService.start();
+
+        confService.sourceChanged(new ConfClass());
+        confService.sourceChanged(new ConfClass());
+        Assert.assertEquals(1, slowCalls.get());
+        Mockito.verify(listener, Mockito.times(2)).configurationChanged(Mockito.any());
+        Assert.assertEquals(1, metrics.getSlowListeners());
+
+        //a clean slate
+        confService.unregister(slow);
+        Assert.assertTrue(confService.getSlowListeners().isEmpty());
+        confService.register(slow);
+        confService.sourceChanged(new ConfClass());
+        Assert.assertEquals(2, slowCalls.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCantChangeListenerExecutorOnceStarted() throws Exception {
+        ReflectionTestUtils.setField(confService, "on", true);
+        confService.setListenerExecutor(Runnable::run);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> void awaitSnapshot(PathSnapshot<T> snapshot, T expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        Versioned<T> saved = snapshot.load();
+        while ((saved == null || !expected.equals(saved.getValue())) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            saved = snapshot.load();
+        }
+        Assert.assertEquals(expected, saved == null ? null : saved.getValue());
+    }
+
     private static class ConfClass {
         //nothing
     }
@@ -0,0 +1,162 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.beans;
+
+import net.radai.confusion.cats.Cat;
+import net.radai.confusion.cats.Cats;
+import net.radai.confusion.core.jaxb.JaxbCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class BeanCopierTest {
+
+    @Test
+    public void testDeepCopy() {
+        Cats original = new Cats("bob", new ArrayList<>(Arrays.asList("a", "b")), new Cat("fluffy", "white", Collections.singletonList("tuna")));
+        Cats copy = BeanCopier.copy(original);
+        Assert.assertNotSame(original, copy);
+        Assert.assertTrue(BeanDiff.equal(original, copy));
+        Assert.assertNotSame(original.getComments(), copy.getComments());
+        Assert.assertNotSame(original.getCats().get(0), copy.getCats().get(0));
+
+        copy.getComments().add("c");
+        copy.getCats().get(0).setName("tom");
+        Assert.assertEquals(2, original.getComments().size());
+        Assert.assertEquals("fluffy", original.getCats().get(0).getName());
+        Assert.assertFalse(BeanDiff.equal(original, copy));
+        Assert.assertNull(BeanCopier.copy(null));
+    }
+
+    @Test
+    public void testDeepCopyPreservesSharingAndCycles() {
+        Node a = new Node();
+        Node b = new Node();
+        a.next = b;
+        b.next = a;
+        a.when = new Date(1000);
+        a.tags = new TreeSet<>(Arrays.asList("z", "y"));
+        a.weights = new int[] {1, 2};
+        a.extra = new HashMap<>();
+        a.extra.put("b", b);
+        Node copy = BeanCopier.copy(a);
+        Assert.assertNotSame(a, copy);
+        Assert.assertSame(copy, copy.next.next);
+        Assert.assertSame(copy.next, copy.extra.get("b"));
+        Assert.assertNotSame(a.when, copy.when);
+        Assert.assertEquals(a.when, copy.when);
+        Assert.assertEquals("y", copy.tags.first());
+        Assert.assertArrayEquals(a.weights, copy.weights);
+        Assert.assertNotSame(a.weights, copy.weights);
+    }
+
+    @Test
+    public void testJaxbFieldAccess() throws Exception {
+        Inventory original = new Inventory();
+        original.owner = new Person();
+        original.owner.name = "bob";
+        original.getItems().add("a"); //getter-only list
+        original.getItems().add("b");
+        original.batches = new LinkedList<>(Collections.singletonList(new Person()));
+        original.limits = new EnumMap<>(TimeUnit.class);
+        original.limits.put(TimeUnit.SECONDS, original.owner);
+
+        Inventory copy = BeanCopier.copy(original);
+        Assert.assertNotSame(original.owner, copy.owner); //no properties, but still mutable
+        Assert.assertEquals("bob", copy.owner.name);
+        Assert.assertNotSame(original.getItems(), copy.getItems());
+        Assert.assertEquals(Arrays.asList("a", "b"), copy.getItems());
+        Assert.assertEquals(LinkedList.class, copy.batches.getClass());
+        Assert.assertEquals(EnumMap.class, copy.limits.getClass());
+        Assert.assertSame(copy.owner, copy.limits.get(TimeUnit.SECONDS));
+
+        copy.owner.name = "tom";
+        copy.getItems().add("c");
+        Assert.assertEquals("bob", original.owner.name);
+        Assert.assertEquals(2, original.getItems().size());
+
+        //the copy is as good as the original, as far as jaxb is concerned
+        JaxbCodec codec = new JaxbCodec();
+        Inventory fresh = BeanCopier.copy(original);
+        Assert.assertEquals(codec.serialize(original), codec.serialize(fresh));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotCopyable() {
+        BeanCopier.copy(new NoDefaultConstructor("x"));
+    }
+
+    public static class Node {
+        public Node next;
+        public Date when;
+        public TreeSet<String> tags;
+        public int[] weights;
+        public Map<String, Node> extra;
+    }
+
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class Inventory {
+        private Person owner;
+        @XmlElement(name = "item")
+        private List<String> items;
+        private LinkedList<Person> batches;
+        private EnumMap<TimeUnit, Person> limits;
+
+        public List<String> getItems() {
+            if (items == null) {
+                items = new ArrayList<>();
+            }
+            return items;
+        }
+    }
+
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class Person {
+        private String name;
+
+        private Person() {
+        }
+    }
+
+    public static class NoDefaultConstructor {
+        private final String value;
+
+        public NoDefaultConstructor(String value) {
+            this.value = value;
+        }
+    }
+}
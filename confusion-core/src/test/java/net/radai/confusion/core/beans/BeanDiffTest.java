@@ -0,0 +1,76 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.beans;
+
+import com.google.common.collect.Sets;
+import net.radai.confusion.cats.Cat;
+import net.radai.confusion.cats.Cats;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class BeanDiffTest {
+
+    @Test
+    public void testIdentical() {
+        Cats a = new Cats("bob", Arrays.asList("a", "b"), new Cat("fluffy", "white", Collections.singletonList("tuna")));
+        Cats b = new Cats("bob", Arrays.asList("a", "b"), new Cat("fluffy", "white", Collections.singletonList("tuna")));
+        BeanDiff diff = BeanDiff.compute(a, b);
+        Assert.assertTrue(diff.isEmpty());
+        Assert.assertFalse(diff.isChanged(""));
+        Assert.assertTrue(BeanDiff.equal(a, b));
+    }
+
+    @Test
+    public void testNestedChange() {
+        Cats a = new Cats("bob", null, new Cat("fluffy", "white", null), new Cat("tom", "grey", null));
+        Cats b = new Cats("bob", null, new Cat("fluffy", "white", null), new Cat("tom", "black", null));
+        BeanDiff diff = BeanDiff.compute(a, b);
+        Assert.assertEquals(Collections.singleton("cats[1].description"), diff.getChangedPaths());
+        Assert.assertTrue(diff.isChanged(""));
+        Assert.assertTrue(diff.isChanged("cats"));
+        Assert.assertTrue(diff.isChanged("cats[1]"));
+        Assert.assertTrue(diff.isChanged("cats[1].description"));
+        Assert.assertFalse(diff.isChanged("cats[0]"));
+        Assert.assertFalse(diff.isChanged("cats[1].name"));
+        Assert.assertFalse(diff.isChanged("creator"));
+        Assert.assertFalse(diff.isChanged("cat")); //prefix of a changed path, but not an ancestor
+    }
+
+    @Test
+    public void testStructuralChanges() {
+        Cats a = new Cats("bob", Collections.singletonList("a"), new Cat("fluffy", "white", null));
+        Cats b = new Cats("alice", null, new Cat("fluffy", "white", null), new Cat("tom", "grey", null));
+        BeanDiff diff = BeanDiff.compute(a, b);
+        Assert.assertEquals(Sets.newHashSet("creator", "comments", "cats"), diff.getChangedPaths());
+        Assert.assertTrue(diff.isChanged("cats[0].name")); //whole list changed
+    }
+
+    @Test
+    public void testNulls() {
+        Cats a = new Cats("bob", null);
+        Assert.assertTrue(BeanDiff.compute(null, null).isEmpty());
+        Assert.assertEquals(Collections.singleton(""), BeanDiff.compute(null, a).getChangedPaths());
+        Assert.assertTrue(BeanDiff.compute(a, null).isChanged("creator"));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.beans;
+
+import net.radai.confusion.cats.Cats;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class BeanModelTest {
+
+    @Test
+    public void testBeanProperties() {
+        BeanModel<Cats> model = BeanModel.of(Cats.class);
+        Assert.assertTrue(model == BeanModel.of(Cats.class));
+        Assert.assertFalse(model.isLeaf());
+        Assert.assertTrue(model.isInstantiable());
+        Assert.assertEquals(3, model.getProperties().size());
+
+        Cats cats = model.newInstance();
+        BeanModel.Property creator = model.getProperty("creator");
+        Assert.assertTrue(creator.isWritable());
+        Assert.assertEquals(String.class, creator.getType());
+        creator.set(cats, "bob");
+        Assert.assertEquals("bob", cats.getCreator());
+        Assert.assertEquals("bob", creator.get(cats));
+        Assert.assertNull(model.getProperty("nope"));
+
+        Assert.assertTrue(BeanModel.of(String.class).isLeaf());
+        Assert.assertTrue(BeanModel.of(Map.class).isLeaf());
+    }
+
+    @Test
+    public void testFieldsAndNonPublicClasses() {
+        BeanModel<Hidden> model = BeanModel.of(Hidden.class);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("count", "readOnly", "list", "label")), names(model)); //field order is unspecified
+        Hidden hidden = model.newInstance();
+        model.getProperty("count").set(hidden, 7); //primitive, through a setter of a non-public class
+        model.getProperty("label").set(hidden, "x"); //public field
+        Assert.assertEquals(7, hidden.getCount());
+        Assert.assertEquals(7, model.getProperty("count").get(hidden));
+        Assert.assertEquals("x", model.getProperty("label").get(hidden));
+        Assert.assertFalse(model.getProperty("readOnly").isWritable());
+        Assert.assertFalse(model.getProperty("list").isWritable()); //final field
+        try {
+            model.getProperty("readOnly").set(hidden, "y");
+            Assert.fail("expected to fail");
+        } catch (IllegalStateException expected) {
+            //expected
+        }
+    }
+
+    private static Set<String> names(BeanModel<?> model) {
+        Set<String> names = new HashSet<>();
+        for (BeanModel.Property property : model.getProperties()) {
+            names.add(property.getName());
+        }
+        return names;
+    }
+
+    static class Hidden {
+        public String label;
+        public final List<String> list = new ArrayList<>();
+        private int count;
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public String getReadOnly() {
+            return "ro";
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class AdaptiveQuiescenceTest {
+
+    @Test
+    public void testQuickWriterConverges() throws Exception {
+        Path file = Files.createTempFile("test", null);
+        AdaptiveQuiescence quiescence = new AdaptiveQuiescence();
+        Assert.assertEquals(AdaptiveQuiescence.DEFAULT_INITIAL_MILLIS, quiescence.getQuietPeriod(file, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 20; i++) {
+            Files.write(file, new byte[]{(byte) i});
+            quiescence.awaitQuiet(file, Collections.emptySet());
+        }
+        Assert.assertEquals(AdaptiveQuiescence.DEFAULT_MIN_MILLIS, quiescence.getQuietPeriod(file, TimeUnit.MILLISECONDS));
+        long start = System.nanoTime();
+        quiescence.awaitQuiet(file, Collections.emptySet());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < FSUtil.MIN_DELAY_MILLIS);
+    }
+
+    @Test
+    public void testSlowWriterWaitedFor() throws Exception {
+        Path file = Files.createTempFile("test", null);
+        AdaptiveQuiescence quiescence = new AdaptiveQuiescence();
+        Thread writer = new Thread(() -> {
+            try (OutputStream os = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+                for (int i = 0; i < 20; i++) {
+                    os.write(new byte[100]);
+                    os.flush();
+                    Thread.sleep(2);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        quiescence.awaitQuiet(file, Collections.emptySet());
+        writer.join();
+        Assert.assertEquals(2000, Files.size(file)); //not done before the writer was
+        Assert.assertTrue(quiescence.getQuietPeriod(file, TimeUnit.MILLISECONDS) > AdaptiveQuiescence.DEFAULT_INITIAL_MILLIS);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import net.radai.confusion.core.spi.Versioned;
+import net.radai.confusion.core.spi.store.TracingBinaryStoreListener;
+import net.radai.confusion.core.util.Threads;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class DirectoryStoreTest {
+    private Path dir;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("test");
+    }
+
+    @Test
+    public void testAssembledInNameOrder() throws Exception {
+        DirectoryStore store = new DirectoryStore(dir);
+        Assert.assertNull(store.read());
+        Assert.assertEquals(0, store.readVersioned().getVersion());
+        put("20-b.conf", "b");
+        put("10-a.conf", "a");
+        put(".30-hidden.conf", "hidden");
+        Files.createDirectory(dir.resolve("40-subdir"));
+        Assert.assertEquals("ab", string(store.read()));
+
+        store.setAssembler(FragmentAssembler.concatenate("\n".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("a\nb", string(store.read()));
+
+        store.setGlob("*-a.conf");
+        Assert.assertEquals("a", string(store.read()));
+    }
+
+    @Test
+    public void testEmptyFragmentsSeparated() throws Exception {
+        put("10-a.conf", "");
+        put("20-b.conf", "b");
+        put("30-c.conf", "");
+        DirectoryStore store = new DirectoryStore(dir);
+        store.setAssembler(FragmentAssembler.concatenate("\n".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("\nb\n", string(store.read()));
+    }
+
+    @Test
+    public void testNullWhenNoDirectory() throws Exception {
+        DirectoryStore store = new DirectoryStore(dir.resolve("nope"));
+        Assert.assertNull(store.read());
+    }
+
+    @Test
+    public void testOnlyChangedFragmentsRead() throws Exception {
+        put("a.conf", "a");
+        put("b.conf", "b");
+        DirectoryStore store = new DirectoryStore(dir);
+        Versioned<byte[]> initial = store.readVersioned();
+        Assert.assertEquals("ab", string(initial.getValue()));
+        Assert.assertTrue(initial.getVersion() > 0);
+
+        //a fragment that looks unchanged (same size and time) is served from cache
+        FileTime mtime = Files.getLastModifiedTime(dir.resolve("a.conf"));
+        Files.write(dir.resolve("a.conf"), "A".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(dir.resolve("a.conf"), mtime);
+        put("b.conf", "bb");
+        Versioned<byte[]> updated = store.readVersioned();
+        Assert.assertEquals("abb", string(updated.getValue()));
+        Assert.assertNotEquals(initial.getVersion(), updated.getVersion());
+
+        //same contents, same version
+        Assert.assertEquals(updated.getVersion(), store.readVersioned().getVersion());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() throws Exception {
+        new DirectoryStore(dir).write(new byte[] {1});
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        testEvents(new DirectoryStore(dir));
+    }
+
+    @Test
+    public void testEventsWithSharedWatcher() throws Exception {
+        DirectoryWatcher watcher = new DirectoryWatcher(Threads.daemonThreadFactory("test-watcher"), Runnable::run);
+        DirectoryStore store = new DirectoryStore(dir);
+        store.setWatcher(watcher);
+        testEvents(store);
+        Assert.assertEquals("DirectoryWatcher watching 0 files in 0 directories", watcher.toString());
+    }
+
+    private void testEvents(DirectoryStore store) throws Exception {
+        put("a.conf", "a");
+        TracingBinaryStoreListener listener = new TracingBinaryStoreListener();
+        store.register(listener);
+        store.start();
+        try {
+            put("b.conf", "b");
+            FsTestUtil.waitForFsQuiesce();
+            Assert.assertEquals(1, listener.getNumEvents());
+            Assert.assertEquals("ab", string(listener.getLatestEvent()));
+
+            Files.write(dir.resolve("a.conf"), "A".getBytes(StandardCharsets.UTF_8)); //in place
+            FsTestUtil.waitForFsQuiesce();
+            Assert.assertEquals(2, listener.getNumEvents());
+            Assert.assertEquals("Ab", string(listener.getLatestEvent()));
+
+            //ignored files, and rewrites that leave contents as they were
+            put(".a.conf.swp", "junk");
+            put("b.conf", "b");
+            FsTestUtil.waitForFsQuiesce();
+            Assert.assertEquals(2, listener.getNumEvents());
+
+            Files.delete(dir.resolve("a.conf"));
+            FsTestUtil.waitForFsQuiesce();
+            Assert.assertEquals(3, listener.getNumEvents());
+            Assert.assertEquals("b", string(listener.getLatestEvent()));
+
+            Files.delete(dir.resolve("b.conf"));
+            FsTestUtil.waitForFsQuiesce();
+            Assert.assertEquals(4, listener.getNumEvents());
+            Assert.assertNull(listener.getLatestEvent());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testReadDoesNotSwallowEvents() throws Exception {
+        put("a.conf", "a");
+        TracingBinaryStoreListener listener = new TracingBinaryStoreListener();
+        DirectoryStore store = new DirectoryStore(dir);
+        store.register(listener);
+        store.start();
+        try {
+            put("b.conf", "b");
+            Assert.assertEquals("ab", string(store.read())); //most likely before the watcher gets to it
+            FsTestUtil.waitForFsQuiesce();
+            Assert.assertEquals(1, listener.getNumEvents());
+            Assert.assertEquals("ab", string(listener.getLatestEvent()));
+        } finally {
+            store.stop();
+        }
+    }
+
+    private void put(String name, String contents) throws Exception {
+        Path temp = Files.createTempFile(dir, ".", null);
+        Files.write(temp, contents.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import net.radai.confusion.core.util.Threads;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class DirectoryWatcherTest {
+
+    @Test
+    public void testFailingListenerDoesNotStopWatching() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+        ExecutorService executor = Executors.newCachedThreadPool();
+        DirectoryWatcher watcher = new DirectoryWatcher(Threads.daemonThreadFactory("test-watcher"), executor);
+        CountDownLatch polled = new CountDownLatch(2);
+        CountDownLatch changed = new CountDownLatch(1);
+        try (DirectoryWatcher.Watch bad = watcher.watch(dir.resolve("bad"), new DirectoryWatcher.FileListener() {
+                @Override
+                public void fileChanged(Path file, Set<WatchEvent.Kind<?>> kinds) {
+                }
+
+                @Override
+                public void watcherPolled() {
+                    polled.countDown();
+                    throw new IllegalStateException("boom");
+                }
+            });
+             DirectoryWatcher.Watch good = watcher.watch(dir.resolve("good"), (file, kinds) -> changed.countDown())) {
+            Assert.assertTrue(polled.await(5, TimeUnit.SECONDS)); //survived the first one
+            Files.write(dir.resolve("good"), new byte[] {1});
+            Assert.assertTrue(changed.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedRegistrationLeavesNothingBehind() throws Exception {
+        Path notADirectory = Files.createTempFile("test", null);
+        DirectoryWatcher watcher = new DirectoryWatcher(Threads.daemonThreadFactory("test-orphan-watcher"), Runnable::run);
+        try {
+            watcher.watch(notADirectory.resolve("file"), (file, kinds) -> {});
+            Assert.fail("expected to fail");
+        } catch (IOException expected) {
+            //expected
+        }
+        Assert.assertEquals("DirectoryWatcher watching 0 files in 0 directories", watcher.toString());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && watcherThreadAlive()) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(watcherThreadAlive());
+    }
+
+    private static boolean watcherThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("test-orphan-watcher")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
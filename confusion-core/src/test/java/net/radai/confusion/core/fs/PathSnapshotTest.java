@@ -0,0 +1,78 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.fs;
+
+import net.radai.confusion.core.serializable.SerializableCodec;
+import net.radai.confusion.core.spi.Versioned;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class PathSnapshotTest {
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("test");
+        file = dir.resolve("snapshot");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        PathSnapshot<String> snapshot = new PathSnapshot<>(String.class, file, new SerializableCodec());
+        Assert.assertNull(snapshot.load());
+        snapshot.save("v1", 7);
+        Versioned<String> loaded = snapshot.load();
+        Assert.assertEquals("v1", loaded.getValue());
+        Assert.assertEquals(7, loaded.getVersion());
+        snapshot.save("v2", Versioned.UNKNOWN);
+        Assert.assertEquals("v2", snapshot.load().getValue());
+        Assert.assertFalse(snapshot.load().isVersioned());
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(1, files.count()); //no temp files left behind
+        }
+        snapshot.save(null, 8);
+        Assert.assertFalse(Files.exists(file));
+        Assert.assertNull(snapshot.load());
+    }
+
+    @Test
+    public void testCorruptSnapshotIgnored() throws Exception {
+        PathSnapshot<String> snapshot = new PathSnapshot<>(String.class, file, new SerializableCodec());
+        snapshot.save("v1", 7);
+        byte[] contents = Files.readAllBytes(file);
+        contents[contents.length - 1] ^= 1;
+        Files.write(file, contents);
+        Assert.assertNull(snapshot.load());
+
+        Files.write(file, Arrays.copyOf(contents, contents.length / 2)); //truncated
+        Assert.assertNull(snapshot.load());
+
+        Files.write(file, "not a snapshot".getBytes("UTF-8"));
+        Assert.assertNull(snapshot.load());
+    }
+}
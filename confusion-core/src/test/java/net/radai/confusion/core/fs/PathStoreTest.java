@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Radai Rosenblatt
@@ -45,7 +46,11 @@ public class PathStoreTest extends AbstractBinaryStoreTest {
 
     @Override
     protected PathStore buildStore() throws Exception {
-        return new PathStore(file);
+        return buildStore(file);
+    }
+
+    protected PathStore buildStore(Path path) throws Exception {
+        return new PathStore(path);
     }
 
     @Override
@@ -84,6 +89,83 @@ public class PathStoreTest extends AbstractBinaryStoreTest {
         Assert.assertNull(store.read());
     }
 
+    @Test
+    public void testNoLockFileLeftBehind() throws Exception {
+        PathStore store = buildStore();
+        store.write(new byte[] {1});
+        long version = store.readVersioned().getVersion();
+        store.write(new byte[] {2}, version);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path sibling : stream) {
+                Assert.assertEquals(file, sibling);
+            }
+        }
+    }
+
+    @Test
+    public void testAtomicWritesNotDelayed() throws Exception {
+        TracingBinaryStoreListener listener = new TracingBinaryStoreListener();
+        PathStore store = buildStore();
+        store.setQuiescence(new AtomicRenameQuiescence()); //opt in, the default waits for every change to settle
+        store.register(listener);
+        store.start();
+        try {
+            long start = System.nanoTime();
+            store.write(random());
+            waitForQuiesce();
+            Assert.assertEquals(1, listener.getNumEvents());
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(listener.getLatestNanoTime() - start);
+            Assert.assertTrue("took " + tookMillis, tookMillis < FSUtil.MIN_DELAY_MILLIS); //faster than any fixed wait
+
+            //in place modifications still wait for the file to settle
+            try (OutputStream os = Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                start = System.nanoTime();
+                os.write(1);
+            }
+            waitForQuiesce();
+            Assert.assertEquals(2, listener.getNumEvents());
+            tookMillis = TimeUnit.NANOSECONDS.toMillis(listener.getLatestNanoTime() - start);
+            Assert.assertTrue("took " + tookMillis, tookMillis >= FSUtil.MIN_DELAY_MILLIS);
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testKubernetesSymlinkSwap() throws Exception {
+        //the layout of a configmap volume
+        Files.write(Files.createDirectory(dir.resolve("..gen1")).resolve("conf"), new byte[]{1});
+        Files.createSymbolicLink(dir.resolve(PathStore.KUBERNETES_DATA_LINK), Paths.get("..gen1"));
+        Files.createSymbolicLink(dir.resolve("conf"), Paths.get(PathStore.KUBERNETES_DATA_LINK, "conf"));
+
+        TracingBinaryStoreListener listener = new TracingBinaryStoreListener();
+        PathStore store = buildStore(dir.resolve("conf"));
+        store.setSwappedLink(PathStore.KUBERNETES_DATA_LINK);
+        store.register(listener);
+        store.start();
+        try {
+            Assert.assertArrayEquals(new byte[]{1}, store.read());
+            for (byte generation = 2; generation < 5; generation++) {
+                //the way the kubelet updates it
+                Path previous = Files.readSymbolicLink(dir.resolve(PathStore.KUBERNETES_DATA_LINK));
+                Files.write(Files.createDirectory(dir.resolve("..gen" + generation)).resolve("conf"), new byte[]{generation});
+                Files.createSymbolicLink(dir.resolve("..data_tmp"), Paths.get("..gen" + generation));
+                long start = System.nanoTime();
+                Files.move(dir.resolve("..data_tmp"), dir.resolve(PathStore.KUBERNETES_DATA_LINK), StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(dir.resolve(previous).resolve("conf"));
+                Files.delete(dir.resolve(previous));
+                waitForQuiesce();
+
+                Assert.assertEquals(generation - 1, listener.getNumEvents()); //exactly once per swap
+                Assert.assertArrayEquals(new byte[]{generation}, listener.getLatestEvent());
+                long tookMillis = TimeUnit.NANOSECONDS.toMillis(listener.getLatestNanoTime() - start);
+                Assert.assertTrue("took " + tookMillis, tookMillis < FSUtil.MIN_DELAY_MILLIS);
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
     @Test
     public void testLateDirectoryCreation() throws Exception {
         Files.delete(dir);
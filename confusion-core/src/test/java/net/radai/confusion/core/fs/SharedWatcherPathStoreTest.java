@@ -0,0 +1,106 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.radai.confusion.core.fs;
+
+import net.radai.confusion.core.spi.store.TracingBinaryStoreListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by Radai Rosenblatt
+ * the same tests, with stores sharing the process-wide watcher instead of running their own poll threads
+ */
+public class SharedWatcherPathStoreTest extends PathStoreTest {
+
+    @Override
+    protected PathStore buildStore(Path path) throws Exception {
+        PathStore store = super.buildStore(path);
+        store.setWatcher(DirectoryWatcher.shared());
+        return store;
+    }
+
+    @Test
+    public void testManyFilesInOneDirectory() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+        int count = 50;
+        List<PathStore> stores = new ArrayList<>();
+        List<TracingBinaryStoreListener> listeners = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                PathStore store = new PathStore(dir.resolve("conf" + i));
+                store.setWatcher(DirectoryWatcher.shared());
+                TracingBinaryStoreListener listener = new TracingBinaryStoreListener();
+                store.register(listener);
+                store.start();
+                stores.add(store);
+                listeners.add(listener);
+            }
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                Assert.assertFalse(thread.getName(), thread.getName().startsWith("PathStore for " + dir)); //no poll threads
+            }
+            for (int i = 0; i < count; i += 2) {
+                stores.get(i).write(("conf" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            FsTestUtil.waitForFsQuiesce();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (System.currentTimeMillis() < deadline && listeners.get(count - 2).getNumEvents() == 0) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < count; i++) {
+                TracingBinaryStoreListener listener = listeners.get(i);
+                if (i % 2 == 0) {
+                    Assert.assertEquals("conf" + i, new String(listener.getLatestEvent(), StandardCharsets.UTF_8));
+                } else {
+                    Assert.assertEquals(0, listener.getNumEvents()); //only told about its own file
+                }
+            }
+        } finally {
+            for (PathStore store : stores) {
+                store.stop();
+            }
+        }
+        Assert.assertTrue(DirectoryWatcher.shared().toString().contains("watching 0 files"));
+    }
+
+    @Test
+    public void testFailedStartLeavesStoreStopped() throws Exception {
+        PathStore store = new PathStore(Paths.get("/").toAbsolutePath()); //root has no parent directory to watch
+        store.setWatcher(DirectoryWatcher.shared());
+        try {
+            store.start();
+            Assert.fail("expected to fail");
+        } catch (IllegalArgumentException expected) {
+            //expected
+        }
+        store.setWatcher(null); //would throw if still considered started
+        try {
+            store.stop();
+            Assert.fail("expected to fail");
+        } catch (IllegalStateException expected) {
+            //expected
+        }
+    }
+}
@@ -19,7 +19,6 @@ package net.radai.confusion.core.inmem;
 
 import net.radai.confusion.core.spi.store.AbstractBinaryStoreTest;
 import net.radai.confusion.core.spi.store.BinaryStore;
-import org.springframework.test.util.ReflectionTestUtils;
 
 /**
  * Created by Radai Rosenblatt
@@ -32,18 +31,11 @@ public class InMemBinaryStoreTest extends AbstractBinaryStoreTest {
 
     @Override
     protected void writeUnderlying(BinaryStore store, byte[] value) throws Exception {
-        InMemBinaryStore inMem = (InMemBinaryStore) store;
-        ReflectionTestUtils.setField(inMem, "payload", value);
-        final Object lock = ReflectionTestUtils.getField(inMem, "lock");
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (lock) {
-            lock.notifyAll();
-        }
+        ((InMemBinaryStore) store).writeUnderlying(value);
     }
 
     @Override
     protected byte[] readUnderlying(BinaryStore store) throws Exception {
-        InMemBinaryStore inMem = (InMemBinaryStore) store;
-        return (byte[]) ReflectionTestUtils.getField(inMem, "payload");
+        return ((InMemBinaryStore) store).readUnderlying();
     }
 }
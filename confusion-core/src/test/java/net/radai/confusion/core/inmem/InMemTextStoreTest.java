@@ -19,7 +19,6 @@ package net.radai.confusion.core.inmem;
 
 import net.radai.confusion.core.spi.store.AbstractTextStoreTest;
 import net.radai.confusion.core.spi.store.TextStore;
-import org.springframework.test.util.ReflectionTestUtils;
 
 /**
  * Created by Radai Rosenblatt
@@ -32,18 +31,11 @@ public class InMemTextStoreTest extends AbstractTextStoreTest {
 
     @Override
     protected void writeUnderlying(TextStore store, String value) throws Exception {
-        InMemTextStore inMem = (InMemTextStore) store;
-        ReflectionTestUtils.setField(inMem, "payload", value);
-        final Object lock = ReflectionTestUtils.getField(inMem, "lock");
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (lock) {
-            lock.notifyAll();
-        }
+        ((InMemTextStore) store).writeUnderlying(value);
     }
 
     @Override
     protected String readUnderlying(TextStore store) throws Exception {
-        InMemTextStore inMem = (InMemTextStore) store;
-        return (String) ReflectionTestUtils.getField(inMem, "payload");
+        return ((InMemTextStore) store).readUnderlying();
     }
 }
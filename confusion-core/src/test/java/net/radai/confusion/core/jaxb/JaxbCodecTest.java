@@ -18,15 +18,29 @@
 package net.radai.confusion.core.jaxb;
 
 import net.radai.confusion.core.jaxb.JaxbCodec;
+import net.radai.confusion.core.inmem.InMemBinaryStore;
 import net.radai.confusion.core.spi.codec.AbstractTextCodecTest;
+import net.radai.confusion.core.spi.source.Source;
+import net.radai.confusion.core.spi.source.Sources;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.xml.XMLConstants;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created by Radai Rosenblatt
@@ -56,6 +70,72 @@ public class JaxbCodecTest extends AbstractTextCodecTest {
         Assert.assertEquals(original, deserialized);
     }
 
+    @Test
+    public void testConcurrentRoundTrips() throws Exception {
+        JaxbCodec codec = new JaxbCodec(null, 2); //smaller than the number of threads on purpose
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final int id = i;
+                results.add(executor.submit(() -> {
+                    JaxbTestClass original = new JaxbTestClass();
+                    original.id = id;
+                    original.uuid = UUID.randomUUID();
+                    return original.equals(codec.parse(JaxbTestClass.class, codec.serialize(original)));
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSchemaValidation() throws Exception {
+        String xsd = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+                "<xs:element name=\"outer\"><xs:complexType>" +
+                "<xs:sequence><xs:element name=\"uuid\" type=\"xs:string\"/></xs:sequence>" +
+                "<xs:attribute name=\"id\" type=\"xs:int\" use=\"required\"/>" +
+                "</xs:complexType></xs:element></xs:schema>";
+        Schema schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(new StringReader(xsd)));
+        JaxbCodec codec = new JaxbCodec(schema);
+
+        JaxbTestClass original = new JaxbTestClass();
+        original.id = 7;
+        original.uuid = UUID.randomUUID();
+        Assert.assertEquals(original, codec.parse(JaxbTestClass.class, codec.serialize(original)));
+
+        try {
+            codec.parse(JaxbTestClass.class, "<outer><uuid>" + UUID.randomUUID() + "</uuid></outer>"); //missing id
+            Assert.fail("expected to fail schema validation");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        //codec should still be usable after a failure
+        Assert.assertEquals(original, codec.parse(JaxbTestClass.class, codec.serialize(original)));
+    }
+
+    @Test
+    public void testParseOverBinaryStore() throws Exception {
+        JaxbCodec codec = new JaxbCodec() {
+            @Override
+            public <T> T parse(Class<T> beanClass, String from) {
+                throw new AssertionError("should not be decoded into a String");
+            }
+        };
+        InMemBinaryStore store = new InMemBinaryStore();
+        store.write(("<outer id=\"7\"><uuid>" + new UUID(0, 42) + "</uuid></outer><!-- \u00e9\u4e2d -->").getBytes(StandardCharsets.UTF_8));
+        Source<JaxbTestClass> source = Sources.from(JaxbTestClass.class, store, codec);
+        JaxbTestClass expected = new JaxbTestClass();
+        expected.id = 7;
+        expected.uuid = new UUID(0, 42);
+        Assert.assertEquals(expected, source.readVersioned().getValue());
+        Assert.assertEquals(expected, source.read());
+    }
+
     @XmlRootElement(name = "outer")
     public static class JaxbTestClass {
         @XmlAttribute
@@ -0,0 +1,129 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.metrics;
+
+import net.radai.confusion.core.Confusion;
+import net.radai.confusion.core.SimpleConfigurationService;
+import net.radai.confusion.core.inmem.InMemBinaryStore;
+import net.radai.confusion.core.serializable.SerializableCodec;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+import net.radai.confusion.core.util.Histogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class SimpleConfigurationMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getValueAtQuantile(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000, histogram.getMax());
+        Assert.assertEquals(500.5, histogram.getMean(), 0.001);
+        assertWithin(500, histogram.getValueAtQuantile(0.5), 0.125);
+        assertWithin(990, histogram.getValueAtQuantile(0.99), 0.125);
+        Assert.assertEquals(1000, histogram.getValueAtQuantile(1));
+        Assert.assertEquals(1, histogram.getValueAtQuantile(0));
+
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtQuantile(1));
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        InMemBinaryStore store = new InMemBinaryStore();
+        SerializableCodec codec = new SerializableCodec();
+        store.write(codec.serialize("v1"));
+        SimpleConfigurationService<String> service = Confusion.create(String.class, store, codec);
+        SimpleConfigurationMetrics metrics = new SimpleConfigurationMetrics();
+        service.setMetrics(metrics);
+        service.setDeduplicate(true);
+        service.start();
+        try {
+            store.write(codec.serialize("v2"));
+            Thread.sleep(100); //let the change propagate
+            store.write(codec.serialize("v2")); //identical
+            Thread.sleep(100);
+            Assert.assertEquals("v2", service.getConfiguration());
+        } finally {
+            service.stop();
+        }
+        Assert.assertEquals(1, metrics.getTimes(ConfigurationMetrics.Stage.READ).getCount());
+        Assert.assertEquals(2, metrics.getTimes(ConfigurationMetrics.Stage.DECODE).getCount());
+        Assert.assertEquals(2, metrics.getTimes(ConfigurationMetrics.Stage.VALIDATE).getCount());
+        Assert.assertEquals(1, metrics.getTimes(ConfigurationMetrics.Stage.DISPATCH).getCount());
+        Assert.assertEquals(2, metrics.getAcceptedChanges()); //initial + v2
+        Assert.assertEquals(0, metrics.getRejectedChanges());
+        Assert.assertEquals(1, metrics.getDeduplicatedChanges());
+        Assert.assertEquals(3, metrics.getPayloadSizes().getCount());
+    }
+
+    @Test
+    public void testFailedDecodeIsTimed() throws Exception {
+        InMemBinaryStore store = new InMemBinaryStore();
+        SerializableCodec codec = new SerializableCodec();
+        store.write(codec.serialize("v1"));
+        SimpleConfigurationService<String> service = Confusion.create(String.class, store, codec);
+        SimpleConfigurationMetrics metrics = new SimpleConfigurationMetrics();
+        service.setMetrics(metrics);
+        service.start();
+        try {
+            store.write(new byte[] {1, 2, 3}); //not a valid serialized object
+            Thread.sleep(100); //let the change propagate
+            Assert.assertEquals("v1", service.getConfiguration());
+        } finally {
+            service.stop();
+        }
+        Assert.assertEquals(2, metrics.getTimes(ConfigurationMetrics.Stage.DECODE).getCount());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        SimpleConfigurationMetrics metrics = new SimpleConfigurationMetrics();
+        metrics.recordTime(ConfigurationMetrics.Stage.VALIDATE, 1000);
+        metrics.recordChange(ConfigurationMetrics.Change.REJECTED);
+        Assert.assertEquals(-1, metrics.getMillisSinceLastPoll());
+        metrics.recordPoll();
+        ObjectName name = metrics.registerMBean("test/jmx");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(1L, server.getAttribute(name, "RejectedChanges"));
+            CompositeData validateTimes = (CompositeData) server.getAttribute(name, "ValidateTimes");
+            Assert.assertEquals(1L, validateTimes.get("count"));
+            Assert.assertTrue((Long) server.getAttribute(name, "MillisSinceLastPoll") >= 0);
+        } finally {
+            metrics.unregisterMBean();
+        }
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    private static void assertWithin(long expected, long actual, double tolerance) {
+        Assert.assertTrue("expected ~" + expected + " but got " + actual, Math.abs(actual - expected) <= expected * tolerance);
+    }
+}
@@ -17,11 +17,15 @@
 
 package net.radai.confusion.core.spi.store;
 
+import net.radai.confusion.core.api.VersionConflictException;
 import net.radai.confusion.core.spi.PayloadType;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.test.RandomUtil;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
@@ -47,6 +51,18 @@ public abstract class AbstractBinaryStoreTest extends AbstractStoreTest {
         Assert.assertArrayEquals(data, read);
     }
 
+    @Test
+    public void testReadBuffer() throws Exception {
+        byte[] data = random();
+        BinaryStore store = buildStore();
+        writeUnderlying(store, data);
+        Versioned<ByteBuffer> read = store.readBuffer();
+        Assert.assertEquals(ByteBuffer.wrap(data), read.getValue());
+        Assert.assertEquals(store.readVersioned().getVersion(), read.getVersion());
+        writeUnderlying(store, null);
+        Assert.assertNull(store.readBuffer().getValue());
+    }
+
     @Test
     public void testReadNull() throws Exception {
         BinaryStore store = buildStore();
@@ -184,6 +200,36 @@ public abstract class AbstractBinaryStoreTest extends AbstractStoreTest {
         }
     }
 
+    @Test
+    public void testConditionalWrite() throws Exception {
+        BinaryStore store = buildStore();
+        Assume.assumeTrue(store.supportsVersions());
+        Versioned<byte[]> initial = store.readVersioned();
+        byte[] data = random();
+        store.write(data, initial.getVersion());
+        Versioned<byte[]> current = store.readVersioned();
+        Assert.assertArrayEquals(data, current.getValue());
+        Assert.assertNotEquals(initial.getVersion(), current.getVersion());
+
+        //stale version
+        try {
+            store.write(random(), initial.getVersion());
+            Assert.fail("expected a conflict");
+        } catch (VersionConflictException expected) {
+            //expected
+        }
+        Assert.assertArrayEquals(data, store.read());
+
+        //someone else modified the store
+        writeUnderlying(store, random());
+        try {
+            store.write(random(), current.getVersion());
+            Assert.fail("expected a conflict");
+        } catch (VersionConflictException expected) {
+            //expected
+        }
+    }
+
     protected byte[] random() {
         return RandomUtil.randomBlob(new Random());
     }
@@ -17,9 +17,12 @@
 
 package net.radai.confusion.core.spi.store;
 
+import net.radai.confusion.core.api.VersionConflictException;
 import net.radai.confusion.core.spi.PayloadType;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.test.RandomUtil;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import java.util.Random;
@@ -178,6 +181,36 @@ public abstract class AbstractTextStoreTest extends AbstractStoreTest {
         }
     }
 
+    @Test
+    public void testConditionalWrite() throws Exception {
+        TextStore store = buildStore();
+        Assume.assumeTrue(store.supportsVersions());
+        Versioned<String> initial = store.readVersioned();
+        String data = random();
+        store.write(data, initial.getVersion());
+        Versioned<String> current = store.readVersioned();
+        Assert.assertEquals(data, current.getValue());
+        Assert.assertNotEquals(initial.getVersion(), current.getVersion());
+
+        //stale version
+        try {
+            store.write(random(), initial.getVersion());
+            Assert.fail("expected a conflict");
+        } catch (VersionConflictException expected) {
+            //expected
+        }
+        Assert.assertEquals(data, store.read());
+
+        //someone else modified the store
+        writeUnderlying(store, random());
+        try {
+            store.write(random(), current.getVersion());
+            Assert.fail("expected a conflict");
+        } catch (VersionConflictException expected) {
+            //expected
+        }
+    }
+
     protected String random() {
         return RandomUtil.randomString(new Random());
     }
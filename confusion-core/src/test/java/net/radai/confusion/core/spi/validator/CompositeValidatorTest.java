@@ -0,0 +1,130 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.spi.validator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class CompositeValidatorTest {
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testAllValid() throws Exception {
+        Validator<Void> slow = (currConf, discoveredConf) -> {
+            sleep(500);
+            return new ValidationResults<>(true);
+        };
+        Validator<Void> alsoSlow = (currConf, discoveredConf) -> {
+            sleep(500);
+            return new ValidationResults<>(true);
+        };
+        Validator<Void> notNull = new NotNullValidator();
+        CompositeValidator composite = new CompositeValidator(executor).add(slow).add(alsoSlow).add(notNull);
+
+        long start = System.nanoTime();
+        ValidationResults<Map<Validator<?>, ValidationResults<?>>> results = composite.validate(null, "conf");
+        long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(results.isValid());
+        Assert.assertEquals(Arrays.asList(slow, alsoSlow, notNull), Arrays.asList(results.getValidatorOutput().keySet().toArray()));
+        Assert.assertTrue("took " + tookMillis, tookMillis < 950); //in parallel
+
+        Assert.assertFalse(composite.validate(null, null).isValid());
+    }
+
+    @Test
+    public void testStopsOnFirstFailure() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Validator<Void> stuck = (currConf, discoveredConf) -> {
+            running.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return new ValidationResults<>(true);
+        };
+        Validator<Void> failing = (currConf, discoveredConf) -> {
+            try {
+                running.await(); //otherwise stuck may be cancelled before it ever ran
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ValidationResults<>(false);
+        };
+        CompositeValidator composite = new CompositeValidator(executor).add(stuck).add(failing);
+
+        ValidationResults<Map<Validator<?>, ValidationResults<?>>> results = composite.validate(null, "conf");
+        Assert.assertFalse(results.isValid());
+        Assert.assertFalse(results.getValidatorOutput().containsKey(stuck));
+        Assert.assertFalse(results.getValidatorOutput().get(failing).isValid());
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS)); //cancelled
+    }
+
+    @Test
+    public void testTimeBudget() throws Exception {
+        Validator<Void> slow = (currConf, discoveredConf) -> {
+            sleep(TimeUnit.SECONDS.toMillis(10));
+            return new ValidationResults<>(true);
+        };
+        Validator<Void> throwing = (currConf, discoveredConf) -> {
+            throw new IllegalStateException("boom");
+        };
+        long start = System.nanoTime();
+        ValidationResults<Map<Validator<?>, ValidationResults<?>>> results = new CompositeValidator(executor)
+                .add(slow, 100, TimeUnit.MILLISECONDS).validate(null, "conf");
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        Assert.assertFalse(results.isValid());
+        Assert.assertTrue(results.getValidatorOutput().get(slow).getValidatorOutput() instanceof TimeoutException);
+
+        results = new CompositeValidator(executor).add(throwing).validate(null, "conf");
+        Assert.assertFalse(results.isValid());
+        Assert.assertTrue(results.getValidatorOutput().get(throwing).getValidatorOutput() instanceof IllegalStateException);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
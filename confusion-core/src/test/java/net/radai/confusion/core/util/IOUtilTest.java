@@ -0,0 +1,88 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class IOUtilTest {
+
+    @Test
+    public void testReadWithWrongSizeHints() throws Exception {
+        byte[] payload = random(10000);
+        for (int hint : new int[] {0, 1, 9999, 10000, 10001, 50000}) {
+            Assert.assertArrayEquals("hint " + hint, payload, IOUtil.read(new ByteArrayInputStream(payload), hint));
+        }
+        Assert.assertArrayEquals(new byte[0], IOUtil.read(new ByteArrayInputStream(new byte[0]), 10));
+    }
+
+    @Test
+    public void testReadFile() throws Exception {
+        Path dir = Files.createTempDirectory("test");
+        Path file = dir.resolve("file");
+        for (int size : new int[] {0, 100, 2 * 1024 * 1024}) {
+            byte[] payload = random(size);
+            Files.write(file, payload);
+            Assert.assertArrayEquals("size " + size, payload, IOUtil.read(file));
+        }
+        try {
+            IOUtil.read(dir.resolve("nope"));
+            Assert.fail("expected to throw");
+        } catch (NoSuchFileException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testStreamBuffer() throws Exception {
+        byte[] payload = random(10000);
+        ByteBuffer buffer = ByteBuffer.wrap(payload, 100, 5000).slice().asReadOnlyBuffer();
+        buffer.position(10);
+        byte[] expected = Arrays.copyOfRange(payload, 110, 5100);
+        Assert.assertArrayEquals(expected, IOUtil.read(IOUtil.stream(buffer)));
+        Assert.assertEquals(10, buffer.position()); //left as is
+        Assert.assertArrayEquals(expected, IOUtil.read(IOUtil.stream(buffer)));
+    }
+
+    @Test
+    public void testReadReader() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append(i);
+        }
+        Assert.assertEquals(sb.toString(), IOUtil.read(new StringReader(sb.toString())));
+    }
+
+    private static byte[] random(int size) {
+        byte[] payload = new byte[size];
+        new Random().nextBytes(payload);
+        return payload;
+    }
+}
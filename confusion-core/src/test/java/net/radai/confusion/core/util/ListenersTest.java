@@ -0,0 +1,147 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class ListenersTest {
+
+    @Test
+    public void testRegistrationOrder() throws Exception {
+        Listeners<String> listeners = new Listeners<>();
+        listeners.register("a");
+        listeners.registerWeakly("b");
+        listeners.register("c");
+        Assert.assertEquals("abc", collect(listeners));
+
+        listeners.unregister("b");
+        listeners.register("b");
+        Assert.assertEquals("acb", collect(listeners));
+        Assert.assertEquals(3, listeners.size());
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+        Listeners<String> listeners = new Listeners<>();
+        listeners.register("a");
+        try {
+            listeners.registerWeakly(new String("a")); //equal is enough
+            Assert.fail("expected to fail");
+        } catch (IllegalStateException expected) {
+        }
+        listeners.unregister("a");
+        try {
+            listeners.unregister("a");
+            Assert.fail("expected to fail");
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertTrue(listeners.isEmpty());
+    }
+
+    @Test
+    public void testThrowingListener() throws Exception {
+        Listeners<Runnable> listeners = new Listeners<>();
+        List<String> ran = new ArrayList<>();
+        listeners.register(() -> {
+            throw new IllegalStateException("boom");
+        });
+        listeners.register(() -> ran.add("ok"));
+        listeners.forEach(Runnable::run);
+        Assert.assertEquals(1, ran.size());
+    }
+
+    @Test
+    public void testModifiedWhileNotifying() throws Exception {
+        Listeners<Consumer<Listeners<?>>> listeners = new Listeners<>();
+        List<String> ran = new ArrayList<>();
+        Consumer<Listeners<?>> late = l -> ran.add("late");
+        Consumer<Listeners<?>> self = new Consumer<Listeners<?>>() {
+            @Override
+            public void accept(Listeners<?> l) {
+                ran.add("self");
+                listeners.unregister(this);
+                listeners.register(late);
+            }
+        };
+        listeners.register(self);
+        listeners.forEach(l -> l.accept(listeners));
+        Assert.assertEquals("[self]", ran.toString()); //not part of the ongoing notification
+        listeners.forEach(l -> l.accept(listeners));
+        Assert.assertEquals("[self, late]", ran.toString());
+    }
+
+    @Test
+    public void testWeakRegistration() throws Exception {
+        Listeners<Runnable> listeners = new Listeners<>();
+        List<String> ran = new ArrayList<>();
+        Runnable kept = () -> ran.add("kept");
+        listeners.registerWeakly(kept);
+        listeners.registerWeakly(new Runnable() {
+            @Override
+            public void run() {
+                ran.add("dropped");
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (listeners.size() > 1 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, listeners.size());
+        listeners.forEach(Runnable::run);
+        Assert.assertEquals("[kept]", ran.toString());
+        listeners.unregister(kept);
+        Assert.assertTrue(listeners.isEmpty());
+    }
+
+    @Test
+    public void testManyListeners() throws Exception {
+        Listeners<Integer> listeners = new Listeners<>();
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            listeners.register(i);
+        }
+        long[] sum = new long[1];
+        listeners.forEach(i -> sum[0] += i);
+        Assert.assertEquals((long) count * (count - 1) / 2, sum[0]);
+        for (int i = 0; i < count; i += 2) {
+            listeners.unregister(i);
+        }
+        Assert.assertEquals(count / 2, listeners.size());
+        int[] previous = {-1};
+        listeners.forEach(i -> {
+            Assert.assertTrue(i % 2 == 1 && i > previous[0]);
+            previous[0] = i;
+        });
+    }
+
+    private static String collect(Listeners<String> listeners) {
+        StringBuilder sb = new StringBuilder();
+        listeners.forEach(sb::append);
+        return sb.toString();
+    }
+}
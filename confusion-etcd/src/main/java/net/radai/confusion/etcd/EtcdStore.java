@@ -19,8 +19,11 @@ package net.radai.confusion.etcd;
 
 import mousio.etcd4j.EtcdClient;
 import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.requests.EtcdKeyPutRequest;
 import mousio.etcd4j.responses.EtcdException;
 import mousio.etcd4j.responses.EtcdKeysResponse;
+import net.radai.confusion.core.api.VersionConflictException;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.store.AbstractTextStore;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -34,6 +37,11 @@ import java.util.concurrent.TimeoutException;
  * Created by Radai Rosenblatt
  */
 public class EtcdStore extends AbstractTextStore {
+    //see https://coreos.com/etcd/docs/latest/v2/errorcode.html
+    private static final int KEY_NOT_FOUND = 100;
+    private static final int COMPARE_FAILED = 101;
+    private static final int NODE_EXISTS = 105;
+
     private final Logger log = LogManager.getLogger(getClass());
 
     //input
@@ -57,7 +65,7 @@ public class EtcdStore extends AbstractTextStore {
             EtcdKeysResponse response = req.send().get();
             return response.node.value;
         } catch (EtcdException e) {
-            if (e.errorCode == 100) {
+            if (e.errorCode == KEY_NOT_FOUND) {
                 return null;
             }
             throw new IOException(e);
@@ -75,7 +83,7 @@ public class EtcdStore extends AbstractTextStore {
                 client.put(key, payload).send().get();
             }
         } catch (EtcdException e) {
-            if (payload == null && e.errorCode == 100) {
+            if (payload == null && e.errorCode == KEY_NOT_FOUND) {
                 return; //double deletion would do this
             }
             throw new IOException(e);
@@ -86,6 +94,75 @@ public class EtcdStore extends AbstractTextStore {
         }
     }
 
+    /**
+     * versions are etcd's modifiedIndex for the key (0 if the key does not exist)
+     */
+    @Override
+    public Versioned<String> readVersioned() throws IOException {
+        try (EtcdClient client = new EtcdClient(URI.create(uri))) {
+            EtcdKeysResponse response = client.get(key).send().get();
+            return new Versioned<>(response.node.value, response.node.modifiedIndex);
+        } catch (EtcdException e) {
+            if (e.errorCode == KEY_NOT_FOUND) {
+                return new Versioned<>(null, 0);
+            }
+            throw new IOException(e);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * uses etcd's prevIndex (or prevExist=false for version 0) compare-and-swap
+     */
+    @Override
+    public long write(String payload, long expectedVersion) throws IOException {
+        if (expectedVersion < 0) {
+            throw new IllegalArgumentException("illegal version " + expectedVersion);
+        }
+        try (EtcdClient client = new EtcdClient(URI.create(uri))) {
+            if (payload == null) {
+                if (expectedVersion == 0) {
+                    //deleting something we expect to not exist. only need to verify it doesnt
+                    long current = readVersioned().getVersion();
+                    if (current != 0) {
+                        throw new VersionConflictException(toString(), expectedVersion, current);
+                    }
+                } else {
+                    client.delete(key).prevIndex(expectedVersion).send().get();
+                }
+                return 0;
+            }
+            EtcdKeyPutRequest put = client.put(key, payload);
+            if (expectedVersion == 0) {
+                put.prevExist(false);
+            } else {
+                put.prevIndex(expectedVersion);
+            }
+            EtcdKeysResponse response = put.send().get();
+            return response.node.modifiedIndex;
+        } catch (EtcdException e) {
+            if (e.errorCode == COMPARE_FAILED || e.errorCode == NODE_EXISTS || e.errorCode == KEY_NOT_FOUND) {
+                throw new VersionConflictException(toString(), expectedVersion, Versioned.UNKNOWN);
+            }
+            throw new IOException(e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "EtcdStore for " + key + " @ " + uri;
+    }
+
     private class PollRunnable extends AbstractTextStore.TextPollRunnable {
 
         @Override
@@ -94,7 +171,6 @@ public class EtcdStore extends AbstractTextStore {
             boolean isNull = true;
             long lastModified = -1;
             while (!shouldDie()) {
-                markWatching();
                 try (EtcdClient client = new EtcdClient(URI.create(uri))) {
                     while (!shouldDie()) {
                         if (firstSample) { //establish initial state
@@ -107,12 +183,15 @@ public class EtcdStore extends AbstractTextStore {
                                 isNull = true;
                             }
                             firstSample = false;
+                            //only now, so that anything written after start() returns is picked up
+                            markWatching();
                         } else {
                             boolean fire = false;
                             String blob = null;
 
                             try {
                                 EtcdKeysResponse response = client.get(key).timeout(3, TimeUnit.SECONDS).waitForChange(lastModified+1).send().get();
+                                markPolled();
                                 if (lastModified != response.node.modifiedIndex) { //always holds if isNull
                                     fire = true;
                                     lastModified = response.node.modifiedIndex;
@@ -120,6 +199,7 @@ public class EtcdStore extends AbstractTextStore {
                                     isNull = false;
                                 }
                             } catch (EtcdException e) { //can only mean key not found?
+                                markPolled();
                                 if (!isNull) {
                                     fire = true;
                                     lastModified = e.index;
@@ -128,15 +208,17 @@ public class EtcdStore extends AbstractTextStore {
                                 }
                             } catch (TimeoutException e) {
                                 //unchanged
+                                markPolled();
                                 fire = false;
                             }
 
                             if (fire) {
-                                fire(blob);
+                                fire(blob, isNull ? 0 : lastModified);
                             }
                         }
                     }
                 } catch (Exception e) { //we get here if the connection was severed
+                    markWatching(); //dont hold up start() forever
                     log.error("while polling etcd", e);
                 }
             }
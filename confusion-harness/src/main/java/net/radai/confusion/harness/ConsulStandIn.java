@@ -0,0 +1,186 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.radai.confusion.core.util.Threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Created by Radai Rosenblatt
+ * in-process stand-in for consul's http kv api (https://www.consul.io/api/kv.html) - just enough of it for
+ * {@link net.radai.confusion.consul.ConsulStore}: get (including blocking queries), put (including cas) and delete.
+ */
+public class ConsulStandIn implements Closeable {
+    private static final String PREFIX = "/v1/kv/";
+    private static final long MAX_WAIT_MILLIS = 10 * 60 * 1000; //same as consul
+
+    private final Object lock = new Object();
+    private final Map<String, Entry> kv = new HashMap<>(); //guarded by lock
+    private long index = 1; //consul's raft index. guarded by lock
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    static {
+        //the jdk's http server delays small writes (nagle) by default, real servers do not
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public ConsulStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        //blocking queries park a thread each
+        executor = Executors.newCachedThreadPool(Threads.daemonThreadFactory("consul-stand-in"));
+        server.setExecutor(executor);
+        server.createContext(PREFIX, this::handle);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String key = exchange.getRequestURI().getPath().substring(PREFIX.length());
+            Map<String, String> params = Http.params(exchange.getRequestURI().getRawQuery());
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    get(exchange, key, params);
+                    break;
+                case "PUT":
+                    put(exchange, key, params, Http.body(exchange));
+                    break;
+                case "DELETE":
+                    delete(exchange, key);
+                    break;
+                default:
+                    exchange.sendResponseHeaders(405, -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void get(HttpExchange exchange, String key, Map<String, String> params) throws IOException, InterruptedException {
+        Entry entry;
+        long currentIndex;
+        synchronized (lock) {
+            if (params.containsKey("index")) {
+                //blocking query - wait until the key's index moves past the given one (or time out)
+                long waitFor = Long.parseLong(params.get("index"));
+                long waitMillis = params.containsKey("wait") ? Math.min(Http.parseMillis(params.get("wait")), MAX_WAIT_MILLIS) : MAX_WAIT_MILLIS;
+                long deadline = System.currentTimeMillis() + waitMillis;
+                long remaining;
+                while (indexOf(key) <= waitFor && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    lock.wait(remaining);
+                }
+            }
+            entry = kv.get(key);
+            currentIndex = indexOf(key);
+        }
+        headers(exchange, currentIndex);
+        if (entry == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        String value = entry.value.length == 0 ? null : Base64.getEncoder().encodeToString(entry.value);
+        Http.respond(exchange, 200, "[{\"LockIndex\":0,\"Key\":" + Http.quote(key) + ",\"Flags\":0,\"Value\":" + Http.quote(value)
+                + ",\"CreateIndex\":" + entry.createIndex + ",\"ModifyIndex\":" + entry.modifyIndex + "}]");
+    }
+
+    private void put(HttpExchange exchange, String key, Map<String, String> params, byte[] value) throws IOException {
+        boolean success;
+        long currentIndex;
+        synchronized (lock) {
+            Entry existing = kv.get(key);
+            String cas = params.get("cas");
+            if (cas != null) {
+                long expected = Long.parseLong(cas);
+                success = expected == 0 ? existing == null : existing != null && existing.modifyIndex == expected;
+            } else {
+                success = true;
+            }
+            if (success) {
+                index++;
+                kv.put(key, new Entry(value, existing == null ? index : existing.createIndex, index));
+                lock.notifyAll();
+            }
+            currentIndex = index;
+        }
+        headers(exchange, currentIndex);
+        Http.respond(exchange, 200, String.valueOf(success));
+    }
+
+    private void delete(HttpExchange exchange, String key) throws IOException {
+        long currentIndex;
+        synchronized (lock) {
+            if (kv.remove(key) != null) {
+                index++;
+                lock.notifyAll();
+            }
+            currentIndex = index;
+        }
+        headers(exchange, currentIndex);
+        Http.respond(exchange, 200, "true");
+    }
+
+    private long indexOf(String key) { //must be called while holding lock
+        Entry entry = kv.get(key);
+        return entry == null ? index : entry.modifyIndex;
+    }
+
+    private static void headers(HttpExchange exchange, long index) {
+        exchange.getResponseHeaders().set("X-Consul-Index", String.valueOf(index));
+        exchange.getResponseHeaders().set("X-Consul-Knownleader", "true");
+        exchange.getResponseHeaders().set("X-Consul-Lastcontact", "0");
+    }
+
+    @Override
+    public String toString() {
+        return "consul stand-in @ localhost:" + getPort();
+    }
+
+    private static class Entry {
+        private final byte[] value;
+        private final long createIndex;
+        private final long modifyIndex;
+
+        private Entry(byte[] value, long createIndex, long modifyIndex) {
+            this.value = value;
+            this.createIndex = createIndex;
+            this.modifyIndex = modifyIndex;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.harness;
+
+import kafka.admin.AdminUtils;
+import kafka.server.KafkaServerStartable;
+import kafka.utils.ZKStringSerializer$;
+import kafka.utils.ZkUtils;
+import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.ZkConnection;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Created by Radai Rosenblatt
+ * a single kafka broker (and the zookeeper it needs) running in-process, over temporary directories
+ */
+public class EmbeddedKafka implements Closeable {
+    private final Path dir;
+    private final ZooKeeperServer zookeeper;
+    private final NIOServerCnxnFactory zookeeperConnections;
+    private final KafkaServerStartable broker;
+    private final int port;
+
+    public EmbeddedKafka() throws IOException, InterruptedException {
+        dir = Files.createTempDirectory("confusion-kafka");
+        zookeeper = new ZooKeeperServer(dir.resolve("zookeeper").toFile(), dir.resolve("zookeeper").toFile(), 500);
+        zookeeperConnections = new NIOServerCnxnFactory();
+        zookeeperConnections.configure(new InetSocketAddress("localhost", 0), 64);
+        zookeeperConnections.startup(zookeeper);
+
+        port = freePort();
+        Properties props = new Properties();
+        props.setProperty("broker.id", "0");
+        props.setProperty("host.name", "localhost");
+        props.setProperty("port", String.valueOf(port));
+        props.setProperty("zookeeper.connect", getZookeeperAddress());
+        props.setProperty("log.dirs", dir.resolve("kafka").toString());
+        props.setProperty("num.partitions", "1");
+        props.setProperty("offsets.topic.replication.factor", "1");
+        props.setProperty("message.max.bytes", String.valueOf(2 * 1024 * 1024));
+        props.setProperty("replica.fetch.max.bytes", String.valueOf(2 * 1024 * 1024));
+        broker = KafkaServerStartable.fromProps(props);
+        broker.startup();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getZookeeperAddress() {
+        return "localhost:" + zookeeperConnections.getLocalPort();
+    }
+
+    /**
+     * creates a single-partition topic, and waits for it to become available
+     */
+    public void createTopic(String topic) throws InterruptedException {
+        ZkClient zkClient = new ZkClient(getZookeeperAddress(), 5000, 5000, ZKStringSerializer$.MODULE$);
+        try {
+            ZkUtils zkUtils = new ZkUtils(zkClient, new ZkConnection(getZookeeperAddress()), false);
+            AdminUtils.createTopic(zkUtils, topic, 1, 1, new Properties());
+        } finally {
+            zkClient.close();
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        Properties props = new Properties();
+        props.setProperty("bootstrap.servers", "localhost:" + port);
+        props.setProperty("key.deserializer", StringDeserializer.class.getName());
+        props.setProperty("value.deserializer", ByteArrayDeserializer.class.getName());
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props)) {
+            while (true) {
+                List<PartitionInfo> partitions = consumer.partitionsFor(topic);
+                if (partitions != null && partitions.size() == 1 && partitions.get(0).leader() != null) {
+                    return;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("topic " + topic + " did not become available");
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        broker.shutdown();
+        broker.awaitShutdown();
+        zookeeperConnections.shutdown();
+        zookeeper.shutdown();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "embedded kafka @ localhost:" + port;
+    }
+}
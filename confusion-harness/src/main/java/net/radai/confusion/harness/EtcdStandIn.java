@@ -0,0 +1,243 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.radai.confusion.core.util.Threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Created by Radai Rosenblatt
+ * in-process stand-in for etcd's v2 http keys api (https://coreos.com/etcd/docs/latest/v2/api.html) - just enough
+ * of it for {@link net.radai.confusion.etcd.EtcdStore}: get (including waits), put (including prevExist/prevIndex)
+ * and delete. unlike etcd, no event history is kept: a wait for an index that has already passed returns the
+ * latest event for the key rather than the first one at or after that index.
+ */
+public class EtcdStandIn implements Closeable {
+    private static final String PREFIX = "/v2/keys/";
+    //see https://coreos.com/etcd/docs/latest/v2/errorcode.html
+    private static final int KEY_NOT_FOUND = 100;
+    private static final int COMPARE_FAILED = 101;
+    private static final int NODE_EXISTS = 105;
+    private static final long MAX_WAIT_MILLIS = 60 * 1000;
+
+    private final Object lock = new Object();
+    private final Map<String, Node> nodes = new HashMap<>(); //latest event per key, deletions included. guarded by lock
+    private long index = 1; //guarded by lock
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    static {
+        //the jdk's http server delays small writes (nagle) by default, real servers do not
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public EtcdStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        //waits park a thread each
+        executor = Executors.newCachedThreadPool(Threads.daemonThreadFactory("etcd-stand-in"));
+        server.setExecutor(executor);
+        server.createContext(PREFIX, this::handle);
+        server.start();
+    }
+
+    public String getUri() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String key = "/" + exchange.getRequestURI().getPath().substring(PREFIX.length());
+            Map<String, String> params = Http.params(exchange.getRequestURI().getRawQuery());
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    get(exchange, key, params);
+                    break;
+                case "PUT":
+                case "POST":
+                    params.putAll(Http.params(new String(Http.body(exchange), StandardCharsets.UTF_8)));
+                    put(exchange, key, params);
+                    break;
+                case "DELETE":
+                    delete(exchange, key, params);
+                    break;
+                default:
+                    exchange.sendResponseHeaders(405, -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void get(HttpExchange exchange, String key, Map<String, String> params) throws IOException, InterruptedException {
+        Node node;
+        long currentIndex;
+        boolean waited = "true".equals(params.get("wait"));
+        synchronized (lock) {
+            if (waited) {
+                long waitIndex = params.containsKey("waitIndex") ? Long.parseLong(params.get("waitIndex")) : index + 1;
+                long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+                long remaining;
+                while (modifiedIndexOf(key) < waitIndex && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    lock.wait(remaining);
+                }
+                waited = modifiedIndexOf(key) >= waitIndex;
+            }
+            node = nodes.get(key);
+            currentIndex = index;
+        }
+        if (waited) {
+            respond(exchange, 200, currentIndex, node.action, node, null);
+        } else if (node == null || node.deleted()) {
+            error(exchange, 404, currentIndex, KEY_NOT_FOUND, "Key not found", key);
+        } else {
+            respond(exchange, 200, currentIndex, "get", node, null);
+        }
+    }
+
+    private void put(HttpExchange exchange, String key, Map<String, String> params) throws IOException {
+        synchronized (lock) {
+            Node existing = live(key);
+            String prevIndex = params.get("prevIndex");
+            if ("false".equals(params.get("prevExist")) && existing != null) {
+                error(exchange, 412, index, NODE_EXISTS, "Key already exists", key);
+                return;
+            }
+            if (prevIndex != null) {
+                if (existing == null) {
+                    error(exchange, 404, index, KEY_NOT_FOUND, "Key not found", key);
+                    return;
+                }
+                if (existing.modifiedIndex != Long.parseLong(prevIndex)) {
+                    error(exchange, 412, index, COMPARE_FAILED, "Compare failed", "[" + prevIndex + " != " + existing.modifiedIndex + "]");
+                    return;
+                }
+            }
+            index++;
+            String action = prevIndex != null ? "compareAndSwap" : existing == null ? "create" : "set";
+            Node node = new Node(key, action, params.get("value"), existing == null ? index : existing.createdIndex, index);
+            nodes.put(key, node);
+            lock.notifyAll();
+            respond(exchange, existing == null ? 201 : 200, index, action, node, existing);
+        }
+    }
+
+    private void delete(HttpExchange exchange, String key, Map<String, String> params) throws IOException {
+        synchronized (lock) {
+            Node existing = live(key);
+            if (existing == null) {
+                error(exchange, 404, index, KEY_NOT_FOUND, "Key not found", key);
+                return;
+            }
+            String prevIndex = params.get("prevIndex");
+            if (prevIndex != null && existing.modifiedIndex != Long.parseLong(prevIndex)) {
+                error(exchange, 412, index, COMPARE_FAILED, "Compare failed", "[" + prevIndex + " != " + existing.modifiedIndex + "]");
+                return;
+            }
+            index++;
+            Node node = new Node(key, prevIndex != null ? "compareAndDelete" : "delete", null, existing.createdIndex, index);
+            nodes.put(key, node);
+            lock.notifyAll();
+            respond(exchange, 200, index, node.action, node, existing);
+        }
+    }
+
+    private Node live(String key) { //must be called while holding lock
+        Node node = nodes.get(key);
+        return node == null || node.deleted() ? null : node;
+    }
+
+    private long modifiedIndexOf(String key) { //must be called while holding lock
+        Node node = nodes.get(key);
+        return node == null ? 0 : node.modifiedIndex;
+    }
+
+    private static void respond(HttpExchange exchange, int status, long index, String action, Node node, Node prevNode) throws IOException {
+        headers(exchange, index);
+        StringBuilder json = new StringBuilder("{\"action\":").append(Http.quote(action)).append(",\"node\":");
+        node.toJson(json);
+        if (prevNode != null) {
+            json.append(",\"prevNode\":");
+            prevNode.toJson(json);
+        }
+        Http.respond(exchange, status, json.append('}').toString());
+    }
+
+    private static void error(HttpExchange exchange, int status, long index, int errorCode, String message, String cause) throws IOException {
+        headers(exchange, index);
+        Http.respond(exchange, status, "{\"errorCode\":" + errorCode + ",\"message\":" + Http.quote(message)
+                + ",\"cause\":" + Http.quote(cause) + ",\"index\":" + index + "}");
+    }
+
+    private static void headers(HttpExchange exchange, long index) {
+        exchange.getResponseHeaders().set("X-Etcd-Cluster-Id", "stand-in");
+        exchange.getResponseHeaders().set("X-Etcd-Index", String.valueOf(index));
+        exchange.getResponseHeaders().set("X-Raft-Index", String.valueOf(index));
+        exchange.getResponseHeaders().set("X-Raft-Term", "1");
+    }
+
+    @Override
+    public String toString() {
+        return "etcd stand-in @ " + getUri();
+    }
+
+    private static class Node {
+        private final String key;
+        private final String action; //that produced this node
+        private final String value;
+        private final long createdIndex;
+        private final long modifiedIndex;
+
+        private Node(String key, String action, String value, long createdIndex, long modifiedIndex) {
+            this.key = key;
+            this.action = action;
+            this.value = value;
+            this.createdIndex = createdIndex;
+            this.modifiedIndex = modifiedIndex;
+        }
+
+        private boolean deleted() {
+            return "delete".equals(action) || "compareAndDelete".equals(action);
+        }
+
+        private void toJson(StringBuilder json) {
+            json.append("{\"key\":").append(Http.quote(key));
+            if (!deleted()) {
+                json.append(",\"value\":").append(Http.quote(value));
+            }
+            json.append(",\"modifiedIndex\":").append(modifiedIndex).append(",\"createdIndex\":").append(createdIndex).append('}');
+        }
+    }
+}
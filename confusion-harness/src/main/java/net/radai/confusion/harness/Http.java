@@ -0,0 +1,136 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import net.radai.confusion.core.util.IOUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Created by Radai Rosenblatt
+ * bits shared by the http stand-ins
+ */
+class Http {
+    //a claimed content length is only trusted this far up front, anything longer is grown into as it arrives
+    private static final int MAX_PRESIZED_BODY = 1024 * 1024;
+
+    static byte[] body(HttpExchange exchange) throws IOException {
+        int expected = 0;
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null) {
+            try {
+                expected = (int) Math.max(0, Math.min(Long.parseLong(length.trim()), MAX_PRESIZED_BODY));
+            } catch (NumberFormatException e) {
+                //ignore the header, just read what is there
+            }
+        }
+        try (InputStream is = exchange.getRequestBody()) {
+            return IOUtil.read(is, expected);
+        }
+    }
+
+    /**
+     * @param encoded a query string or a form-encoded body (may be null)
+     */
+    static Map<String, String> params(String encoded) {
+        Map<String, String> params = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        try {
+            for (String pair : encoded.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq < 0) {
+                    params.put(URLDecoder.decode(pair, "UTF-8"), "");
+                } else {
+                    params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); //utf-8 is always supported
+        }
+        return params;
+    }
+
+    /**
+     * @param wait a go-style duration, like consul's "10s" (seconds if no unit is given)
+     */
+    static long parseMillis(String wait) {
+        if (wait.endsWith("ms")) {
+            return Long.parseLong(wait.substring(0, wait.length() - 2));
+        }
+        if (wait.endsWith("s")) {
+            return (long) (Double.parseDouble(wait.substring(0, wait.length() - 1)) * 1000);
+        }
+        if (wait.endsWith("m")) {
+            return (long) (Double.parseDouble(wait.substring(0, wait.length() - 1)) * 60_000);
+        }
+        return Long.parseLong(wait) * 1000;
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.harness;
+
+import java.io.Serializable;
+
+/**
+ * Created by Radai Rosenblatt
+ * the configuration pushed through the pipeline - a sequence number, padded to the desired payload size
+ */
+public class Probe implements Serializable {
+    private long sequence;
+    private byte[] padding;
+
+    public Probe() {
+    }
+
+    public Probe(long sequence, int paddingSize) {
+        this.sequence = sequence;
+        this.padding = new byte[paddingSize];
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public byte[] getPadding() {
+        return padding;
+    }
+
+    public void setPadding(byte[] padding) {
+        this.padding = padding;
+    }
+}
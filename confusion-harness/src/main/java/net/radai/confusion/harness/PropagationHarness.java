@@ -0,0 +1,338 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.harness;
+
+import net.radai.confusion.consul.ConsulStore;
+import net.radai.confusion.core.Confusion;
+import net.radai.confusion.core.SimpleConfigurationService;
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.api.InvalidConfigurationEvent;
+import net.radai.confusion.core.fs.PathStore;
+import net.radai.confusion.core.inmem.InMemBinaryStore;
+import net.radai.confusion.core.serializable.SerializableCodec;
+import net.radai.confusion.core.spi.store.BinaryStore;
+import net.radai.confusion.core.spi.store.Store;
+import net.radai.confusion.core.spi.store.TextStore;
+import net.radai.confusion.core.spi.store.adapter.Adapter;
+import net.radai.confusion.core.util.Histogram;
+import net.radai.confusion.etcd.EtcdStore;
+import net.radai.confusion.kafka.KafkaStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Created by Radai Rosenblatt
+ * measures change propagation - the time from store.write() to a listener seeing the new configuration - through
+ * the real pipeline (store, source, codec, service). runs with no external services: consul and etcd are stood in
+ * for in-process (see {@link ConsulStandIn}, {@link EtcdStandIn}) and kafka is embedded (see {@link EmbeddedKafka}).
+ * updates are either made one at a time (each waiting for the previous one to be seen, for pure latency) or
+ * at a sustained rate, in which case stores may coalesce updates, and only those delivered are measured.
+ */
+public class PropagationHarness {
+    private static final long DRAIN_TIMEOUT_MILLIS = 30_000;
+
+    public enum StoreType {
+        INMEM, PATH, CONSUL, ETCD, KAFKA
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<StoreType> stores = Arrays.asList(StoreType.values());
+        List<Integer> sizes = Arrays.asList(100, 10_000, 500_000);
+        List<Double> rates = Arrays.asList(0.0, 50.0);
+        int updates = 200;
+        int warmup = 20;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-stores":
+                    stores = Arrays.stream(args[++i].split(",")).map(s -> StoreType.valueOf(s.trim().toUpperCase(Locale.ROOT))).collect(Collectors.toList());
+                    break;
+                case "-sizes":
+                    sizes = Arrays.stream(args[++i].split(",")).map(s -> Integer.parseInt(s.trim())).collect(Collectors.toList());
+                    break;
+                case "-rates":
+                    rates = Arrays.stream(args[++i].split(",")).map(s -> Double.parseDouble(s.trim())).collect(Collectors.toList());
+                    break;
+                case "-updates":
+                    updates = Integer.parseInt(args[++i]);
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("usage: PropagationHarness [-stores inmem,path,consul,etcd,kafka] [-sizes 100,10000,500000]");
+                    System.err.println("                          [-rates 0,50] [-updates 200] [-warmup 20]");
+                    System.err.println("sizes are payload sizes in bytes. rates are updates/second, 0 meaning one at a time");
+                    System.exit("-help".equals(args[i]) ? 0 : 2);
+            }
+        }
+        System.out.println(Result.HEADER);
+        for (StoreType store : stores) {
+            for (int size : sizes) {
+                for (double rate : rates) {
+                    try {
+                        System.out.println(run(store, size, updates, warmup, rate));
+                    } catch (Exception e) {
+                        System.out.println(String.format(Locale.ROOT, "%-7s %9d %7s failed: %s",
+                                store.name().toLowerCase(Locale.ROOT), size, describe(rate), e));
+                    }
+                }
+            }
+        }
+        System.exit(0); //etcd4j leaves non-daemon threads behind
+    }
+
+    /**
+     * @param payloadSize size of the payload, in bytes (approximately - serialization adds a little)
+     * @param updates number of measured updates
+     * @param warmup number of updates to make (one at a time) before measuring
+     * @param rate updates per second, or 0 to make every update wait for the previous one to be seen
+     */
+    public static Result run(StoreType storeType, int payloadSize, int updates, int warmup, double rate) throws Exception {
+        SerializableCodec codec = new SerializableCodec();
+        try (Fixture fixture = open(storeType)) {
+            Tracker tracker = new Tracker(warmup + updates, warmup);
+            fixture.write(codec.serialize(new Probe(0, payloadSize)));
+            SimpleConfigurationService<Probe> service = Confusion.create(Probe.class, fixture.store, codec);
+            service.register(tracker);
+            service.start();
+            try {
+                for (int seq = 1; seq <= warmup; seq++) {
+                    tracker.sent(seq);
+                    fixture.write(codec.serialize(new Probe(seq, payloadSize)));
+                    tracker.awaitSeen(seq);
+                }
+                long periodNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+                long start = System.nanoTime();
+                for (int i = 1; i <= updates; i++) {
+                    int seq = warmup + i;
+                    byte[] payload = codec.serialize(new Probe(seq, payloadSize));
+                    if (periodNanos > 0) {
+                        long due = start + (i - 1) * periodNanos;
+                        long now;
+                        while ((now = System.nanoTime()) < due) {
+                            LockSupport.parkNanos(due - now);
+                        }
+                    }
+                    tracker.sent(seq);
+                    fixture.write(payload);
+                    if (periodNanos == 0) {
+                        tracker.awaitSeen(seq);
+                    }
+                }
+                long writeNanos = System.nanoTime() - start;
+                tracker.awaitSeen(warmup + updates);
+                return new Result(storeType, payloadSize, rate, updates, writeNanos, tracker);
+            } finally {
+                service.stop();
+            }
+        }
+    }
+
+    private static String describe(double rate) {
+        return rate > 0 ? String.format(Locale.ROOT, "%.0f/s", rate) : "serial";
+    }
+
+    private static Fixture open(StoreType storeType) throws Exception {
+        switch (storeType) {
+            case INMEM:
+                return new Fixture(new InMemBinaryStore());
+            case PATH:
+                Path dir = Files.createTempDirectory("confusion-harness");
+                return new Fixture(new PathStore(dir.resolve("conf")), () -> {
+                    try (Stream<Path> files = Files.walk(dir)) {
+                        files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                    }
+                });
+            case CONSUL:
+                ConsulStandIn consul = new ConsulStandIn();
+                return new Fixture(new ConsulStore("localhost", consul.getPort(), "harness", 5), consul);
+            case ETCD:
+                EtcdStandIn etcd = new EtcdStandIn();
+                return new Fixture(new EtcdStore(etcd.getUri(), "harness"), etcd);
+            case KAFKA:
+                EmbeddedKafka kafka = new EmbeddedKafka();
+                try {
+                    String topic = "harness-" + UUID.randomUUID();
+                    kafka.createTopic(topic);
+                    return new Fixture(new KafkaStore("localhost", kafka.getPort(), topic, 100), kafka);
+                } catch (Exception e) {
+                    kafka.close();
+                    throw e;
+                }
+            default:
+                throw new IllegalArgumentException("unhandled " + storeType);
+        }
+    }
+
+    /**
+     * a store, along with whatever it runs against
+     */
+    private static class Fixture implements Closeable {
+        private final Store store;
+        private final List<Closeable> resources;
+
+        private Fixture(Store store, Closeable... resources) {
+            this.store = store;
+            this.resources = new ArrayList<>(Arrays.asList(resources));
+        }
+
+        /**
+         * writes straight to the store - text stores get base64, which is what the pipeline expects of them
+         * (see {@link net.radai.confusion.core.spi.source.Sources#from})
+         */
+        private void write(byte[] payload) throws IOException {
+            if (store instanceof BinaryStore) {
+                ((BinaryStore) store).write(payload);
+            } else {
+                ((TextStore) store).write(Adapter.BASE64.toText(payload));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Closeable resource : resources) {
+                resource.close();
+            }
+        }
+    }
+
+    /**
+     * times updates, from the moment they are sent to the moment a listener sees them
+     */
+    private static class Tracker implements ConfigurationListener<Probe> {
+        private final AtomicLongArray sentNanos;
+        private final int warmup;
+        private final Histogram latencies = new Histogram();
+        private final Object lock = new Object();
+        private long lastSeen = 0; //guarded by lock
+        private long firstSeenNanos = 0; //of a measured update. guarded by lock
+        private long lastSeenNanos = 0; //guarded by lock
+
+        private Tracker(int lastSequence, int warmup) {
+            this.sentNanos = new AtomicLongArray(lastSequence + 1);
+            this.warmup = warmup;
+        }
+
+        private void sent(int seq) {
+            sentNanos.set(seq, System.nanoTime());
+        }
+
+        @Override
+        public void configurationChanged(ConfigurationChangeEvent<Probe> event) {
+            long now = System.nanoTime();
+            long seq = event.getNewConf().getSequence();
+            if (seq > warmup) {
+                latencies.record(now - sentNanos.get((int) seq));
+            }
+            synchronized (lock) {
+                if (seq > warmup) {
+                    if (firstSeenNanos == 0) {
+                        firstSeenNanos = now;
+                    }
+                    lastSeenNanos = now;
+                }
+                lastSeen = Math.max(lastSeen, seq);
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void invalidConfigurationRead(InvalidConfigurationEvent<Probe> event) {
+            throw new IllegalStateException("unexpected invalid configuration " + event);
+        }
+
+        private void awaitSeen(long seq) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+            synchronized (lock) {
+                long remaining;
+                while (lastSeen < seq && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    lock.wait(remaining);
+                }
+                if (lastSeen < seq) {
+                    throw new IllegalStateException("update " + seq + " not seen within " + DRAIN_TIMEOUT_MILLIS + " ms (last seen " + lastSeen + ")");
+                }
+            }
+        }
+    }
+
+    public static class Result {
+        static final String HEADER = String.format("%-7s %9s %7s %8s %9s %10s %10s %10s %10s %11s %11s",
+                "store", "size", "rate", "written", "delivered", "p50 (us)", "p90 (us)", "p99 (us)", "max (us)", "writes/s", "delivered/s");
+
+        private final StoreType store;
+        private final int payloadSize;
+        private final double rate;
+        private final int written;
+        private final long delivered;
+        private final Histogram.Summary latencies;
+        private final double writesPerSecond;
+        private final double deliveredPerSecond;
+
+        private Result(StoreType store, int payloadSize, double rate, int written, long writeNanos, Tracker tracker) {
+            this.store = store;
+            this.payloadSize = payloadSize;
+            this.rate = rate;
+            this.written = written;
+            this.delivered = tracker.latencies.getCount();
+            this.latencies = tracker.latencies.getSummary();
+            this.writesPerSecond = written * 1e9 / Math.max(1, writeNanos);
+            synchronized (tracker.lock) {
+                long span = tracker.lastSeenNanos - tracker.firstSeenNanos;
+                this.deliveredPerSecond = delivered <= 1 ? 0 : (delivered - 1) * 1e9 / Math.max(1, span);
+            }
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        public int getWritten() {
+            return written;
+        }
+
+        /**
+         * @return propagation latencies, in nanoseconds
+         */
+        public Histogram.Summary getLatencies() {
+            return latencies;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-7s %9d %7s %8d %9d %10.1f %10.1f %10.1f %10.1f %11.1f %11.1f",
+                    store.name().toLowerCase(Locale.ROOT), payloadSize, describe(rate),
+                    written, delivered, latencies.getP50() / 1e3, latencies.getP90() / 1e3, latencies.getP99() / 1e3,
+                    latencies.getMax() / 1e3, writesPerSecond, deliveredPerSecond);
+        }
+    }
+}
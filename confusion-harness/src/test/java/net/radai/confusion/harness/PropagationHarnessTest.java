@@ -0,0 +1,64 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.harness;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class PropagationHarnessTest {
+
+    @Test
+    public void testInMem() throws Exception {
+        assertAllDelivered(PropagationHarness.run(PropagationHarness.StoreType.INMEM, 100, 20, 2, 0));
+    }
+
+    @Test
+    public void testPath() throws Exception {
+        assertAllDelivered(PropagationHarness.run(PropagationHarness.StoreType.PATH, 100, 20, 2, 0));
+    }
+
+    @Test
+    public void testConsul() throws Exception {
+        assertAllDelivered(PropagationHarness.run(PropagationHarness.StoreType.CONSUL, 100, 20, 2, 0));
+    }
+
+    @Test
+    public void testEtcd() throws Exception {
+        assertAllDelivered(PropagationHarness.run(PropagationHarness.StoreType.ETCD, 100, 20, 2, 0));
+    }
+
+    @Test
+    public void testKafka() throws Exception {
+        assertAllDelivered(PropagationHarness.run(PropagationHarness.StoreType.KAFKA, 100, 20, 2, 0));
+    }
+
+    @Test
+    public void testSustainedRate() throws Exception {
+        PropagationHarness.Result result = PropagationHarness.run(PropagationHarness.StoreType.INMEM, 100, 100, 2, 1000);
+        Assert.assertEquals(100, result.getWritten());
+        Assert.assertTrue(result.getDelivered() > 0); //updates may be coalesced
+    }
+
+    private static void assertAllDelivered(PropagationHarness.Result result) {
+        Assert.assertEquals(result.toString(), result.getWritten(), result.getDelivered());
+        Assert.assertTrue(result.getLatencies().getP99() > 0);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+
+/**
+ * Created by Radai Rosenblatt
+ * base class for events that bracket a stage of the reload pipeline. committed when the span is ended.
+ */
+@Category("Confusion")
+@StackTrace(false)
+public abstract class ConfigurationEvent extends Event implements ConfigurationMetrics.Span {
+
+    @Label("Configuration Type")
+    Class<?> configurationType;
+
+    @Label("Payload Size")
+    @DataAmount
+    long payloadSize;
+
+    @Label("Version")
+    long version;
+
+    private transient ConfigurationMetrics.Span delegate; //transient fields are not recorded
+
+    void begin(Class<?> configurationType, ConfigurationMetrics.Span delegate) {
+        this.configurationType = configurationType;
+        this.delegate = delegate;
+        begin();
+    }
+
+    @Override
+    public void end(long payloadSize, long version) {
+        this.payloadSize = payloadSize;
+        this.version = version;
+        commit();
+        delegate.end(payloadSize, version);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.jfr;
+
+import jdk.jfr.EventType;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Created by Radai Rosenblatt
+ * emits java flight recorder events for the reload pipeline of a single configuration, optionally also
+ * reporting to other metrics (see {@link net.radai.confusion.core.metrics.SimpleConfigurationMetrics}).
+ * when the events are not enabled in any running recording nothing is allocated beyond what the delegate does.
+ */
+public class JfrConfigurationMetrics implements ConfigurationMetrics {
+    private static final Map<Stage, Supplier<ConfigurationEvent>> EVENTS = new EnumMap<>(Stage.class);
+    private static final Map<Stage, EventType> TYPES = new EnumMap<>(Stage.class);
+    private static final EventType POLL_TYPE = EventType.getEventType(PollEvent.class);
+    private static final EventType CHANGE_TYPE = EventType.getEventType(ChangeEvent.class);
+    private static final EventType SLOW_LISTENER_TYPE = EventType.getEventType(SlowListenerEvent.class);
+
+    static {
+        EVENTS.put(Stage.READ, ReadEvent::new);
+        EVENTS.put(Stage.ADAPT, AdaptEvent::new);
+        EVENTS.put(Stage.DECODE, DecodeEvent::new);
+        EVENTS.put(Stage.VALIDATE, ValidateEvent::new);
+        EVENTS.put(Stage.DISPATCH, DispatchEvent::new);
+        EVENTS.put(Stage.LISTENER, ListenerEvent::new);
+        for (Stage stage : Stage.values()) {
+            ConfigurationEvent event = EVENTS.get(stage).get();
+            TYPES.put(stage, EventType.getEventType(event.getClass()));
+        }
+    }
+
+    private final Class<?> configurationType;
+    private final ConfigurationMetrics delegate;
+
+    public JfrConfigurationMetrics(Class<?> configurationType) {
+        this(configurationType, null);
+    }
+
+    /**
+     * @param configurationType type of the configuration whose pipeline is being recorded (included in all events)
+     * @param delegate other metrics to also report to, or null for none
+     */
+    public JfrConfigurationMetrics(Class<?> configurationType, ConfigurationMetrics delegate) {
+        if (configurationType == null) {
+            throw new IllegalArgumentException("configuration type required");
+        }
+        this.configurationType = configurationType;
+        this.delegate = delegate == null ? ConfigurationMetrics.NOP : delegate;
+    }
+
+    @Override
+    public Span begin(Stage stage) {
+        Span span = delegate.begin(stage);
+        if (!TYPES.get(stage).isEnabled()) {
+            return span;
+        }
+        ConfigurationEvent event = EVENTS.get(stage).get();
+        event.begin(configurationType, span);
+        return event;
+    }
+
+    @Override
+    public void recordTime(Stage stage, long nanos) {
+        delegate.recordTime(stage, nanos);
+    }
+
+    @Override
+    public void recordChange(Change change) {
+        delegate.recordChange(change);
+        if (CHANGE_TYPE.isEnabled()) {
+            ChangeEvent event = new ChangeEvent();
+            event.configurationType = configurationType;
+            event.outcome = change.name();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void recordPayloadSize(long size) {
+        delegate.recordPayloadSize(size); //sizes are included in the events themselves
+    }
+
+    @Override
+    public void recordPoll() {
+        delegate.recordPoll();
+        if (POLL_TYPE.isEnabled()) {
+            PollEvent event = new PollEvent();
+            event.configurationType = configurationType;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void recordSlowListener(String listener, long nanos) {
+        delegate.recordSlowListener(listener, nanos);
+        if (SLOW_LISTENER_TYPE.isEnabled()) {
+            SlowListenerEvent event = new SlowListenerEvent();
+            event.configurationType = configurationType;
+            event.listener = listener;
+            event.callbackDuration = nanos;
+            event.commit();
+        }
+    }
+
+    public Class<?> getConfigurationType() {
+        return configurationType;
+    }
+
+    public ConfigurationMetrics getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String toString() {
+        return "jfr metrics for " + configurationType.getName();
+    }
+}
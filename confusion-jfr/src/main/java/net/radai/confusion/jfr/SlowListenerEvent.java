@@ -0,0 +1,47 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+@Name("net.radai.confusion.SlowListener")
+@Label("Slow Configuration Listener")
+@Description("a configuration listener that keeps exceeding its time budget")
+@Category("Confusion")
+@StackTrace(false)
+public class SlowListenerEvent extends Event {
+
+    @Label("Configuration Type")
+    Class<?> configurationType;
+
+    @Label("Listener")
+    String listener;
+
+    @Label("Callback Duration")
+    @Timespan
+    long callbackDuration;
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of Confusion.
+ *
+ * Confusion is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Confusion is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Confusion.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.radai.confusion.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.radai.confusion.core.Confusion;
+import net.radai.confusion.core.SimpleConfigurationService;
+import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationListener;
+import net.radai.confusion.core.api.InvalidConfigurationEvent;
+import net.radai.confusion.core.inmem.InMemBinaryStore;
+import net.radai.confusion.core.metrics.SimpleConfigurationMetrics;
+import net.radai.confusion.core.serializable.SerializableCodec;
+import net.radai.confusion.core.spi.metrics.ConfigurationMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Created by Radai Rosenblatt
+ */
+public class JfrConfigurationMetricsTest {
+
+    @Test
+    public void testEvents() throws Exception {
+        InMemBinaryStore store = new InMemBinaryStore();
+        SerializableCodec codec = new SerializableCodec();
+        store.write(codec.serialize("v1"));
+        SimpleConfigurationService<String> service = Confusion.create(String.class, store, codec);
+        SimpleConfigurationMetrics delegate = new SimpleConfigurationMetrics();
+        service.setMetrics(new JfrConfigurationMetrics(String.class, delegate));
+        service.register(new ConfigurationListener<String>() {
+            @Override
+            public void configurationChanged(ConfigurationChangeEvent<String> event) {
+            }
+
+            @Override
+            public void invalidConfigurationRead(InvalidConfigurationEvent<String> event) {
+            }
+        });
+
+        Path dump = Files.createTempFile("confusion", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ReadEvent.class).withoutThreshold();
+            recording.enable(DecodeEvent.class).withoutThreshold();
+            recording.enable(ValidateEvent.class).withoutThreshold();
+            recording.enable(ListenerEvent.class).withoutThreshold();
+            recording.enable(ChangeEvent.class);
+            recording.disable(DispatchEvent.class);
+            recording.start();
+            service.start();
+            try {
+                store.write(codec.serialize("v2"));
+                Thread.sleep(100); //let the change propagate
+                Assert.assertEquals("v2", service.getConfiguration());
+            } finally {
+                service.stop();
+            }
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            List<RecordedEvent> reads = ofType(events, "net.radai.confusion.Read");
+            Assert.assertEquals(1, reads.size());
+            Assert.assertEquals(String.class.getName(), reads.get(0).getClass("configurationType").getName());
+            Assert.assertEquals(codec.serialize("v1").length, reads.get(0).getLong("payloadSize"));
+            Assert.assertEquals(1, reads.get(0).getLong("version"));
+            Assert.assertEquals(2, ofType(events, "net.radai.confusion.Decode").size());
+            Assert.assertEquals(2, ofType(events, "net.radai.confusion.Validate").size());
+            List<RecordedEvent> listeners = ofType(events, "net.radai.confusion.Listener");
+            Assert.assertEquals(1, listeners.size());
+            Assert.assertEquals(2, listeners.get(0).getLong("version"));
+            Assert.assertEquals(2, ofType(events, "net.radai.confusion.Change").size());
+            Assert.assertTrue(ofType(events, "net.radai.confusion.Dispatch").isEmpty()); //disabled
+        } finally {
+            Files.delete(dump);
+        }
+        //still reported to the delegate
+        Assert.assertEquals(1, delegate.getTimes(ConfigurationMetrics.Stage.DISPATCH).getCount());
+        Assert.assertEquals(2, delegate.getAcceptedChanges());
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+}
@@ -17,6 +17,8 @@
 
 package net.radai.confusion.kafka;
 
+import net.radai.confusion.core.api.VersionConflictException;
+import net.radai.confusion.core.spi.Versioned;
 import net.radai.confusion.core.spi.store.AbstractBinaryStore;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
@@ -62,11 +64,19 @@ public class KafkaStore extends AbstractBinaryStore {
 
     @Override
     public byte[] read() throws IOException {
+        return readVersioned().getValue();
+    }
+
+    /**
+     * versions are the end offset of the topic (the offset of the latest record + 1, 0 if there are none)
+     */
+    @Override
+    public Versioned<byte[]> readVersioned() throws IOException {
         Properties props = buildConsumerProperties(host, port);
         try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props)) {
             List<PartitionInfo> partitions = consumer.partitionsFor(topic);
             if (partitions == null || partitions.isEmpty()) {
-                return null; //no topic == no data
+                return new Versioned<>(null, 0); //no topic == no data
             }
             if (partitions.size() != 1) {
                 throw new IllegalStateException("configuration topic " + topic + " expected to have a single partition. instead found " + partitions.size());
@@ -87,19 +97,42 @@ public class KafkaStore extends AbstractBinaryStore {
             if (lastRecord != null) {
                 byte[] value = lastRecord.value();
                 log.debug("read value {} from partition {} offset {}", describe(value), lastRecord.partition(), lastRecord.offset());
-                return value;
+                return new Versioned<>(value, lastRecord.offset() + 1);
             } else {
                 log.debug("read value null from empty topic");
-                return null;
+                return new Versioned<>(null, position);
             }
         }
     }
 
     @Override
     public void write(byte[] payload) throws IOException {
+        publish(payload);
+    }
+
+    /**
+     * kafka has no compare-and-set, so this is a check followed by a write. it detects conflicts with any
+     * write that completed before it, but two writers racing each other may both succeed.
+     */
+    @Override
+    public long write(byte[] payload, long expectedVersion) throws IOException {
+        long currentVersion = readVersioned().getVersion();
+        if (currentVersion != expectedVersion) {
+            throw new VersionConflictException(toString(), expectedVersion, currentVersion);
+        }
+        return publish(payload).offset() + 1;
+    }
+
+    @Override
+    public boolean supportsVersions() {
+        return true;
+    }
+
+    private RecordMetadata publish(byte[] payload) throws IOException {
         try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(KafkaStore.buildProducerProperties(host, port))) {
             RecordMetadata record = producer.send(new ProducerRecord<>(topic, payload)).get();
             log.debug("wrote value {} into partition {} offset {}", describe(payload), record.partition(), record.offset());
+            return record;
         } catch (ExecutionException | InterruptedException e) {
             throw new IOException("while publishing to kafka", e);
         }
@@ -119,13 +152,13 @@ public class KafkaStore extends AbstractBinaryStore {
             boolean reportedTopicGone = false;
             Properties props = buildConsumerProperties(host, port);
             while (!shouldDie()) {
-                markWatching();
                 try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props)) {
                     while (!shouldDie()) {
                         List<PartitionInfo> partitions = consumer.partitionsFor(topic);
                         if (partitions == null || partitions.isEmpty()) {
                             //topic isnt there, wait for it
                             position = 0; //reset our position in case it was there before and got deleted
+                            markWatching(); //will pick up the 1st record whenever the topic shows up
                             try {
                                 if (!reportedTopicGone) {
                                     reportedTopicGone = true;
@@ -154,6 +187,8 @@ public class KafkaStore extends AbstractBinaryStore {
                             //pick up where we left off (so we get any changes that might have occurred while we were disconnected)
                             consumer.seek(topicPartition, position);
                         }
+                        //only now, so that anything written after start() returns is picked up
+                        markWatching();
                         break;
                     }
 
@@ -161,6 +196,7 @@ public class KafkaStore extends AbstractBinaryStore {
                     while (!shouldDie()) {
                         log.trace("listening on kafka topic {} offset {} for at most {} millis", topic, position, pollMillis);
                         ConsumerRecords<String, byte[]> records = consumer.poll(pollMillis);
+                        markPolled();
                         boolean gotSomething = records != null && !records.isEmpty();
                         if (gotSomething) {
                             ConsumerRecord<String, byte[]> lastRecord = null;
@@ -171,10 +207,11 @@ public class KafkaStore extends AbstractBinaryStore {
                             position = lastRecord.offset();
                             byte[] value = lastRecord.value();
                             log.debug("found value {} at partition {} offset {}", describe(value), lastRecord.partition(), lastRecord.offset());
-                            fire(value);
+                            fire(value, lastRecord.offset() + 1);
                         }
                     }
                 } catch (Exception e) { //we get here if the connection was severed
+                    markWatching(); //dont hold up start() forever
                     log.error("while polling kafka", e);
                 }
             }
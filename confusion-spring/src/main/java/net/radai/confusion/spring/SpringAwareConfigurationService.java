@@ -27,16 +27,23 @@ import org.springframework.context.ApplicationEventPublisherAware;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 /**
  * Created by Radai Rosenblatt
- * using spring's startup/shutdown interfaces for broader compatibility
+ * using spring's startup/shutdown interfaces for broader compatibility.
+ * the delegate is started asynchronously (see {@link ServiceLifecycle#startAsync()}), so the container is not held up
+ * by reading configuration. if the delegate has something to serve in the meantime (a snapshot or a default
+ * configuration) it is served right away. otherwise the first bean to need the configuration waits for it.
  */
 public class SpringAwareConfigurationService<T> implements
         ConfigurationService<T>, InitializingBean, DisposableBean, FactoryBean<T>,
         ApplicationEventPublisherAware, ConfigurationListener<T> {
     private final ConfigurationService<T> delegate;
     private ApplicationEventPublisher springPublisher;
+    private volatile CompletableFuture<Void> readiness = CompletableFuture.completedFuture(null);
 
     public SpringAwareConfigurationService(ConfigurationService<T> delegate) {
         this.delegate = delegate;
@@ -47,6 +54,21 @@ public class SpringAwareConfigurationService<T> implements
         delegate.register(newListener);
     }
 
+    @Override
+    public void register(String path, ConfigurationListener<T> newListener) {
+        delegate.register(path, newListener);
+    }
+
+    @Override
+    public void register(Function<? super T, ?> property, ConfigurationListener<T> newListener) {
+        delegate.register(property, newListener);
+    }
+
+    @Override
+    public void registerWeakly(ConfigurationListener<T> newListener) {
+        delegate.registerWeakly(newListener);
+    }
+
     @Override
     public void unregister(ConfigurationListener<T> existingListener) {
         delegate.unregister(existingListener);
@@ -62,6 +84,21 @@ public class SpringAwareConfigurationService<T> implements
         delegate.updateConfiguration(newConfiguration);
     }
 
+    @Override
+    public long updateConfiguration(long expectedVersion, T newConfiguration) throws IOException, InvalidConfigurationException {
+        return delegate.updateConfiguration(expectedVersion, newConfiguration);
+    }
+
+    @Override
+    public long getConfigurationVersion() {
+        return delegate.getConfigurationVersion();
+    }
+
+    @Override
+    public CompletableFuture<Void> updateConfigurationAsync(T newConfiguration) {
+        return delegate.updateConfigurationAsync(newConfiguration);
+    }
+
     @Override
     public Class<T> getConfigurationType() {
         return delegate.getConfigurationType();
@@ -72,8 +109,25 @@ public class SpringAwareConfigurationService<T> implements
     public void afterPropertiesSet() throws Exception {
         delegate.register(this);
         if (delegate instanceof ServiceLifecycle) {
-            ((ServiceLifecycle)delegate).start();
+            readiness = ((ServiceLifecycle)delegate).startAsync();
+        }
+    }
+
+    /**
+     * @return true once the delegate is serving its actual configuration (see {@link ServiceLifecycle#isReady()})
+     */
+    public boolean isReady() {
+        if (delegate instanceof ServiceLifecycle) {
+            return ((ServiceLifecycle)delegate).isReady();
         }
+        return true;
+    }
+
+    /**
+     * @return a future that completes once the delegate is ready, or exceptionally if it could not be started
+     */
+    public CompletableFuture<Void> getReadiness() {
+        return readiness;
     }
 
     @Override
@@ -87,6 +141,15 @@ public class SpringAwareConfigurationService<T> implements
 
     @Override
     public T getObject() throws Exception {
+        if (delegate instanceof ServiceLifecycle && !((ServiceLifecycle)delegate).isStarted()) {
+            //nothing to serve until the source has been read
+            try {
+                readiness.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
         return delegate.getConfiguration();
     }
 
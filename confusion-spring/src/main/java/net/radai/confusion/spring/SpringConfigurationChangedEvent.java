@@ -17,7 +17,9 @@
 
 package net.radai.confusion.spring;
 
+import net.radai.confusion.core.Confusion;
 import net.radai.confusion.core.api.ConfigurationChangeEvent;
+import net.radai.confusion.core.api.ConfigurationDiff;
 import net.radai.confusion.core.api.ConfigurationService;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.core.ResolvableType;
@@ -50,6 +52,13 @@ public class SpringConfigurationChangedEvent<T> extends ApplicationEvent
         return delegate.getConfigurationType();
     }
 
+    /**
+     * @return what changed between the old and new configuration
+     */
+    public ConfigurationDiff getDiff() {
+        return Confusion.diff(delegate);
+    }
+
     @Override
     public ResolvableType getResolvableType() {
         return ResolvableType.forClassWithGenerics(getClass(), getConfigurationType());